@@ -0,0 +1,107 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kixeye.relax.BenchmarkSerDe.BenchmarkObject;
+
+/**
+ * Round trip benchmarks of the {@link AsyncRestClient} against an embedded server.
+ * 
+ * <p>Run with <code>-prof gc</code> to get the allocation rate per operation.</p>
+ * 
+ * @author ebahtijaragic
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncRestClientBenchmark {
+	private static final long TIMEOUT_SECONDS = 10;
+	
+	private BenchmarkServer server;
+	private RestClient client;
+	
+	private BenchmarkObject requestObject;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new BenchmarkServer(new ObjectMapper().writeValueAsBytes(new BenchmarkObject("testString", 42)));
+		server.start();
+		
+		client = RestClients.create(server.getUri(), new BenchmarkSerDe()).build();
+		
+		requestObject = new BenchmarkObject("testString", 42);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+	
+	@Benchmark
+	public BenchmarkObject get() throws Exception {
+		return client.get("/test/{}", "application/json", BenchmarkObject.class, "id")
+				.waitForComplete(TIMEOUT_SECONDS, TimeUnit.SECONDS).get().getBody().deserialize();
+	}
+	
+	@Benchmark
+	public BenchmarkObject post() throws Exception {
+		return client.post("/test/{}", "application/json", "application/json", requestObject, BenchmarkObject.class, "id")
+				.waitForComplete(TIMEOUT_SECONDS, TimeUnit.SECONDS).get().getBody().deserialize();
+	}
+	
+	@Benchmark
+	public int put() throws Exception {
+		return client.put("/test/{}", "application/json", "application/json", requestObject, "id")
+				.waitForComplete(TIMEOUT_SECONDS, TimeUnit.SECONDS).get().getStatusCode();
+	}
+	
+	@Benchmark
+	public int patch() throws Exception {
+		return client.patch("/test/{}", "application/json", "application/json", requestObject, "id")
+				.waitForComplete(TIMEOUT_SECONDS, TimeUnit.SECONDS).get().getStatusCode();
+	}
+	
+	@Benchmark
+	public int delete() throws Exception {
+		return client.delete("/test/{}", "id")
+				.waitForComplete(TIMEOUT_SECONDS, TimeUnit.SECONDS).get().getStatusCode();
+	}
+}
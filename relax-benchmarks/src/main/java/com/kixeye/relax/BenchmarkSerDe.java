@@ -0,0 +1,103 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A Jackson backed {@link RestClientSerDe} shared by the benchmarks.
+ * 
+ * @author ebahtijaragic
+ */
+public class BenchmarkSerDe implements RestClientSerDe {
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	/**
+	 * @see com.kixeye.relax.RestClientSerDe#serialize(java.lang.String, java.lang.Object)
+	 */
+	@Override
+	public byte[] serialize(String mimeType, Object obj) throws IOException {
+		return mapper.writeValueAsBytes(obj);
+	}
+
+	/**
+	 * @see com.kixeye.relax.RestClientSerDe#deserialize(java.lang.String, byte[], int, int, java.lang.Class)
+	 */
+	@Override
+	public <T> T deserialize(String mimeType, byte[] data, int offset, int length, Class<T> clazz) throws IOException {
+		return mapper.readValue(data, offset, length, clazz);
+	}
+	
+	/**
+	 * A small payload object.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	public static class BenchmarkObject {
+		private String testString;
+		private int testInt;
+		
+		/**
+		 * 
+		 */
+		public BenchmarkObject() {
+		}
+
+		/**
+		 * @param testString
+		 * @param testInt
+		 */
+		public BenchmarkObject(String testString, int testInt) {
+			this.testString = testString;
+			this.testInt = testInt;
+		}
+
+		/**
+		 * @return the testString
+		 */
+		public String getTestString() {
+			return testString;
+		}
+
+		/**
+		 * @param testString the testString to set
+		 */
+		public void setTestString(String testString) {
+			this.testString = testString;
+		}
+
+		/**
+		 * @return the testInt
+		 */
+		public int getTestInt() {
+			return testInt;
+		}
+
+		/**
+		 * @param testInt the testInt to set
+		 */
+		public void setTestInt(int testInt) {
+			this.testInt = testInt;
+		}
+	}
+}
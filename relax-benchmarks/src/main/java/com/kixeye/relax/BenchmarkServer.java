@@ -0,0 +1,125 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+
+import org.simpleframework.http.Request;
+import org.simpleframework.http.Response;
+import org.simpleframework.http.core.Container;
+import org.simpleframework.http.core.ContainerServer;
+import org.simpleframework.transport.Server;
+import org.simpleframework.transport.connect.Connection;
+import org.simpleframework.transport.connect.SocketConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An embedded Simple server that answers benchmark requests with a canned body.
+ * 
+ * @author ebahtijaragic
+ */
+public class BenchmarkServer implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(BenchmarkServer.class);
+	
+	private final byte[] responseBody;
+	
+	private Connection connection = null;
+	private int port = -1;
+	
+	private Container container = new Container() {
+		@Override
+		public void handle(Request request, Response response) {
+			try {
+				// drain whatever the client sent so the connection stays reusable
+				try (InputStream inputStream = request.getInputStream()) {
+					byte[] buffer = new byte[4096];
+					while (inputStream.read(buffer) != -1) {}
+				}
+				
+				response.setValue("Content-Type", "application/json");
+				
+				switch (request.getMethod()) {
+					case "GET":
+					case "POST":
+						response.setContentLength(responseBody.length);
+						response.getByteChannel().write(ByteBuffer.wrap(responseBody));
+						break;
+					default:
+						response.setContentLength(0);
+						break;
+				}
+			} catch (Exception e) {
+				logger.error("Unexpected exception", e);
+			}
+			
+			try {
+				response.close();
+			} catch (IOException e) {
+				logger.error("Unexpected exception", e);
+			}
+		}
+	};
+	
+	/**
+	 * @param responseBody
+	 */
+	public BenchmarkServer(byte[] responseBody) {
+		this.responseBody = responseBody;
+	}
+	
+	/**
+	 * Starts the server on a free local port.
+	 * 
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+		Server server = new ContainerServer(container);
+		connection = new SocketConnection(server);
+		
+		ServerSocket socketServer = new ServerSocket(0);
+		port = socketServer.getLocalPort();
+		socketServer.close();
+		
+		connection.connect(new InetSocketAddress(port));
+	}
+	
+	/**
+	 * @return the base uri of this server
+	 */
+	public String getUri() {
+		return "http://localhost:" + port;
+	}
+
+	/**
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (connection != null) {
+			connection.close();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kixeye.relax.BenchmarkSerDe.BenchmarkObject;
+
+/**
+ * Throughput of the {@link BlockingRestClient} with many threads blocked on it at once.
+ * 
+ * <p>Override the thread count with <code>-t</code> to see how the parked waits scale.</p>
+ * 
+ * @author ebahtijaragic
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Threads(512)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingRestClientBenchmark {
+	private static final long TIMEOUT_SECONDS = 10;
+	
+	private BenchmarkServer server;
+	private BlockingRestClient client;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new BenchmarkServer(new ObjectMapper().writeValueAsBytes(new BenchmarkObject("testString", 42)));
+		server.start();
+		
+		client = RestClients.create(server.getUri(), new BenchmarkSerDe())
+				.withMaxConnectionsPerRoute(64)
+				.withMaxConnectionsTotal(64)
+				.buildBlocking(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+	
+	@Benchmark
+	public BenchmarkObject get() throws Exception {
+		return client.get("/test/{}", "application/json", BenchmarkObject.class, "id").getBody().deserialize();
+	}
+}
@@ -0,0 +1,87 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building a {@link HttpResponse} and copying its headers.
+ * 
+ * @author ebahtijaragic
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class HttpResponseBenchmark {
+	@Param({"4", "16"})
+	private int headerCount;
+	
+	private BasicHttpResponse apacheResponse;
+	private Map<String, List<String>> headers;
+	
+	private RestClientSerDe serDe = new BenchmarkSerDe();
+	
+	@Setup
+	public void setUp() {
+		apacheResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		headers = new HashMap<>();
+		
+		for (int i = 0; i < headerCount; i++) {
+			apacheResponse.addHeader("X-Header-" + i, "value-" + i);
+			headers.put("X-Header-" + i, new ArrayList<>(Arrays.asList("value-" + i)));
+		}
+		
+		apacheResponse.setEntity(new ByteArrayEntity(new byte[0]));
+	}
+	
+	@Benchmark
+	public HttpResponse<Void> fromApacheResponse() throws Exception {
+		return new HttpResponse<>(apacheResponse, serDe, Void.class);
+	}
+	
+	@Benchmark
+	public HttpResponse<Void> fromHeaderMap() {
+		return new HttpResponse<>(200, headers, null);
+	}
+}
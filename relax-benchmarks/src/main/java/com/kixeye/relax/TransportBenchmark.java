@@ -0,0 +1,98 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kixeye.relax.BenchmarkSerDe.BenchmarkObject;
+
+/**
+ * Bursts of concurrent GETs to one host, to measure what the {@link RestClientTransport} pays in connections.
+ * 
+ * <p>Over the HTTP/1.1 {@link HttpAsyncClientTransport} every request in flight holds a connection of its own, 
+ * so the burst is bounded by the connections allowed per route. A multiplexing transport plugged in with 
+ * {@link RestClients.RestClientBuilder#withTransport(RestClientTransport)} is compared by running the same burst over it.</p>
+ * 
+ * @author ebahtijaragic
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+	private static final long TIMEOUT_SECONDS = 10;
+	
+	@Param({"256"})
+	private int concurrency;
+	
+	@Param({"2", "16", "256"})
+	private int maxConnectionsPerRoute;
+	
+	private BenchmarkServer server;
+	private RestClient client;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new BenchmarkServer(new ObjectMapper().writeValueAsBytes(new BenchmarkObject("testString", 42)));
+		server.start();
+		
+		client = RestClients.create(server.getUri(), new BenchmarkSerDe())
+				.withMaxConnectionsPerRoute(maxConnectionsPerRoute)
+				.withMaxConnectionsTotal(maxConnectionsPerRoute)
+				.build();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+	
+	@Benchmark
+	public int burst() throws Exception {
+		List<HttpPromise<HttpResponse<BenchmarkObject>>> promises = new ArrayList<>(concurrency);
+		
+		for (int i = 0; i < concurrency; i++) {
+			promises.add(client.get("/test/{}", "application/json", BenchmarkObject.class, i));
+		}
+		
+		return HttpPromise.allOf(promises).waitForComplete(TIMEOUT_SECONDS, TimeUnit.SECONDS).get().size();
+	}
+}
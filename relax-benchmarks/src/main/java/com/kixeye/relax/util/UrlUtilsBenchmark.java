@@ -0,0 +1,66 @@
+package com.kixeye.relax.util;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link UrlUtils#expand(String, Object...)}.
+ * 
+ * @author ebahtijaragic
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class UrlUtilsBenchmark {
+	private String prefix = "http://localhost:8080";
+	
+	private String userId = "12345";
+	private String itemName = "blue sword+1";
+	
+	@Benchmark
+	public String expandNoVariables() throws Exception {
+		return UrlUtils.expand(prefix + "/players/inventory");
+	}
+	
+	@Benchmark
+	public String expandSafeVariables() throws Exception {
+		return UrlUtils.expand(prefix + "/players/{}/inventory/{}", userId, userId);
+	}
+	
+	@Benchmark
+	public String expandEncodedVariables() throws Exception {
+		return UrlUtils.expand(prefix + "/players/{}/inventory/{}", userId, itemName);
+	}
+}
@@ -0,0 +1,191 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link BlockingRestClient} that waits on the promises of an asynchronous {@link RestClient}.
+ * 
+ * <p>The wait parks the calling thread on the promise without taking any lock, so it is as cheap for 
+ * many threads as it is for a few. When the wait runs out or is interrupted the promise is cancelled, 
+ * which aborts the exchange and frees its connection.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class AsyncBlockingRestClient implements BlockingRestClient {
+	private final RestClient restClient;
+	private final long timeoutNanos;
+	
+	/**
+	 * @param restClient
+	 * @param timeout
+	 * @param timeUnit
+	 */
+	protected AsyncBlockingRestClient(RestClient restClient, long timeout, TimeUnit timeUnit) {
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("The timeout has to be positive");
+		}
+		
+		this.restClient = restClient;
+		this.timeoutNanos = timeUnit.toNanos(timeout);
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#get(java.lang.String, java.lang.String, java.lang.Class, java.lang.Object[])
+	 */
+	@Override
+	public <O> HttpResponse<O> get(String path, String acceptHeader, Class<O> responseType, Object... pathVariables) throws IOException {
+		return await(restClient.get(path, acceptHeader, responseType, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#post(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.lang.Class, java.lang.Object[])
+	 */
+	@Override
+	public <I, O> HttpResponse<O> post(String path, String contentTypeHeader, String acceptHeader, I requestObject, Class<O> responseType, Object... pathVariables) throws IOException {
+		return await(restClient.post(path, contentTypeHeader, acceptHeader, requestObject, responseType, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#put(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.lang.Object[])
+	 */
+	@Override
+	public <I> HttpResponse<Void> put(String path, String contentTypeHeader, String acceptHeader, I requestObject, Object... pathVariables) throws IOException {
+		return await(restClient.put(path, contentTypeHeader, acceptHeader, requestObject, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#patch(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.lang.Object[])
+	 */
+	@Override
+	public <I> HttpResponse<Void> patch(String path, String contentTypeHeader, String acceptHeader, I requestObject, Object... pathVariables) throws IOException {
+		return await(restClient.patch(path, contentTypeHeader, acceptHeader, requestObject, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#delete(java.lang.String, java.lang.Object[])
+	 */
+	@Override
+	public HttpResponse<Void> delete(String path, Object... pathVariables) throws IOException {
+		return await(restClient.delete(path, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#get(java.lang.String, java.lang.String, java.lang.Class, java.util.Map, java.lang.Object[])
+	 */
+	@Override
+	public <O> HttpResponse<O> get(String path, String acceptHeader, Class<O> responseType, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException {
+		return await(restClient.get(path, acceptHeader, responseType, additonalHeaders, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#post(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.lang.Class, java.util.Map, java.lang.Object[])
+	 */
+	@Override
+	public <I, O> HttpResponse<O> post(String path, String contentTypeHeader, String acceptHeader, I requestObject, Class<O> responseType, 
+			Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException {
+		return await(restClient.post(path, contentTypeHeader, acceptHeader, requestObject, responseType, additonalHeaders, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#put(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.util.Map, java.lang.Object[])
+	 */
+	@Override
+	public <I> HttpResponse<Void> put(String path, String contentTypeHeader, String acceptHeader, I requestObject, Map<String, List<String>> additonalHeaders, 
+			Object... pathVariables) throws IOException {
+		return await(restClient.put(path, contentTypeHeader, acceptHeader, requestObject, additonalHeaders, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#patch(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.util.Map, java.lang.Object[])
+	 */
+	@Override
+	public <I> HttpResponse<Void> patch(String path, String contentTypeHeader, String acceptHeader, I requestObject, Map<String, List<String>> additonalHeaders, 
+			Object... pathVariables) throws IOException {
+		return await(restClient.patch(path, contentTypeHeader, acceptHeader, requestObject, additonalHeaders, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#delete(java.lang.String, java.util.Map, java.lang.Object[])
+	 */
+	@Override
+	public HttpResponse<Void> delete(String path, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException {
+		return await(restClient.delete(path, additonalHeaders, pathVariables));
+	}
+
+	/**
+	 * @see com.kixeye.relax.BlockingRestClient#getRestClient()
+	 */
+	@Override
+	public RestClient getRestClient() {
+		return restClient;
+	}
+
+	/**
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		restClient.close();
+	}
+	
+	/**
+	 * Waits for the promise, cancelling it if the wait runs out or is interrupted.
+	 * 
+	 * @param promise
+	 * @return
+	 * @throws IOException
+	 */
+	private <T> T await(HttpPromise<T> promise) throws IOException {
+		try {
+			promise.waitForComplete(timeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			if (promise.cancel()) {
+				Thread.currentThread().interrupt();
+				
+				InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for the response");
+				exception.initCause(e);
+				
+				throw exception;
+			}
+			
+			// the response made it in before the cancel, keep the interrupt for whatever blocks next
+			Thread.currentThread().interrupt();
+		}
+		
+		if (promise.cancel()) {
+			throw new RequestTimeoutException(TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+		}
+		
+		try {
+			return promise.get();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+}
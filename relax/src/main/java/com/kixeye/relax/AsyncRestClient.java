@@ -0,0 +1,1700 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kixeye.relax.HttpPromise.HttpPromiseListener;
+import com.kixeye.relax.metrics.RestClientMetricsListener;
+import com.kixeye.relax.util.ByteArrayPool;
+import com.kixeye.relax.util.UrlTemplate;
+
+/**
+ * A REST Async HTTP Client.
+ * 
+ * @author ebahtijaragic
+ */
+public class AsyncRestClient implements RestClient {
+	private static final Logger logger = LoggerFactory.getLogger(AsyncRestClient.class);
+	
+	private static final int MAX_CACHED_URL_TEMPLATES = 1024;
+	
+	private static final int STREAM_PREFETCH = 256;
+	
+	private boolean isTransportShared = false;
+	
+	private RestClientTransport transport;
+
+	private RestClientSerDe serDe;
+	
+	private String uriPrefix = "";
+	private final ConcurrentMap<String, UrlTemplate> urlTemplates = new ConcurrentHashMap<>();
+	
+	private Executor serializationExecutor;
+	private int serializationBufferSize;
+	
+	private ByteArrayPool bufferPool;
+	private boolean isDataDiscardedOnDeserialize = false;
+	
+	private Executor deserializationExecutor;
+	
+	private RestClientMetricsListener metricsListener;
+	
+	private HttpResponseCache responseCache;
+	
+	private HedgingPolicy hedgingPolicy;
+	
+	private EndpointBalancer endpointBalancer;
+	
+	private CircuitBreakerPolicy circuitBreakerPolicy;
+	
+	private ConcurrencyLimitPolicy concurrencyLimitPolicy;
+	
+	private RateLimitPolicy rateLimitPolicy;
+	
+	private CompressionPolicy compressionPolicy;
+	
+	private ServerSentEventPolicy serverSentEventPolicy = new ServerSentEventPolicy();
+	
+	private boolean isGetCoalesced = false;
+	private final ConcurrentMap<String, CoalescedGet<?>> coalescedGets = new ConcurrentHashMap<>();
+	
+	/**
+	 * Creates an {@link AsyncRestClient}
+	 */
+	protected AsyncRestClient() {
+		
+	}
+	
+	/**
+	 * Sets the uri prefix.
+	 * 
+	 * @param uriPrefix
+	 */
+	protected void setUriPrefix(String uriPrefix) {
+		if (uriPrefix == null) {
+			uriPrefix = "";
+		}
+		
+		this.uriPrefix = uriPrefix;
+	}
+	
+	/**
+	 * Sets the serDe.
+	 * 
+	 * @param serDe
+	 */
+	protected void setSerDe(RestClientSerDe serDe) {
+		this.serDe = serDe;
+	}
+	
+	/**
+	 * Sets the executor that streaming serializers write request bodies on.
+	 * 
+	 * @param serializationExecutor
+	 * @param serializationBufferSize
+	 */
+	protected void setSerializationExecutor(Executor serializationExecutor, int serializationBufferSize) {
+		this.serializationExecutor = serializationExecutor;
+		this.serializationBufferSize = serializationBufferSize;
+	}
+	
+	/**
+	 * Sets the pool that response bodies are read into.
+	 * 
+	 * @param bufferPool
+	 */
+	protected void setBufferPool(ByteArrayPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+	
+	/**
+	 * Sets whether response data is dropped once it has been deserialized.
+	 * 
+	 * @param isDataDiscardedOnDeserialize
+	 */
+	protected void setDataDiscardedOnDeserialize(boolean isDataDiscardedOnDeserialize) {
+		this.isDataDiscardedOnDeserialize = isDataDiscardedOnDeserialize;
+	}
+	
+	/**
+	 * Sets the executor that response bodies are deserialized on before the promise completes.
+	 * 
+	 * @param deserializationExecutor
+	 */
+	protected void setDeserializationExecutor(Executor deserializationExecutor) {
+		this.deserializationExecutor = deserializationExecutor;
+	}
+	
+	/**
+	 * Sets the listener that is told about every request.
+	 * 
+	 * @param metricsListener
+	 */
+	protected void setMetricsListener(RestClientMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+	
+	/**
+	 * Sets the cache that GET responses are served from and stored in.
+	 * 
+	 * @param responseCache
+	 */
+	protected void setResponseCache(HttpResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+	
+	/**
+	 * Sets the balancer that picks the endpoint of every request. Requests are built with its primary uri prefix.
+	 * 
+	 * @param endpointBalancer
+	 */
+	protected void setEndpointBalancer(EndpointBalancer endpointBalancer) {
+		this.endpointBalancer = endpointBalancer;
+		
+		setUriPrefix(endpointBalancer.getPrimaryUriPrefix());
+	}
+	
+	/**
+	 * Sets the policy that fails requests to hosts whose circuit breaker is open.
+	 * 
+	 * @param circuitBreakerPolicy
+	 */
+	protected void setCircuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+		this.circuitBreakerPolicy = circuitBreakerPolicy;
+	}
+	
+	/**
+	 * Sets the policy that bounds the number of requests in flight to every host.
+	 * 
+	 * @param concurrencyLimitPolicy
+	 */
+	protected void setConcurrencyLimitPolicy(ConcurrencyLimitPolicy concurrencyLimitPolicy) {
+		this.concurrencyLimitPolicy = concurrencyLimitPolicy;
+	}
+	
+	/**
+	 * Sets the policy that paces the requests of every route.
+	 * 
+	 * @param rateLimitPolicy
+	 */
+	protected void setRateLimitPolicy(RateLimitPolicy rateLimitPolicy) {
+		this.rateLimitPolicy = rateLimitPolicy;
+	}
+	
+	/**
+	 * Sets the policy that compresses requests and responses.
+	 * 
+	 * @param compressionPolicy
+	 */
+	protected void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+		this.compressionPolicy = compressionPolicy;
+	}
+	
+	/**
+	 * Sets the policy Server-Sent Events streams reconnect by.
+	 * 
+	 * @param serverSentEventPolicy
+	 */
+	protected void setServerSentEventPolicy(ServerSentEventPolicy serverSentEventPolicy) {
+		this.serverSentEventPolicy = serverSentEventPolicy;
+	}
+	
+	/**
+	 * Sets the policy that decides which requests are hedged and when.
+	 * 
+	 * @param hedgingPolicy
+	 */
+	protected void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+		this.hedgingPolicy = hedgingPolicy;
+	}
+	
+	/**
+	 * Sets whether identical concurrent GETs share a single exchange.
+	 * 
+	 * @param isGetCoalesced
+	 */
+	protected void setGetCoalesced(boolean isGetCoalesced) {
+		this.isGetCoalesced = isGetCoalesced;
+	}
+	
+	/**
+	 * Sets the transport requests are sent over.
+	 * 
+	 * @param transport
+	 * @param isTransportShared true if the transport is not to be closed with the client
+	 */
+	protected void setTransport(RestClientTransport transport, boolean isTransportShared) {
+		this.transport = transport;
+		this.isTransportShared = isTransportShared;
+	}
+	
+	/**
+	 * Clsoes the client.
+	 * 
+	 * @return
+	 * @throws IOException 
+	 */
+	public void close() throws IOException {
+		if (!isTransportShared) {
+			transport.close();
+		}
+	}
+
+	/**
+	 * @see com.kixeye.relax.RestClient#get(java.lang.String, java.lang.String, java.lang.Class, java.lang.Object[])
+	 */
+	@Override
+	public <O> HttpPromise<HttpResponse<O>> get(final String path, String acceptHeader, final Class<O> responseType, Object... pathVariables) throws IOException {
+		return get(path, acceptHeader, responseType, null, pathVariables);
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#get(java.lang.String, java.lang.Class, java.lang.Object)
+	 */
+	@Override
+	public <O> HttpPromise<HttpResponse<O>> get(final String path, String acceptHeader, final Class<O> responseType, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException {
+		HttpPromise<HttpResponse<O>> promise = new HttpPromise<>();
+		
+		get(path, acceptHeader, responseType, additonalHeaders, pathVariables, promise);
+		
+		return promise;
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#getBatch(java.lang.String, java.lang.String, java.lang.Class, int, java.util.List)
+	 */
+	@Override
+	public <O> List<HttpPromise<HttpResponse<O>>> getBatch(String path, String acceptHeader, Class<O> responseType, int maxConcurrency, List<Object[]> pathVariables) {
+		return getBatch(path, acceptHeader, responseType, null, maxConcurrency, pathVariables);
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#getBatch(java.lang.String, java.lang.String, java.lang.Class, java.util.Map, int, java.util.List)
+	 */
+	@Override
+	public <O> List<HttpPromise<HttpResponse<O>>> getBatch(String path, String acceptHeader, Class<O> responseType, Map<String, List<String>> additonalHeaders, 
+			int maxConcurrency, List<Object[]> pathVariables) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("The max concurrency has to be at least 1");
+		}
+		
+		GetBatch<O> batch = new GetBatch<>(path, acceptHeader, responseType, additonalHeaders, pathVariables);
+		
+		for (int i = 0; i < Math.min(maxConcurrency, pathVariables.size()); i++) {
+			batch.next();
+		}
+		
+		return batch.promises;
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#stream(java.lang.String, java.lang.String, java.lang.Class, java.lang.Object[])
+	 */
+	@Override
+	public <O> StreamPublisher<O> stream(String path, String acceptHeader, Class<O> elementType, Object... pathVariables) {
+		return stream(path, acceptHeader, elementType, null, pathVariables);
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#stream(java.lang.String, java.lang.String, java.lang.Class, java.util.Map, java.lang.Object[])
+	 */
+	@Override
+	public <O> StreamPublisher<O> stream(final String path, final String acceptHeader, final Class<O> elementType, 
+			final Map<String, List<String>> additonalHeaders, final Object... pathVariables) {
+		return new StreamPublisher<O>() {
+			public void subscribe(StreamSubscriber<? super O> subscriber) {
+				ElementStream<O> stream = new JsonElementStream<>(serDe, elementType, compressionPolicy, subscriber, STREAM_PREFETCH);
+				
+				subscriber.onSubscribe(stream);
+				
+				if (stream.isCancelled()) {
+					return;
+				}
+				
+				HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+				stream.setPromise(promise);
+				
+				try {
+					// streams are neither cached, coalesced nor hedged
+					execute(createGet(path, acceptHeader, additonalHeaders, pathVariables), path, Void.class, stream.createResponseConsumer(), metricsListener, promise);
+				} catch (Exception e) {
+					promise.setError(e);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#events(java.lang.String, java.lang.Object[])
+	 */
+	@Override
+	public StreamPublisher<ServerSentEvent> events(String path, Object... pathVariables) {
+		return events(path, null, pathVariables);
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#events(java.lang.String, java.util.Map, java.lang.Object[])
+	 */
+	@Override
+	public StreamPublisher<ServerSentEvent> events(final String path, final Map<String, List<String>> additonalHeaders, final Object... pathVariables) {
+		return new StreamPublisher<ServerSentEvent>() {
+			public void subscribe(StreamSubscriber<? super ServerSentEvent> subscriber) {
+				final ServerSentEventStream stream = new ServerSentEventStream(serverSentEventPolicy, compressionPolicy, subscriber) {
+					protected void connect(String lastEventId, HttpPromise<HttpResponse<Void>> promise) throws Exception {
+						HttpGet request = createGet(path, CONTENT_TYPE, additonalHeaders, pathVariables);
+						request.setHeader("Cache-Control", "no-cache");
+						
+						if (lastEventId != null && !lastEventId.isEmpty()) {
+							request.setHeader("Last-Event-ID", lastEventId);
+						}
+						
+						// like streams, event streams are neither cached, coalesced nor hedged
+						execute(request, path, Void.class, createResponseConsumer(), metricsListener, promise);
+					}
+				};
+				
+				subscriber.onSubscribe(stream);
+				
+				stream.reconnect();
+			}
+		};
+	}
+	
+	/**
+	 * Builds a GET.
+	 * 
+	 * @param path
+	 * @param acceptHeader
+	 * @param additonalHeaders
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	private HttpGet createGet(String path, String acceptHeader, Map<String, List<String>> additonalHeaders, Object[] pathVariables) throws IOException {
+		HttpGet request = new HttpGet(expandUrl(path, pathVariables));
+		
+		if (acceptHeader != null) {
+			request.setHeader("Accept", acceptHeader);
+		}
+		
+		if (additonalHeaders != null && !additonalHeaders.isEmpty()) {
+			for (Entry<String, List<String>> header : additonalHeaders.entrySet()) {
+				for (String value : header.getValue()) {
+					request.addHeader(header.getKey(), value);
+				}
+			}
+		}
+		
+		return request;
+	}
+	
+	/**
+	 * Builds a GET and executes it into the given promise.
+	 * 
+	 * @param path
+	 * @param acceptHeader
+	 * @param responseType
+	 * @param additonalHeaders
+	 * @param pathVariables
+	 * @param promise
+	 * @throws IOException
+	 */
+	private <O> void get(String path, String acceptHeader, Class<O> responseType, Map<String, List<String>> additonalHeaders, Object[] pathVariables, 
+			HttpPromise<HttpResponse<O>> promise) throws IOException {
+		HttpGet request = createGet(path, acceptHeader, additonalHeaders, pathVariables);
+
+		if (isGetCoalesced) {
+			coalesce(request, path, responseType, promise);
+		} else {
+			dispatch(request, path, responseType, promise);
+		}
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#post(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.lang.Class, java.lang.Object[])
+	 */
+	@Override
+	public <I, O> HttpPromise<HttpResponse<O>> post(String path, String contentTypeHeader, String acceptHeader, I requestObject, final Class<O> responseType, Object... pathVariables) throws IOException {
+		return post(path, contentTypeHeader, acceptHeader, requestObject, responseType, null, pathVariables);
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#post(java.lang.String, java.lang.String, java.lang.String, I, java.lang.Class, java.lang.Object)
+	 */
+	@Override
+	public <I, O> HttpPromise<HttpResponse<O>> post(String path, String contentTypeHeader, String acceptHeader, I requestObject, final Class<O> responseType, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException {
+		HttpPromise<HttpResponse<O>> promise = new HttpPromise<>();
+		
+		HttpPost request = new HttpPost(expandUrl(path, pathVariables));
+		if (requestObject != null) {
+			request.setEntity(createEntity(contentTypeHeader, requestObject));
+		}
+		
+		if (contentTypeHeader != null) {
+			request.setHeader("Content-Type", contentTypeHeader);
+		}
+		
+		if (acceptHeader != null) {
+			request.setHeader("Accept", acceptHeader);
+		}
+
+		if (additonalHeaders != null && !additonalHeaders.isEmpty()) {
+			for (Entry<String, List<String>> header : additonalHeaders.entrySet()) {
+				for (String value : header.getValue()) {
+					request.addHeader(header.getKey(), value);
+				}
+			}
+		}
+		
+		dispatch(request, path, responseType, promise);
+		
+		return promise;
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#put(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.lang.Object[])
+	 */
+	@Override
+	public <I> HttpPromise<HttpResponse<Void>> put(String path, String contentTypeHeader, String acceptHeader, I requestObject, Object... pathVariables) throws IOException {
+		return put(path, contentTypeHeader, acceptHeader, requestObject, null, pathVariables);
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#put(java.lang.String, java.lang.String, java.lang.String, I, java.lang.Object)
+	 */
+	@Override
+	public <I> HttpPromise<HttpResponse<Void>> put(String path, String contentTypeHeader, String acceptHeader, I requestObject, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException {
+		HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+		
+		HttpPost request = new HttpPost(expandUrl(path, pathVariables));
+		if (requestObject != null) {
+			request.setEntity(createEntity(contentTypeHeader, requestObject));
+		}
+		
+		if (contentTypeHeader != null) {
+			request.setHeader("Content-Type", contentTypeHeader);
+		}
+		
+		if (acceptHeader != null) {
+			request.setHeader("Accept", acceptHeader);
+		}
+		
+		if (additonalHeaders != null && !additonalHeaders.isEmpty()) {
+			for (Entry<String, List<String>> header : additonalHeaders.entrySet()) {
+				for (String value : header.getValue()) {
+					request.addHeader(header.getKey(), value);
+				}
+			}
+		}
+
+		dispatch(request, path, null, promise);
+		
+		return promise;
+	}
+
+	/**
+	 * @see com.kixeye.relax.RestClient#patch(java.lang.String, java.lang.String, java.lang.String, java.lang.Object, java.lang.Object[])
+	 */
+	@Override
+	public <I> HttpPromise<HttpResponse<Void>> patch(String path, String contentTypeHeader, String acceptHeader, I requestObject, Object... pathVariables) throws IOException {
+		return patch(path, contentTypeHeader, acceptHeader, requestObject, null, pathVariables);
+	}
+
+	/**
+	 * @see com.kixeye.relax.RestClient#patch(java.lang.String, java.lang.String, java.lang.String, I, java.lang.Object)
+	 */
+	@Override
+	public <I> HttpPromise<HttpResponse<Void>> patch(String path, String contentTypeHeader, String acceptHeader, I requestObject, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException {
+		HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+		
+		HttpPatch request = new HttpPatch(expandUrl(path, pathVariables));
+		if (requestObject != null) {
+			request.setEntity(createEntity(contentTypeHeader, requestObject));
+		}
+		
+		if (contentTypeHeader != null) {
+			request.setHeader("Content-Type", contentTypeHeader);
+		}
+		
+		if (acceptHeader != null) {
+			request.setHeader("Accept", acceptHeader);
+		}
+		
+		if (additonalHeaders != null && !additonalHeaders.isEmpty()) {
+			for (Entry<String, List<String>> header : additonalHeaders.entrySet()) {
+				for (String value : header.getValue()) {
+					request.addHeader(header.getKey(), value);
+				}
+			}
+		}
+
+		dispatch(request, path, null, promise);
+		
+		return promise;
+	}
+
+	/**
+	 * @see com.kixeye.relax.RestClient#delete(java.lang.String, java.lang.Object[])
+	 */
+	@Override
+	public <I> HttpPromise<HttpResponse<Void>> delete(String path, Object... pathVariables) throws IOException {
+		return delete(path, null, pathVariables);
+	}
+
+	/**
+	 * @see com.kixeye.relax.RestClient#delete(java.lang.String, java.util.Map, java.lang.Object[])
+	 */
+	@Override
+	public <I> HttpPromise<HttpResponse<Void>> delete(String path, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException {
+		HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+		
+		HttpDelete request = new HttpDelete(expandUrl(path, pathVariables));
+		
+		if (additonalHeaders != null && !additonalHeaders.isEmpty()) {
+			for (Entry<String, List<String>> header : additonalHeaders.entrySet()) {
+				for (String value : header.getValue()) {
+					request.addHeader(header.getKey(), value);
+				}
+			}
+		}
+		
+		dispatch(request, path, null, promise);
+		
+		return promise;
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClient#getConnectionPoolStats()
+	 */
+	@Override
+	public ConnectionPoolStats getConnectionPoolStats() {
+		return transport.getConnectionPoolStats();
+	}
+	
+	/**
+	 * Expands a path behind the uri prefix, compiling its template once and caching it.
+	 * 
+	 * @param path
+	 * @param pathVariables
+	 * @return
+	 */
+	private String expandUrl(String path, Object[] pathVariables) {
+		UrlTemplate template = urlTemplates.get(path);
+		
+		if (template == null) {
+			template = UrlTemplate.compile(path);
+			
+			// paths that were expanded by the caller would grow the cache without bound
+			if (urlTemplates.size() < MAX_CACHED_URL_TEMPLATES) {
+				urlTemplates.putIfAbsent(path, template);
+			}
+		}
+		
+		return template.expand(uriPrefix, pathVariables, null);
+	}
+	
+	/**
+	 * Creates the request entity, streaming it if the serDe supports it and a serialization executor is configured.
+	 * 
+	 * @param contentTypeHeader
+	 * @param requestObject
+	 * @return
+	 * @throws IOException
+	 */
+	private HttpEntity createEntity(String contentTypeHeader, Object requestObject) throws IOException {
+		if (serializationExecutor != null && serDe instanceof StreamingRestClientSerDe) {
+			return new StreamingRequestEntity((StreamingRestClientSerDe)serDe, contentTypeHeader, requestObject, serializationExecutor, serializationBufferSize, 
+					compressionPolicy != null && compressionPolicy.isRequestCompressed(-1) ? compressionPolicy : null);
+		}
+		
+		byte[] data = serDe.serialize(contentTypeHeader, requestObject);
+		
+		if (data != null && compressionPolicy != null && compressionPolicy.isRequestCompressed(data.length)) {
+			ByteArrayEntity entity = new ByteArrayEntity(compressionPolicy.compress(data));
+			entity.setContentEncoding("gzip");
+			
+			return entity;
+		}
+		
+		return new ByteArrayEntity(data);
+	}
+	
+	/**
+	 * Executes the request, hedging it if the hedging policy allows.
+	 * 
+	 * @param request
+	 * @param path
+	 * @param responseType
+	 * @param promise
+	 */
+	private <R> void dispatch(HttpUriRequest request, String path, Class<R> responseType, HttpPromise<HttpResponse<R>> promise) {
+		if (hedgingPolicy != null && hedgingPolicy.isHedged(request.getMethod(), path)) {
+			HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest)request).getEntity() : null;
+			
+			// a streamed body can only be sent once
+			if (entity == null || entity.isRepeatable()) {
+				new HedgedRequest<>(request, path, responseType, promise).start();
+				
+				return;
+			}
+		}
+		
+		execute(request, path, responseType, promise);
+	}
+	
+	/**
+	 * Executes the request, serving it from the cache if possible and pacing it to its route's rate limit.
+	 * 
+	 * @param request
+	 * @param path the unexpanded path template the request was made with
+	 * @param responseType
+	 * @param promise
+	 */
+	private <R> void execute(HttpUriRequest request, String path, Class<R> responseType, HttpPromise<HttpResponse<R>> promise) {
+		execute(request, path, responseType, null, metricsListener, promise);
+	}
+	
+	/**
+	 * Executes the request, serving it from the cache if possible and pacing it to its route's rate limit.
+	 * 
+	 * @param request
+	 * @param path the unexpanded path template the request was made with
+	 * @param responseType
+	 * @param responseConsumer the consumer to read the response with, or null to read it into an {@link HttpResponse}
+	 * @param metricsListener the listener to report the request to, or null if it is reported by the caller
+	 * @param promise
+	 */
+	private <R> void execute(HttpUriRequest request, String path, Class<R> responseType, HttpAsyncResponseConsumer<HttpResponse<R>> responseConsumer, 
+			RestClientMetricsListener metricsListener, HttpPromise<HttpResponse<R>> promise) {
+		// the uri before an endpoint is picked, so cache entries are shared by all endpoints
+		String uri = request.getURI().toString();
+		
+		if (compressionPolicy != null && !request.containsHeader("Accept-Encoding")) {
+			request.addHeader("Accept-Encoding", CompressionPolicy.ACCEPT_ENCODING);
+		}
+		
+		boolean isCached = responseCache != null && responseConsumer == null && responseType != null && !Void.class.equals(responseType) && HttpResponseCache.isCacheable(request);
+		HttpResponseCache.CachedResponse staleResponse = null;
+		
+		if (isCached) {
+			long now = System.currentTimeMillis();
+			HttpResponseCache.CachedResponse cachedResponse = responseCache.lookup(uri, request, now);
+			
+			if (cachedResponse != null && cachedResponse.isFresh(now)) {
+				promise.set(cachedResponse.toResponse(serDe, responseType, isDataDiscardedOnDeserialize));
+				
+				return;
+			} else if (cachedResponse != null) {
+				cachedResponse.addConditionalHeaders(request);
+				staleResponse = cachedResponse;
+			}
+		}
+		
+		RateLimitPolicy.TokenBucket bucket = rateLimitPolicy != null ? rateLimitPolicy.getBucket(path) : null;
+		long delayNanos = bucket != null ? bucket.reserve() : 0;
+		
+		if (delayNanos < 0) {
+			RateLimitExceededException error = new RateLimitExceededException(path);
+			
+			if (metricsListener != null) {
+				metricsListener.requestStarted(request.getMethod(), path);
+				metricsListener.requestFailed(request.getMethod(), path, error, 0);
+			}
+			
+			promise.setError(error);
+		} else if (delayNanos > 0) {
+			delay(request, uri, path, responseType, isCached, staleResponse, responseConsumer, metricsListener, promise, delayNanos);
+		} else {
+			executeOnEndpoint(request, uri, path, responseType, isCached, staleResponse, responseConsumer, metricsListener, promise);
+		}
+	}
+	
+	/**
+	 * Executes the request once its rate limit allows, unless it is cancelled in the meantime.
+	 * 
+	 * @param request
+	 * @param uri
+	 * @param path
+	 * @param responseType
+	 * @param isCached
+	 * @param staleResponse
+	 * @param responseConsumer
+	 * @param metricsListener
+	 * @param promise
+	 * @param delayNanos
+	 */
+	private <R> void delay(final HttpUriRequest request, final String uri, final String path, final Class<R> responseType, final boolean isCached, 
+			final HttpResponseCache.CachedResponse staleResponse, final HttpAsyncResponseConsumer<HttpResponse<R>> responseConsumer, 
+			final RestClientMetricsListener metricsListener, final HttpPromise<HttpResponse<R>> promise, long delayNanos) {
+		final ScheduledFuture<?> delayed = rateLimitPolicy.getScheduler().schedule(new Runnable() {
+			public void run() {
+				if (promise.isComplete()) {
+					return;
+				}
+				
+				try {
+					executeOnEndpoint(request, uri, path, responseType, isCached, staleResponse, responseConsumer, metricsListener, promise);
+				} catch (Exception e) {
+					promise.setError(e);
+				}
+			}
+		}, delayNanos, TimeUnit.NANOSECONDS);
+		
+		promise.setCancellable(new Cancellable() {
+			public boolean cancel() {
+				return delayed.cancel(false);
+			}
+		});
+	}
+	
+	/**
+	 * Picks the endpoint of the request and executes it, unless the host's circuit breaker or concurrency limit prevent it.
+	 * 
+	 * @param request
+	 * @param uri the uri the response is cached under
+	 * @param path the unexpanded path template the request was made with
+	 * @param responseType
+	 * @param isCached whether the response is to be stored in the cache
+	 * @param staleResponse the cached response the request revalidates, or null
+	 * @param responseConsumer the consumer to read the response with, or null to read it into an {@link HttpResponse}
+	 * @param metricsListener the listener to report the request to, or null
+	 * @param promise
+	 */
+	private <R> void executeOnEndpoint(HttpUriRequest request, String uri, String path, Class<R> responseType, boolean isCached, 
+			HttpResponseCache.CachedResponse staleResponse, HttpAsyncResponseConsumer<HttpResponse<R>> responseConsumer, 
+			RestClientMetricsListener metricsListener, HttpPromise<HttpResponse<R>> promise) {
+		EndpointBalancer.Endpoint endpoint = null;
+		
+		if (endpointBalancer != null && request instanceof HttpRequestBase && uri.startsWith(uriPrefix)) {
+			endpoint = endpointBalancer.select();
+			
+			if (!endpoint.getUriPrefix().equals(uriPrefix)) {
+				((HttpRequestBase)request).setURI(URI.create(endpoint.getUriPrefix() + uri.substring(uriPrefix.length())));
+			}
+		}
+		
+		HttpHost target = URIUtils.extractHost(request.getURI());
+		CircuitBreakerPolicy.CircuitBreaker circuitBreaker = null;
+		long circuitBreakerCall = CircuitBreakerPolicy.CircuitBreaker.REJECTED;
+		
+		if (target != null && circuitBreakerPolicy != null) {
+			circuitBreaker = circuitBreakerPolicy.getCircuitBreaker(target);
+			circuitBreakerCall = circuitBreaker.tryAcquire();
+			
+			if (circuitBreakerCall == CircuitBreakerPolicy.CircuitBreaker.REJECTED) {
+				if (endpoint != null) {
+					endpoint.cancelled();
+				}
+				
+				CircuitBreakerOpenException error = new CircuitBreakerOpenException(target);
+				
+				if (metricsListener != null) {
+					metricsListener.requestStarted(request.getMethod(), path);
+					metricsListener.requestFailed(request.getMethod(), path, error, 0);
+				}
+				
+				promise.setError(error);
+				
+				return;
+			}
+		}
+		
+		ConcurrencyLimitPolicy.ConcurrencyLimiter limiter = target != null && concurrencyLimitPolicy != null ? concurrencyLimitPolicy.getLimiter(target) : null;
+		
+		final AsyncRestClientResponseCallback<R> callback = new AsyncRestClientResponseCallback<>(request, uri, path, responseType, isCached, staleResponse, 
+				responseConsumer, metricsListener, endpoint, circuitBreaker, circuitBreakerCall, limiter, promise);
+		
+		if (target == null) {
+			callback.failed(new ClientProtocolException("URI does not specify a valid host name: " + request.getURI()));
+			
+			return;
+		}
+		
+		if (limiter == null) {
+			send(target, callback);
+			
+			return;
+		}
+		
+		final HttpHost limitedTarget = target;
+		
+		limiter.acquire(new ConcurrencyLimitPolicy.Waiter() {
+			public void acquired() {
+				send(limitedTarget, callback);
+			}
+			
+			public void rejected(ConcurrencyLimitExceededException error) {
+				callback.rejected(error);
+			}
+		});
+	}
+	
+	/**
+	 * Sends the request to the host, unless it was cancelled while waiting for the concurrency limit.
+	 * 
+	 * @param target
+	 * @param callback
+	 */
+	private <R> void send(HttpHost target, AsyncRestClientResponseCallback<R> callback) {
+		if (callback.promise.isComplete()) {
+			callback.cancelled();
+			
+			return;
+		}
+		
+		callback.sending();
+		
+		final Future<HttpResponse<R>> future;
+		
+		HttpAsyncResponseConsumer<HttpResponse<R>> responseConsumer = callback.responseConsumer;
+		
+		if (responseConsumer == null) {
+			// cached bodies are kept as raw, unpooled bytes
+			responseConsumer = new AsyncRestClientResponseConsumer<>(serDe, callback.responseType, callback.isCached ? null : bufferPool, 
+					isDataDiscardedOnDeserialize, !callback.isCached, compressionPolicy);
+		} else {
+			// a stream's body lasts as long as the stream, so its exchange is accounted for once the headers arrive
+			responseConsumer = new StreamedResponseConsumer<>(responseConsumer, callback);
+		}
+		
+		try {
+			future = transport.execute(target, callback.request, responseConsumer, callback);
+		} catch (RuntimeException e) {
+			callback.failed(e);
+			
+			throw e;
+		}
+		
+		callback.promise.setCancellable(new Cancellable() {
+			public boolean cancel() {
+				return future.cancel(true);
+			}
+		});
+	}
+	
+	/**
+	 * Joins the promise to an identical GET that is in flight, or executes the request and lets later identical GETs join it.
+	 * 
+	 * @param request
+	 * @param path
+	 * @param responseType
+	 * @param promise
+	 */
+	private <R> void coalesce(HttpUriRequest request, String path, Class<R> responseType, HttpPromise<HttpResponse<R>> promise) {
+		String key = coalescingKey(request, responseType);
+		
+		while (true) {
+			// the key includes the response type
+			@SuppressWarnings("unchecked")
+			CoalescedGet<R> inFlight = (CoalescedGet<R>)coalescedGets.get(key);
+			
+			if (inFlight == null) {
+				inFlight = new CoalescedGet<>(key, promise);
+				
+				if (coalescedGets.putIfAbsent(key, inFlight) == null) {
+					HttpPromise<HttpResponse<R>> exchange = new HttpPromise<>();
+					exchange.addListener(inFlight);
+					
+					try {
+						dispatch(request, path, responseType, exchange);
+					} catch (RuntimeException e) {
+						exchange.setError(e);
+						
+						throw e;
+					}
+					
+					return;
+				}
+			} else if (inFlight.join(promise)) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Builds the key identical GETs share: the URL, the response type and every request header.
+	 * 
+	 * @param request
+	 * @param responseType
+	 * @return
+	 */
+	private static String coalescingKey(HttpUriRequest request, Class<?> responseType) {
+		String uri = request.getURI().toString();
+		Header[] headers = request.getAllHeaders();
+		
+		StringBuilder builder = new StringBuilder(uri.length() + 64 + headers.length * 32);
+		builder.append(uri).append('\n').append(responseType != null ? responseType.getName() : "");
+		
+		for (Header header : headers) {
+			builder.append('\n').append(header.getName()).append(':').append(header.getValue());
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Returns true if we're active.
+	 * 
+	 * @return
+	 */
+	public boolean isActive() {
+		return transport.isRunning();
+	}
+	
+	/**
+	 * A response callback that forwards the response to the promise, 
+	 * deserializing the body on the deserialization executor first if there is one.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	private class AsyncRestClientResponseCallback<R> implements FutureCallback<HttpResponse<R>> {
+		private final HttpUriRequest request;
+		private final String uri;
+		private final String method;
+		private final String path;
+		private long startNanos;
+		
+		private final Class<R> responseType;
+		private final boolean isCached;
+		private final HttpResponseCache.CachedResponse staleResponse;
+		private long requestTime;
+		
+		private final HttpAsyncResponseConsumer<HttpResponse<R>> responseConsumer;
+		private final RestClientMetricsListener metricsListener;
+		
+		private final EndpointBalancer.Endpoint endpoint;
+		private final CircuitBreakerPolicy.CircuitBreaker circuitBreaker;
+		private final long circuitBreakerCall;
+		private final ConcurrencyLimitPolicy.ConcurrencyLimiter limiter;
+		private final AtomicBoolean isSettled = new AtomicBoolean(false);
+		
+		private HttpPromise<HttpResponse<R>> promise;
+		
+		/**
+		 * @param request
+		 * @param uri the uri the response is cached under
+		 * @param path
+		 * @param responseType
+		 * @param isCached whether the response is to be stored in the cache
+		 * @param staleResponse the cached response the request revalidates, or null
+		 * @param responseConsumer the consumer to read the response with, or null to read it into an {@link HttpResponse}
+		 * @param metricsListener the listener to report the request to, or null
+		 * @param endpoint the endpoint the request was sent to, or null
+		 * @param circuitBreaker the breaker of the host the request was sent to, or null
+		 * @param circuitBreakerCall the token the breaker let the request through with
+		 * @param limiter the concurrency limiter of the host the request was sent to, or null
+		 * @param HttpPromise<HttpResponse<T>> promise
+		 */
+		protected AsyncRestClientResponseCallback(HttpUriRequest request, String uri, String path, Class<R> responseType, boolean isCached, 
+				HttpResponseCache.CachedResponse staleResponse, HttpAsyncResponseConsumer<HttpResponse<R>> responseConsumer, RestClientMetricsListener metricsListener, 
+				EndpointBalancer.Endpoint endpoint, CircuitBreakerPolicy.CircuitBreaker circuitBreaker, long circuitBreakerCall, 
+				ConcurrencyLimitPolicy.ConcurrencyLimiter limiter, HttpPromise<HttpResponse<R>> promise) {
+			this.request = request;
+			this.uri = uri;
+			this.method = request.getMethod();
+			this.path = path;
+			this.responseType = responseType;
+			this.isCached = isCached;
+			this.staleResponse = staleResponse;
+			this.responseConsumer = responseConsumer;
+			this.metricsListener = metricsListener;
+			this.requestTime = responseCache != null ? System.currentTimeMillis() : 0;
+			this.endpoint = endpoint;
+			this.circuitBreaker = circuitBreaker;
+			this.circuitBreakerCall = circuitBreakerCall;
+			this.limiter = limiter;
+			this.promise = promise;
+			this.startNanos = metricsListener != null || endpoint != null || circuitBreaker != null || limiter != null ? System.nanoTime() : 0;
+			
+			if (metricsListener != null) {
+				metricsListener.requestStarted(method, path);
+			}
+		}
+		
+		/**
+		 * Restarts the clocks when the request is sent, after it may have waited for the concurrency limit.
+		 */
+		private void sending() {
+			if (limiter != null) {
+				requestTime = responseCache != null ? System.currentTimeMillis() : 0;
+				startNanos = System.nanoTime();
+			}
+		}
+		
+		/**
+		 * Fails a request that was not sent because the concurrency limit was reached.
+		 * 
+		 * @param error
+		 */
+		private void rejected(ConcurrencyLimitExceededException error) {
+			if (endpoint != null) {
+				endpoint.cancelled();
+			}
+			
+			if (circuitBreaker != null) {
+				circuitBreaker.cancelled(circuitBreakerCall);
+			}
+			
+			if (metricsListener != null) {
+				metricsListener.requestFailed(method, path, error, System.nanoTime() - startNanos);
+			}
+			
+			promise.setError(error);
+		}
+
+		public void failed(Exception ex) {
+			if (!isSettled.compareAndSet(false, true)) {
+				// a stream that ended after its headers were accounted for
+				promise.setError(ex);
+				
+				return;
+			}
+			
+			if (endpoint != null) {
+				endpoint.completed(System.nanoTime() - startNanos, false);
+			}
+			
+			if (circuitBreaker != null) {
+				circuitBreaker.completed(circuitBreakerCall, System.nanoTime() - startNanos, false);
+			}
+			
+			if (limiter != null) {
+				limiter.completed(System.nanoTime() - startNanos, true);
+			}
+			
+			if (metricsListener != null) {
+				metricsListener.requestFailed(method, path, ex, System.nanoTime() - startNanos);
+			}
+			
+			promise.setError(ex);
+		}
+		
+		/**
+		 * Reports the response to the host's policies and the metrics, once per exchange.
+		 * 
+		 * @param statusCode
+		 * @param retryAfter
+		 */
+		private void settle(int statusCode, String retryAfter) {
+			if (!isSettled.compareAndSet(false, true)) {
+				return;
+			}
+			
+			if (endpoint != null) {
+				endpoint.completed(System.nanoTime() - startNanos, statusCode < 500);
+			}
+			
+			if (circuitBreaker != null) {
+				circuitBreaker.completed(circuitBreakerCall, System.nanoTime() - startNanos, statusCode < 500);
+			}
+			
+			if (limiter != null) {
+				limiter.completed(System.nanoTime() - startNanos, statusCode == 429 || statusCode == 503);
+			}
+			
+			if (rateLimitPolicy != null && (statusCode == 429 || statusCode == 503)) {
+				RateLimitPolicy.TokenBucket bucket = rateLimitPolicy.getBucket(path);
+				
+				if (bucket != null) {
+					bucket.throttled(retryAfter);
+				}
+			}
+			
+			if (metricsListener != null) {
+				metricsListener.requestCompleted(method, path, statusCode, System.nanoTime() - startNanos);
+			}
+		}
+		
+		public void completed(HttpResponse<R> response) {
+			settle(response.getStatusCode(), response.getFirstHeader("Retry-After"));
+			
+			if (responseCache != null) {
+				response = updateCache(response);
+			}
+			
+			final HttpResponse<R> result = response;
+			final SerializedObject<R> body = result.getBody();
+			
+			if (deserializationExecutor == null || body == null || body.getResponseType() == null || body.isDeserialized()) {
+				promise.set(result);
+				
+				return;
+			}
+			
+			try {
+				deserializationExecutor.execute(new Runnable() {
+					public void run() {
+						try {
+							body.deserialize();
+						} catch (Exception e) {
+							// not fatal, the caller gets the same error from deserialize()
+							logger.debug("Unable to deserialize response body", e);
+						}
+						
+						promise.set(result);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				promise.set(result);
+			}
+		}
+		
+		/**
+		 * Stores or revalidates the cached response, or invalidates it after an unsafe request.
+		 * 
+		 * @param response
+		 * @return the response to complete the promise with
+		 */
+		private HttpResponse<R> updateCache(HttpResponse<R> response) {
+			long responseTime = System.currentTimeMillis();
+			
+			if (isCached) {
+				if (staleResponse != null && response.getStatusCode() == 304) {
+					return responseCache.revalidated(uri, request, staleResponse, response.getAllHeaders(), requestTime, responseTime)
+							.toResponse(serDe, responseType, isDataDiscardedOnDeserialize);
+				}
+				
+				SerializedObject<R> body = response.getBody();
+				responseCache.store(uri, request, response.getStatusCode(), response.getAllHeaders(), body != null ? body.getData() : null, requestTime, responseTime);
+			} else if (!"GET".equals(method) && response.getStatusCode() < 400) {
+				responseCache.invalidate(uri);
+			}
+			
+			return response;
+		}
+		
+		public void cancelled() {
+			if (!isSettled.compareAndSet(false, true)) {
+				// a stream that was cancelled after its headers were accounted for
+				promise.setError(new CancellationException());
+				
+				return;
+			}
+			
+			if (endpoint != null) {
+				endpoint.cancelled();
+			}
+			
+			if (circuitBreaker != null) {
+				circuitBreaker.cancelled(circuitBreakerCall);
+			}
+			
+			if (limiter != null) {
+				limiter.cancelled();
+			}
+			
+			if (metricsListener != null) {
+				metricsListener.requestCancelled(method, path, System.nanoTime() - startNanos);
+			}
+			
+			promise.setError(new CancellationException());
+		}
+	}
+	
+	/**
+	 * Reads a streamed response with the stream's own consumer, settling the exchange with the host's policies and the metrics 
+	 * as soon as the headers arrive. Time-to-headers is what tells about the host, the rest of the body's time is how long 
+	 * the stream lasts and how fast its subscriber is, during which no concurrency permit is held.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	private class StreamedResponseConsumer<R> implements HttpAsyncResponseConsumer<HttpResponse<R>> {
+		private final HttpAsyncResponseConsumer<HttpResponse<R>> consumer;
+		private final AsyncRestClientResponseCallback<R> callback;
+		
+		/**
+		 * @param consumer
+		 * @param callback
+		 */
+		protected StreamedResponseConsumer(HttpAsyncResponseConsumer<HttpResponse<R>> consumer, AsyncRestClientResponseCallback<R> callback) {
+			this.consumer = consumer;
+			this.callback = callback;
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.HttpAsyncResponseConsumer#responseReceived(org.apache.http.HttpResponse)
+		 */
+		@Override
+		public void responseReceived(org.apache.http.HttpResponse response) throws IOException, HttpException {
+			Header retryAfterHeader = response.getFirstHeader("Retry-After");
+			callback.settle(response.getStatusLine().getStatusCode(), retryAfterHeader != null ? retryAfterHeader.getValue() : null);
+			
+			consumer.responseReceived(response);
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.HttpAsyncResponseConsumer#consumeContent(org.apache.http.nio.ContentDecoder, org.apache.http.nio.IOControl)
+		 */
+		@Override
+		public void consumeContent(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+			consumer.consumeContent(decoder, ioctrl);
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.HttpAsyncResponseConsumer#responseCompleted(org.apache.http.protocol.HttpContext)
+		 */
+		@Override
+		public void responseCompleted(HttpContext context) {
+			consumer.responseCompleted(context);
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.HttpAsyncResponseConsumer#failed(java.lang.Exception)
+		 */
+		@Override
+		public void failed(Exception ex) {
+			consumer.failed(ex);
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.HttpAsyncResponseConsumer#getException()
+		 */
+		@Override
+		public Exception getException() {
+			return consumer.getException();
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.HttpAsyncResponseConsumer#getResult()
+		 */
+		@Override
+		public HttpResponse<R> getResult() {
+			return consumer.getResult();
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.HttpAsyncResponseConsumer#isDone()
+		 */
+		@Override
+		public boolean isDone() {
+			return consumer.isDone();
+		}
+
+		/**
+		 * @see java.io.Closeable#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			consumer.close();
+		}
+
+		/**
+		 * @see org.apache.http.concurrent.Cancellable#cancel()
+		 */
+		@Override
+		public boolean cancel() {
+			return consumer.cancel();
+		}
+	}
+	
+	/**
+	 * A batch of GETs that is worked through by a fixed number of lanes. Each lane sends the next GET 
+	 * once its last one has completed, so the batch keeps reusing the connections the first GETs opened.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	private class GetBatch<R> implements HttpPromiseListener<HttpResponse<R>> {
+		private final String path;
+		private final String acceptHeader;
+		private final Class<R> responseType;
+		private final Map<String, List<String>> additonalHeaders;
+		private final List<Object[]> pathVariables;
+		
+		private final List<HttpPromise<HttpResponse<R>>> promises;
+		
+		private final AtomicInteger nextIndex = new AtomicInteger();
+		private final AtomicInteger pendingLanes = new AtomicInteger();
+		
+		/**
+		 * @param path
+		 * @param acceptHeader
+		 * @param responseType
+		 * @param additonalHeaders
+		 * @param pathVariables
+		 */
+		protected GetBatch(String path, String acceptHeader, Class<R> responseType, Map<String, List<String>> additonalHeaders, List<Object[]> pathVariables) {
+			this.path = path;
+			this.acceptHeader = acceptHeader;
+			this.responseType = responseType;
+			this.additonalHeaders = additonalHeaders;
+			this.pathVariables = new ArrayList<>(pathVariables);
+			
+			this.promises = new ArrayList<>(pathVariables.size());
+			
+			for (int i = 0; i < pathVariables.size(); i++) {
+				promises.add(new HttpPromise<HttpResponse<R>>());
+			}
+		}
+		
+		/**
+		 * Sends the next GET on a free lane.
+		 */
+		protected void next() {
+			// GETs that complete right away free their lane from inside this loop, so it is trampolined instead of recursing
+			if (pendingLanes.getAndIncrement() != 0) {
+				return;
+			}
+			
+			do {
+				int index = nextIndex.getAndIncrement();
+				
+				if (index < promises.size()) {
+					HttpPromise<HttpResponse<R>> promise = promises.get(index);
+					
+					// a GET that was cancelled before its turn completes right away
+					if (!promise.isComplete()) {
+						try {
+							get(path, acceptHeader, responseType, additonalHeaders, pathVariables.get(index), promise);
+						} catch (Exception e) {
+							promise.setError(e);
+						}
+					}
+					
+					promise.addListener(this);
+				}
+			} while (pendingLanes.decrementAndGet() != 0);
+		}
+
+		/**
+		 * @see com.kixeye.relax.HttpPromise.HttpPromiseListener#handle(com.kixeye.relax.HttpPromise)
+		 */
+		@Override
+		public void handle(HttpPromise<HttpResponse<R>> promise) {
+			next();
+		}
+	}
+	
+	/**
+	 * A GET that identical GETs have joined. Every caller's promise is completed with the same response, 
+	 * and a pooled body is retained once for every caller after the first.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	private class CoalescedGet<R> implements HttpPromiseListener<HttpResponse<R>> {
+		private final String key;
+		
+		private final List<HttpPromise<HttpResponse<R>>> promises = new ArrayList<>(2);
+		private boolean isCompleted = false;
+		
+		/**
+		 * @param key
+		 * @param promise
+		 */
+		protected CoalescedGet(String key, HttpPromise<HttpResponse<R>> promise) {
+			this.key = key;
+			this.promises.add(promise);
+		}
+		
+		/**
+		 * Joins a promise to this GET.
+		 * 
+		 * @param promise
+		 * @return false if the GET has already completed
+		 */
+		protected synchronized boolean join(HttpPromise<HttpResponse<R>> promise) {
+			if (isCompleted) {
+				return false;
+			}
+			
+			promises.add(promise);
+			
+			return true;
+		}
+
+		/**
+		 * @see com.kixeye.relax.HttpPromise.HttpPromiseListener#handle(com.kixeye.relax.HttpPromise)
+		 */
+		public void handle(HttpPromise<HttpResponse<R>> exchange) {
+			coalescedGets.remove(key, this);
+			
+			synchronized (this) {
+				isCompleted = true;
+			}
+			
+			HttpResponse<R> response;
+			
+			try {
+				response = exchange.get();
+			} catch (Exception e) {
+				for (HttpPromise<HttpResponse<R>> promise : promises) {
+					promise.setError(e);
+				}
+				
+				return;
+			}
+			
+			// retain before any caller can release
+			SerializedObject<R> body = response.getBody();
+			for (int i = 1; body != null && i < promises.size(); i++) {
+				body.retain();
+			}
+			
+			for (HttpPromise<HttpResponse<R>> promise : promises) {
+				promise.set(response);
+			}
+		}
+	}
+	
+	/**
+	 * A request that is sent again if no response has arrived after the hedging delay. 
+	 * The first response completes the promise and the other attempt is cancelled. 
+	 * The metrics see one request, started with the first attempt and finished with the promise.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	private class HedgedRequest<R> implements Runnable, Cancellable {
+		private final HttpUriRequest request;
+		private final HttpUriRequest hedgeRequest;
+		private final String path;
+		private final Class<R> responseType;
+		private final HttpPromise<HttpResponse<R>> promise;
+		
+		private final HttpPromise<HttpResponse<R>> primary = new HttpPromise<>();
+		private final HttpPromise<HttpResponse<R>> hedge = new HttpPromise<>();
+		
+		private final AtomicBoolean isDecided = new AtomicBoolean(false);
+		private final AtomicBoolean isStarted = new AtomicBoolean(false);
+		private final AtomicInteger pendingAttempts = new AtomicInteger(1);
+		private volatile ScheduledFuture<?> hedgeTask;
+		private volatile long startNanos;
+		
+		/**
+		 * @param request
+		 * @param path
+		 * @param responseType
+		 * @param promise
+		 */
+		protected HedgedRequest(HttpUriRequest request, String path, Class<R> responseType, HttpPromise<HttpResponse<R>> promise) {
+			this.request = request;
+			// copied up front, executing the request may add conditional headers to it
+			this.hedgeRequest = RequestBuilder.copy(request).build();
+			this.path = path;
+			this.responseType = responseType;
+			this.promise = promise;
+		}
+		
+		/**
+		 * Sends the first attempt and schedules the hedge.
+		 */
+		protected void start() {
+			hedgingPolicy.deposit();
+			promise.setCancellable(this);
+			
+			startNanos = System.nanoTime();
+			
+			primary.addListener(new AttemptListener(false));
+			execute(request, path, responseType, null, metricsListener != null ? new AttemptMetricsListener() : null, primary);
+			
+			if (!isDecided.get()) {
+				hedgeTask = hedgingPolicy.getScheduler().schedule(this, hedgingPolicy.getDelayNanos(request.getMethod(), path), TimeUnit.NANOSECONDS);
+				
+				if (isDecided.get()) {
+					hedgeTask.cancel(false);
+				}
+			}
+		}
+
+		/**
+		 * Sends the hedge.
+		 */
+		public void run() {
+			if (isDecided.get() || promise.isComplete() || !hedgingPolicy.tryAcquire()) {
+				return;
+			}
+			
+			pendingAttempts.incrementAndGet();
+			
+			hedge.addListener(new AttemptListener(true));
+			
+			try {
+				execute(hedgeRequest, path, responseType, null, metricsListener != null ? new AttemptMetricsListener() : null, hedge);
+			} catch (RuntimeException e) {
+				hedge.setError(e);
+			}
+			
+			if (isDecided.get()) {
+				hedge.cancel();
+			}
+		}
+		
+		/**
+		 * Cancels both attempts when the caller cancels.
+		 * 
+		 * @see org.apache.http.concurrent.Cancellable#cancel()
+		 */
+		public boolean cancel() {
+			if (isDecided.compareAndSet(false, true) && isStarted.get()) {
+				metricsListener.requestCancelled(request.getMethod(), path, System.nanoTime() - startNanos);
+			}
+			
+			cancelHedgeTask();
+			
+			primary.cancel();
+			hedge.cancel();
+			
+			return true;
+		}
+		
+		/**
+		 * Cancels the hedge if it has not been sent yet.
+		 */
+		private void cancelHedgeTask() {
+			ScheduledFuture<?> currentHedgeTask = hedgeTask;
+			
+			if (currentHedgeTask != null) {
+				currentHedgeTask.cancel(false);
+			}
+		}
+		
+		/**
+		 * Completes the promise with the first response, or with the last error if no attempt responded.
+		 * 
+		 * @author ebahtijaragic
+		 */
+		private class AttemptListener implements HttpPromiseListener<HttpResponse<R>> {
+			private final boolean isHedge;
+			
+			/**
+			 * @param isHedge
+			 */
+			protected AttemptListener(boolean isHedge) {
+				this.isHedge = isHedge;
+			}
+
+			/**
+			 * @see com.kixeye.relax.HttpPromise.HttpPromiseListener#handle(com.kixeye.relax.HttpPromise)
+			 */
+			public void handle(HttpPromise<HttpResponse<R>> attempt) {
+				HttpResponse<R> response;
+				
+				try {
+					response = attempt.get();
+				} catch (Exception e) {
+					// the other attempt may still respond
+					if (pendingAttempts.decrementAndGet() == 0 && isDecided.compareAndSet(false, true)) {
+						cancelHedgeTask();
+						
+						if (isStarted.get()) {
+							metricsListener.requestFailed(request.getMethod(), path, e, System.nanoTime() - startNanos);
+						}
+						
+						promise.setError(e);
+					}
+					
+					return;
+				}
+				
+				if (isDecided.compareAndSet(false, true)) {
+					// the primary's latency, up to now if the hedge won and it is cancelled, so hedging does not shorten the samples
+					hedgingPolicy.record(request.getMethod(), path, System.nanoTime() - startNanos, isHedge);
+					
+					cancelHedgeTask();
+					
+					if (isStarted.get()) {
+						metricsListener.requestCompleted(request.getMethod(), path, response.getStatusCode(), System.nanoTime() - startNanos);
+					}
+					
+					(isHedge ? primary : hedge).cancel();
+					
+					promise.set(response);
+				} else if (response.getBody() != null) {
+					// the loser's pooled buffer goes straight back
+					response.getBody().release();
+				}
+			}
+		}
+		
+		/**
+		 * Passes on the start of the first attempt that is sent, a cache hit is not one. 
+		 * The attempts' outcomes are not passed on, the hedged request reports its own.
+		 * 
+		 * @author ebahtijaragic
+		 */
+		private class AttemptMetricsListener implements RestClientMetricsListener {
+			/**
+			 * @see com.kixeye.relax.metrics.RestClientMetricsListener#requestStarted(java.lang.String, java.lang.String)
+			 */
+			public void requestStarted(String method, String pathTemplate) {
+				if (isStarted.compareAndSet(false, true)) {
+					metricsListener.requestStarted(method, pathTemplate);
+				}
+			}
+			
+			/**
+			 * @see com.kixeye.relax.metrics.RestClientMetricsListener#requestCompleted(java.lang.String, java.lang.String, int, long)
+			 */
+			public void requestCompleted(String method, String pathTemplate, int statusCode, long durationNanos) {
+			}
+			
+			/**
+			 * @see com.kixeye.relax.metrics.RestClientMetricsListener#requestFailed(java.lang.String, java.lang.String, java.lang.Exception, long)
+			 */
+			public void requestFailed(String method, String pathTemplate, Exception error, long durationNanos) {
+			}
+			
+			/**
+			 * @see com.kixeye.relax.metrics.RestClientMetricsListener#requestCancelled(java.lang.String, java.lang.String, long)
+			 */
+			public void requestCancelled(String method, String pathTemplate, long durationNanos) {
+			}
+		}
+	}
+}
@@ -0,0 +1,316 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import com.kixeye.relax.util.ByteArrayPool;
+
+/**
+ * Consumes a response directly off the NIO decoder. 
+ * 
+ * <p>If the serDe is a {@link StreamingRestClientSerDe} the body of a successful response is handed to a {@link RestClientDecoder} 
+ * chunk by chunk, otherwise it is read into a single array presized from the Content-Length, taken from the 
+ * client's {@link ByteArrayPool} if it has one.</p>
+ * 
+ * <p>If the client compresses its traffic, gzip and deflate bodies are inflated on the way, 
+ * into the body array or the decoder's chunk, and the encoding headers are dropped from the response.</p>
+ * 
+ * @author ebahtijaragic
+ */
+class AsyncRestClientResponseConsumer<R> extends AbstractAsyncResponseConsumer<HttpResponse<R>> {
+	private static final int DEFAULT_BUFFER_SIZE = 4096;
+	private static final int MAX_PRESIZED_BUFFER_SIZE = 16 * 1024 * 1024;
+	
+	private final RestClientSerDe serDe;
+	private final Class<R> responseType;
+	private final ByteArrayPool pool;
+	private final boolean isDataDiscardedOnDeserialize;
+	private final boolean isStreamingAllowed;
+	private final CompressionPolicy compressionPolicy;
+	
+	private int statusCode;
+	private Header[] headers;
+	private String contentType;
+	private String contentEncoding;
+	
+	private RestClientDecoder<R> bodyDecoder;
+	private ByteBuffer chunk;
+	
+	private ContentInflater inflater;
+	private ByteBuffer compressedChunk;
+	private long compressedLength;
+	
+	private byte[] data;
+	private int dataLength;
+	
+	/**
+	 * @param serDe
+	 * @param responseType
+	 * @param pool the pool to take body buffers from, or null
+	 * @param isDataDiscardedOnDeserialize
+	 * @param isStreamingAllowed false if the raw body has to be kept even if the serDe could decode it as it arrives
+	 * @param compressionPolicy the policy compressed responses are counted by, or null if they are not inflated
+	 */
+	protected AsyncRestClientResponseConsumer(RestClientSerDe serDe, Class<R> responseType, ByteArrayPool pool, boolean isDataDiscardedOnDeserialize, 
+			boolean isStreamingAllowed, CompressionPolicy compressionPolicy) {
+		this.serDe = serDe;
+		this.responseType = responseType;
+		this.pool = pool;
+		this.isDataDiscardedOnDeserialize = isDataDiscardedOnDeserialize;
+		this.isStreamingAllowed = isStreamingAllowed;
+		this.compressionPolicy = compressionPolicy;
+	}
+
+	/**
+	 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#onResponseReceived(org.apache.http.HttpResponse)
+	 */
+	@Override
+	protected void onResponseReceived(org.apache.http.HttpResponse response) {
+		statusCode = response.getStatusLine().getStatusCode();
+		headers = response.getAllHeaders();
+		
+		Header contentTypeHeader = response.getFirstHeader("Content-Type");
+		contentType = contentTypeHeader != null ? contentTypeHeader.getValue() : null;
+		
+		Header contentEncodingHeader = response.getFirstHeader("Content-Encoding");
+		contentEncoding = contentEncodingHeader != null ? contentEncodingHeader.getValue() : null;
+	}
+	
+	/**
+	 * Drops the headers that describe the compressed body.
+	 * 
+	 * @param headers
+	 * @return
+	 */
+	private static Header[] removeEncodingHeaders(Header[] headers) {
+		List<Header> result = new ArrayList<>(headers.length);
+		
+		for (Header header : headers) {
+			String name = header.getName();
+			
+			if (!"Content-Encoding".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name) && !"Content-MD5".equalsIgnoreCase(name)) {
+				result.add(header);
+			}
+		}
+		
+		return result.toArray(new Header[result.size()]);
+	}
+
+	/**
+	 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#onEntityEnclosed(org.apache.http.HttpEntity, org.apache.http.entity.ContentType)
+	 */
+	@Override
+	protected void onEntityEnclosed(HttpEntity entity, ContentType ignored) throws IOException {
+		// a 304, a 204 or the answer to a HEAD may name an encoding too, but there is nothing to inflate
+		if (compressionPolicy != null && contentEncoding != null) {
+			inflater = ContentInflater.create(contentEncoding);
+			
+			if (inflater != null) {
+				headers = removeEncodingHeaders(headers);
+			}
+		}
+		
+		// only successful bodies are decoded as they arrive, anything else is kept raw for the caller to inspect
+		if (isStreamingAllowed && statusCode >= 200 && statusCode < 300 && responseType != null && !Void.class.equals(responseType) 
+				&& serDe instanceof StreamingRestClientSerDe) {
+			bodyDecoder = ((StreamingRestClientSerDe)serDe).createDecoder(contentType, responseType);
+			chunk = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+		} else {
+			long contentLength = entity.getContentLength();
+			
+			int initialSize = DEFAULT_BUFFER_SIZE;
+			
+			if (inflater != null) {
+				// guess that the body inflates to a few times its size
+				contentLength = contentLength >= 0 ? contentLength * 4 : -1;
+			}
+			
+			if (contentLength >= 0 && contentLength <= MAX_PRESIZED_BUFFER_SIZE) {
+				initialSize = (int)contentLength;
+			}
+			
+			data = pool != null ? pool.acquire(initialSize) : new byte[initialSize];
+		}
+		
+		if (inflater != null) {
+			compressedChunk = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#onContentReceived(org.apache.http.nio.ContentDecoder, org.apache.http.nio.IOControl)
+	 */
+	@Override
+	protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+		if (inflater != null) {
+			inflate(decoder);
+		} else if (bodyDecoder != null) {
+			int read;
+			
+			while ((read = decoder.read(chunk)) > 0) {
+				chunk.flip();
+				bodyDecoder.decode(chunk);
+				chunk.clear();
+			}
+		} else {
+			while (!decoder.isCompleted()) {
+				if (dataLength == data.length) {
+					grow();
+				}
+				
+				int read = decoder.read(ByteBuffer.wrap(data, dataLength, data.length - dataLength));
+				
+				if (read <= 0) {
+					break;
+				}
+				
+				dataLength += read;
+			}
+		}
+	}
+
+	/**
+	 * Inflates what the decoder has into the body array or the decoder's chunk.
+	 * 
+	 * @param decoder
+	 * @throws IOException
+	 */
+	private void inflate(ContentDecoder decoder) throws IOException {
+		while (true) {
+			if (inflater.needsInput()) {
+				compressedChunk.clear();
+				
+				int read = decoder.read(compressedChunk);
+				
+				if (read <= 0) {
+					break;
+				}
+				
+				compressedLength += read;
+				inflater.setInput(compressedChunk.array(), 0, read);
+			}
+			
+			if (bodyDecoder != null) {
+				int inflated = inflater.inflate(chunk.array(), 0, chunk.capacity());
+				
+				if (inflated > 0) {
+					chunk.limit(inflated);
+					bodyDecoder.decode(chunk);
+					chunk.clear();
+				}
+			} else {
+				if (dataLength == data.length) {
+					grow();
+				}
+				
+				dataLength += inflater.inflate(data, dataLength, data.length - dataLength);
+			}
+		}
+	}
+	
+	/**
+	 * Doubles the body buffer.
+	 */
+	private void grow() {
+		int newSize = Math.max(DEFAULT_BUFFER_SIZE, data.length * 2);
+		
+		if (pool != null) {
+			byte[] newData = pool.acquire(newSize);
+			System.arraycopy(data, 0, newData, 0, dataLength);
+			pool.release(data);
+			data = newData;
+		} else {
+			data = Arrays.copyOf(data, newSize);
+		}
+	}
+	
+	/**
+	 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#buildResult(org.apache.http.protocol.HttpContext)
+	 */
+	@Override
+	protected HttpResponse<R> buildResult(HttpContext context) throws Exception {
+		if (inflater != null) {
+			if (!inflater.isFinished()) {
+				throw new IOException("Truncated compressed response body");
+			}
+			
+			compressionPolicy.received(compressedLength, inflater.getInflatedLength());
+		}
+		
+		SerializedObject<R> body = null;
+		
+		if (!Void.class.equals(responseType)) {
+			if (bodyDecoder != null) {
+				body = new SerializedObject<>(contentType, bodyDecoder.complete(), responseType);
+			} else if (pool != null && data != null) {
+				body = new SerializedObject<>(serDe, contentType, data, dataLength, responseType, pool, isDataDiscardedOnDeserialize);
+				
+				// the body owns the buffer now
+				data = null;
+			} else {
+				byte[] bodyData = data;
+				
+				if (bodyData != null && dataLength != bodyData.length) {
+					bodyData = Arrays.copyOf(bodyData, dataLength);
+				}
+				
+				body = new SerializedObject<>(serDe, contentType, bodyData, dataLength, responseType, null, isDataDiscardedOnDeserialize);
+			}
+		}
+		
+		return new HttpResponse<>(statusCode, headers, body);
+	}
+
+	/**
+	 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#releaseResources()
+	 */
+	@Override
+	protected void releaseResources() {
+		bodyDecoder = null;
+		chunk = null;
+		
+		if (inflater != null) {
+			inflater.end();
+		}
+		
+		inflater = null;
+		compressedChunk = null;
+		
+		if (pool != null && data != null) {
+			pool.release(data);
+		}
+		
+		data = null;
+	}
+}
@@ -26,11 +26,15 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * A REST Client.
+ * A REST Client whose calls block until the response arrives.
  * 
+ * <p>A call that runs out of time fails with a {@link RequestTimeoutException} and an interrupted call with an 
+ * {@link java.io.InterruptedIOException}, and either way the exchange behind it is aborted.</p>
+ * 
+ * @see RestClients#blocking(RestClient, long, java.util.concurrent.TimeUnit)
  * @author ebahtijaragic
  */
-public interface RestClient extends Closeable {
+public interface BlockingRestClient extends Closeable {
 	/**
 	 * Performs an HTTP get.
 	 * 
@@ -41,7 +45,7 @@ public interface RestClient extends Closeable {
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <O> HttpPromise<HttpResponse<O>> get(String path, String acceptHeader, 
+	public abstract <O> HttpResponse<O> get(String path, String acceptHeader, 
 			Class<O> responseType, Object... pathVariables) throws IOException;
 
 	/**
@@ -56,7 +60,7 @@ public interface RestClient extends Closeable {
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <I, O> HttpPromise<HttpResponse<O>> post(String path,
+	public abstract <I, O> HttpResponse<O> post(String path,
 			String contentTypeHeader, String acceptHeader, I requestObject,
 			Class<O> responseType, Object... pathVariables) throws IOException;
 
@@ -71,7 +75,7 @@ public interface RestClient extends Closeable {
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <I> HttpPromise<HttpResponse<Void>> put(String path,
+	public abstract <I> HttpResponse<Void> put(String path,
 			String contentTypeHeader, String acceptHeader, I requestObject,
 			Object... pathVariables) throws IOException;
 
@@ -86,7 +90,7 @@ public interface RestClient extends Closeable {
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <I> HttpPromise<HttpResponse<Void>> patch(String path,
+	public abstract <I> HttpResponse<Void> patch(String path,
 			String contentTypeHeader, String acceptHeader, I requestObject,
 			Object... pathVariables) throws IOException;
 
@@ -98,7 +102,7 @@ public interface RestClient extends Closeable {
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <I> HttpPromise<HttpResponse<Void>> delete(String path,
+	public abstract HttpResponse<Void> delete(String path,
 			Object... pathVariables) throws IOException;
 	
 	/**
@@ -107,11 +111,12 @@ public interface RestClient extends Closeable {
 	 * @param path
 	 * @param acceptHeader
 	 * @param responseType
+	 * @param additonalHeaders
 	 * @param pathVariables
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <O> HttpPromise<HttpResponse<O>> get(String path, String acceptHeader, 
+	public abstract <O> HttpResponse<O> get(String path, String acceptHeader, 
 			Class<O> responseType, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException;
 
 	/**
@@ -122,11 +127,12 @@ public interface RestClient extends Closeable {
 	 * @param acceptHeader
 	 * @param requestObject
 	 * @param responseType
+	 * @param additonalHeaders
 	 * @param pathVariables
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <I, O> HttpPromise<HttpResponse<O>> post(String path,
+	public abstract <I, O> HttpResponse<O> post(String path,
 			String contentTypeHeader, String acceptHeader, I requestObject,
 			Class<O> responseType, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException;
 
@@ -137,11 +143,12 @@ public interface RestClient extends Closeable {
 	 * @param contentTypeHeader
 	 * @param acceptHeader
 	 * @param requestObject
+	 * @param additonalHeaders
 	 * @param pathVariables
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <I> HttpPromise<HttpResponse<Void>> put(String path,
+	public abstract <I> HttpResponse<Void> put(String path,
 			String contentTypeHeader, String acceptHeader, I requestObject, Map<String, List<String>> additonalHeaders,
 			Object... pathVariables) throws IOException;
 
@@ -152,11 +159,12 @@ public interface RestClient extends Closeable {
 	 * @param contentTypeHeader
 	 * @param acceptHeader
 	 * @param requestObject
+	 * @param additonalHeaders
 	 * @param pathVariables
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <I> HttpPromise<HttpResponse<Void>> patch(String path,
+	public abstract <I> HttpResponse<Void> patch(String path,
 			String contentTypeHeader, String acceptHeader, I requestObject, Map<String, List<String>> additonalHeaders,
 			Object... pathVariables) throws IOException;
 
@@ -164,11 +172,18 @@ public interface RestClient extends Closeable {
 	 * Performs a HTTP delete.
 	 * 
 	 * @param path
+	 * @param additonalHeaders
 	 * @param pathVariables
 	 * @return
 	 * @throws IOException
 	 */
-	public abstract <I> HttpPromise<HttpResponse<Void>> delete(String path, Map<String, List<String>> additonalHeaders,
+	public abstract HttpResponse<Void> delete(String path, Map<String, List<String>> additonalHeaders,
 			Object... pathVariables) throws IOException;
-
-}
\ No newline at end of file
+	
+	/**
+	 * Returns the asynchronous client the calls are made with.
+	 * 
+	 * @return
+	 */
+	public abstract RestClient getRestClient();
+}
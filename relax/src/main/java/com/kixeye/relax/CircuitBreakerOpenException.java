@@ -0,0 +1,52 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+import org.apache.http.HttpHost;
+
+/**
+ * Fails a request that was not sent because the circuit breaker of its host is open.
+ * 
+ * @author ebahtijaragic
+ */
+public class CircuitBreakerOpenException extends IOException {
+	private static final long serialVersionUID = 1L;
+	
+	private final HttpHost host;
+	
+	/**
+	 * @param host
+	 */
+	public CircuitBreakerOpenException(HttpHost host) {
+		super("Circuit breaker is open for host: " + host);
+		
+		this.host = host;
+	}
+	
+	/**
+	 * @return the host
+	 */
+	public HttpHost getHost() {
+		return host;
+	}
+}
@@ -0,0 +1,423 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops sending requests to a host that keeps failing or answering slowly, failing them with a 
+ * {@link CircuitBreakerOpenException} instead, without taking a connection from the pool.
+ * 
+ * <p>Every host has its own breaker, which records the outcome of the last requests in a sliding window. Once the window 
+ * holds enough calls and the rate of failures (exceptions and 5xx responses) or of slow calls reaches its threshold, the breaker 
+ * opens. After the open duration it lets a few probes through: if they all succeed the breaker closes, if one fails it opens again.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class CircuitBreakerPolicy {
+	private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerPolicy.class);
+	
+	public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+	public static final int DEFAULT_WINDOW_SIZE = 100;
+	public static final int DEFAULT_MINIMUM_CALLS = 20;
+	public static final long DEFAULT_OPEN_DURATION_MILLIS = 30000;
+	public static final int DEFAULT_HALF_OPEN_PROBES = 5;
+	
+	/**
+	 * The state of a breaker.
+	 */
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+	
+	/**
+	 * Listens to the state changes of the breakers.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	public static interface StateListener {
+		/**
+		 * Called when the breaker of a host changes state.
+		 * 
+		 * @param host
+		 * @param from
+		 * @param to
+		 */
+		public void stateChanged(HttpHost host, State from, State to);
+	}
+	
+	private double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+	private double slowCallRateThreshold = 100;
+	private long slowCallDurationNanos = Long.MAX_VALUE;
+	private int windowSize = DEFAULT_WINDOW_SIZE;
+	private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+	private long openDurationNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_OPEN_DURATION_MILLIS);
+	private int halfOpenProbes = DEFAULT_HALF_OPEN_PROBES;
+	
+	private volatile StateListener listener;
+	
+	private final ConcurrentMap<HttpHost, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+	
+	private final AtomicLong rejections = new AtomicLong();
+	
+	/**
+	 * With the percentage of failed calls in the window that opens the breaker. Defaults to 50.
+	 * 
+	 * @param failureRateThreshold between 0 and 100
+	 * @return
+	 */
+	public CircuitBreakerPolicy withFailureRateThreshold(double failureRateThreshold) {
+		this.failureRateThreshold = failureRateThreshold;
+		
+		return this;
+	}
+	
+	/**
+	 * With how long a call may take before it counts as slow, and the percentage of slow calls in the window that opens the breaker.
+	 * Slow calls are not counted by default.
+	 * 
+	 * @param slowCallDuration
+	 * @param unit
+	 * @param slowCallRateThreshold between 0 and 100
+	 * @return
+	 */
+	public CircuitBreakerPolicy withSlowCallThreshold(long slowCallDuration, TimeUnit unit, double slowCallRateThreshold) {
+		this.slowCallDurationNanos = unit.toNanos(slowCallDuration);
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		
+		return this;
+	}
+	
+	/**
+	 * With the number of calls the rates are computed over, and the number of calls that have to be seen before the breaker 
+	 * may open. Defaults to 100 and 20.
+	 * 
+	 * @param windowSize
+	 * @param minimumCalls
+	 * @return
+	 */
+	public CircuitBreakerPolicy withSlidingWindow(int windowSize, int minimumCalls) {
+		if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+			throw new IllegalArgumentException("Invalid sliding window: " + windowSize + ", " + minimumCalls);
+		}
+		
+		this.windowSize = windowSize;
+		this.minimumCalls = minimumCalls;
+		
+		return this;
+	}
+	
+	/**
+	 * With how long an open breaker fails calls before it lets probes through. Defaults to 30 seconds.
+	 * 
+	 * @param openDuration
+	 * @param unit
+	 * @return
+	 */
+	public CircuitBreakerPolicy withOpenDuration(long openDuration, TimeUnit unit) {
+		this.openDurationNanos = unit.toNanos(openDuration);
+		
+		return this;
+	}
+	
+	/**
+	 * With the number of probes that have to succeed to close a half open breaker. Defaults to 5.
+	 * 
+	 * @param halfOpenProbes
+	 * @return
+	 */
+	public CircuitBreakerPolicy withHalfOpenProbes(int halfOpenProbes) {
+		if (halfOpenProbes < 1) {
+			throw new IllegalArgumentException("Invalid number of probes: " + halfOpenProbes);
+		}
+		
+		this.halfOpenProbes = halfOpenProbes;
+		
+		return this;
+	}
+	
+	/**
+	 * With a listener of state changes.
+	 * 
+	 * @param listener
+	 * @return
+	 */
+	public CircuitBreakerPolicy withListener(StateListener listener) {
+		this.listener = listener;
+		
+		return this;
+	}
+	
+	/**
+	 * Gets the state of the breaker of a host.
+	 * 
+	 * @param host
+	 * @return
+	 */
+	public State getState(HttpHost host) {
+		CircuitBreaker breaker = breakers.get(host);
+		
+		return breaker != null ? breaker.getState() : State.CLOSED;
+	}
+	
+	/**
+	 * @return the number of calls that were failed by an open breaker
+	 */
+	public long getRejectedCount() {
+		return rejections.get();
+	}
+	
+	/**
+	 * Gets the breaker of a host.
+	 * 
+	 * @param host
+	 * @return
+	 */
+	protected CircuitBreaker getCircuitBreaker(HttpHost host) {
+		CircuitBreaker breaker = breakers.get(host);
+		
+		if (breaker == null) {
+			CircuitBreaker newBreaker = new CircuitBreaker(host);
+			
+			breaker = breakers.putIfAbsent(host, newBreaker);
+			if (breaker == null) {
+				breaker = newBreaker;
+			}
+		}
+		
+		return breaker;
+	}
+	
+	/**
+	 * The breaker of one host.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	protected class CircuitBreaker {
+		protected static final long REJECTED = -1;
+		
+		private static final byte FAILED = 1;
+		private static final byte SLOW = 2;
+		
+		private final HttpHost host;
+		
+		// guarded by this
+		private final byte[] window = new byte[windowSize];
+		private int windowIndex = 0;
+		private int calls = 0;
+		private int failures = 0;
+		private int slowCalls = 0;
+		
+		private long openedAtNanos;
+		private int probesSent = 0;
+		private int probesSucceeded = 0;
+		
+		private volatile State state = State.CLOSED;
+		
+		// bumped by every transition, so calls are only counted by the state that let them through
+		private volatile long generation = 0;
+		
+		/**
+		 * @param host
+		 */
+		private CircuitBreaker(HttpHost host) {
+			this.host = host;
+		}
+		
+		/**
+		 * @return the state
+		 */
+		protected State getState() {
+			return state;
+		}
+		
+		/**
+		 * Asks to send a call. A call that was let through must be finished with {@link #completed(long, long, boolean)} or {@link #cancelled(long)}.
+		 * 
+		 * @return the call's token, or {@link #REJECTED} if the breaker is open
+		 */
+		protected long tryAcquire() {
+			// read before the state, a transition in between only makes the call stale
+			long call = generation;
+			
+			if (state == State.CLOSED) {
+				return call;
+			}
+			
+			State from = null;
+			boolean isAcquired;
+			
+			synchronized (this) {
+				if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos) {
+					from = transition(State.HALF_OPEN);
+				}
+				
+				if (state == State.HALF_OPEN) {
+					isAcquired = probesSent < halfOpenProbes;
+					
+					if (isAcquired) {
+						probesSent++;
+					}
+				} else {
+					isAcquired = state == State.CLOSED;
+				}
+				
+				call = generation;
+			}
+			
+			notifyListener(from, State.HALF_OPEN);
+			
+			if (!isAcquired) {
+				rejections.incrementAndGet();
+				
+				return REJECTED;
+			}
+			
+			return call;
+		}
+		
+		/**
+		 * Records the outcome of a call, unless the breaker changed state since the call was let through.
+		 * 
+		 * @param call the token {@link #tryAcquire()} returned
+		 * @param durationNanos
+		 * @param isSuccess false for errors and 5xx responses
+		 */
+		protected void completed(long call, long durationNanos, boolean isSuccess) {
+			boolean isSlow = durationNanos >= slowCallDurationNanos;
+			
+			State from = null;
+			State to = null;
+			
+			synchronized (this) {
+				if (call != generation) {
+					// e.g. a call sent while closed that finishes once the breaker is half open is not a probe
+					return;
+				}
+				
+				switch (state) {
+					case CLOSED:
+						byte outcome = (byte)((isSuccess ? 0 : FAILED) | (isSlow ? SLOW : 0));
+						
+						if (calls == window.length) {
+							byte evicted = window[windowIndex];
+							
+							failures -= evicted & FAILED;
+							slowCalls -= (evicted & SLOW) >> 1;
+						} else {
+							calls++;
+						}
+						
+						window[windowIndex] = outcome;
+						windowIndex = (windowIndex + 1) % window.length;
+						
+						failures += outcome & FAILED;
+						slowCalls += (outcome & SLOW) >> 1;
+						
+						if (calls >= minimumCalls && 
+								(failures * 100.0 >= failureRateThreshold * calls || slowCalls * 100.0 >= slowCallRateThreshold * calls)) {
+							from = transition(to = State.OPEN);
+						}
+						break;
+					case HALF_OPEN:
+						if (!isSuccess || isSlow) {
+							from = transition(to = State.OPEN);
+						} else if (++probesSucceeded >= halfOpenProbes) {
+							from = transition(to = State.CLOSED);
+						}
+						break;
+					default:
+						// no call is let through while open
+						break;
+				}
+			}
+			
+			notifyListener(from, to);
+		}
+		
+		/**
+		 * Finishes a call that was cancelled, which says nothing about the host.
+		 * 
+		 * @param call the token {@link #tryAcquire()} returned
+		 */
+		protected synchronized void cancelled(long call) {
+			if (call == generation && state == State.HALF_OPEN && probesSent > probesSucceeded) {
+				probesSent--;
+			}
+		}
+		
+		/**
+		 * Moves to a state, resetting what the state counts.
+		 * 
+		 * @param to
+		 * @return the previous state
+		 */
+		private State transition(State to) {
+			State from = state;
+			
+			switch (to) {
+				case OPEN:
+					openedAtNanos = System.nanoTime();
+					break;
+				case HALF_OPEN:
+					probesSent = 0;
+					probesSucceeded = 0;
+					break;
+				case CLOSED:
+					windowIndex = 0;
+					calls = 0;
+					failures = 0;
+					slowCalls = 0;
+					break;
+			}
+			
+			generation++;
+			state = to;
+			
+			return from;
+		}
+		
+		/**
+		 * Tells the listener about a state change.
+		 * 
+		 * @param from null if the state did not change
+		 * @param to
+		 */
+		private void notifyListener(State from, State to) {
+			StateListener currentListener = listener;
+			
+			if (from != null && currentListener != null) {
+				try {
+					currentListener.stateChanged(host, from, to);
+				} catch (Exception e) {
+					logger.error("Unexpected error processing listener", e);
+				}
+			}
+		}
+	}
+}
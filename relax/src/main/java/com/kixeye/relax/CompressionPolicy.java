@@ -0,0 +1,179 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the client's traffic.
+ * 
+ * <p>Requests advertise gzip and deflate in their Accept-Encoding, and compressed responses are inflated as they arrive, 
+ * straight into the body buffer or the streaming decoder. Request bodies of at least the request threshold are sent gzipped; 
+ * streamed request bodies, whose size is not known up front, are always gzipped when request compression is on.</p>
+ * 
+ * <p>The bytes that went over the wire compressed are counted along with what they inflate or deflate to.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class CompressionPolicy {
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+	
+	private int requestThreshold = -1;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	
+	private final AtomicLong compressedBytesReceived = new AtomicLong();
+	private final AtomicLong uncompressedBytesReceived = new AtomicLong();
+	private final AtomicLong compressedBytesSent = new AtomicLong();
+	private final AtomicLong uncompressedBytesSent = new AtomicLong();
+	
+	/**
+	 * With request bodies of at least the given size gzipped. Only responses are compressed by default.
+	 * 
+	 * @param requestThreshold in bytes
+	 * @return
+	 */
+	public CompressionPolicy withRequestCompression(int requestThreshold) {
+		if (requestThreshold < 0) {
+			throw new IllegalArgumentException("Invalid request threshold: " + requestThreshold);
+		}
+		
+		this.requestThreshold = requestThreshold;
+		
+		return this;
+	}
+	
+	/**
+	 * With the deflate level request bodies are compressed with, from 1 (fastest) to 9 (smallest).
+	 * 
+	 * @param compressionLevel
+	 * @return
+	 */
+	public CompressionPolicy withCompressionLevel(int compressionLevel) {
+		if (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+		}
+		
+		this.compressionLevel = compressionLevel;
+		
+		return this;
+	}
+	
+	/**
+	 * @return the number of compressed response bytes received
+	 */
+	public long getCompressedBytesReceived() {
+		return compressedBytesReceived.get();
+	}
+	
+	/**
+	 * @return the number of bytes the compressed responses inflated to
+	 */
+	public long getUncompressedBytesReceived() {
+		return uncompressedBytesReceived.get();
+	}
+	
+	/**
+	 * @return the number of compressed request bytes sent
+	 */
+	public long getCompressedBytesSent() {
+		return compressedBytesSent.get();
+	}
+	
+	/**
+	 * @return the number of bytes the compressed requests were compressed from
+	 */
+	public long getUncompressedBytesSent() {
+		return uncompressedBytesSent.get();
+	}
+	
+	/**
+	 * Returns true if a request body of the given length is to be compressed.
+	 * 
+	 * @param contentLength -1 if unknown
+	 * @return
+	 */
+	protected boolean isRequestCompressed(long contentLength) {
+		return requestThreshold >= 0 && (contentLength < 0 || contentLength >= requestThreshold);
+	}
+	
+	/**
+	 * Gzips a request body.
+	 * 
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 */
+	protected byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+		
+		try (OutputStream outputStream = createOutputStream(compressed)) {
+			outputStream.write(data);
+		}
+		
+		byte[] result = compressed.toByteArray();
+		
+		sent(data.length, result.length);
+		
+		return result;
+	}
+	
+	/**
+	 * Wraps a stream so whatever is written to it is gzipped.
+	 * 
+	 * @param outputStream
+	 * @return
+	 * @throws IOException
+	 */
+	protected GZIPOutputStream createOutputStream(OutputStream outputStream) throws IOException {
+		return new GZIPOutputStream(outputStream, 8192) {
+			{
+				def.setLevel(compressionLevel);
+			}
+		};
+	}
+	
+	/**
+	 * Counts a compressed response.
+	 * 
+	 * @param compressedLength
+	 * @param uncompressedLength
+	 */
+	protected void received(long compressedLength, long uncompressedLength) {
+		compressedBytesReceived.addAndGet(compressedLength);
+		uncompressedBytesReceived.addAndGet(uncompressedLength);
+	}
+	
+	/**
+	 * Counts a compressed request.
+	 * 
+	 * @param uncompressedLength
+	 * @param compressedLength
+	 */
+	protected void sent(long uncompressedLength, long compressedLength) {
+		uncompressedBytesSent.addAndGet(uncompressedLength);
+		compressedBytesSent.addAndGet(compressedLength);
+	}
+}
@@ -0,0 +1,62 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+import org.apache.http.HttpHost;
+
+/**
+ * Fails a request that was not sent because too many requests to its host were already in flight.
+ * 
+ * @author ebahtijaragic
+ */
+public class ConcurrencyLimitExceededException extends IOException {
+	private static final long serialVersionUID = 1L;
+	
+	private final HttpHost host;
+	private final boolean isTimedOut;
+	
+	/**
+	 * @param host
+	 * @param isTimedOut true if the request waited in the queue for too long, false if the queue was full
+	 */
+	public ConcurrencyLimitExceededException(HttpHost host, boolean isTimedOut) {
+		super((isTimedOut ? "Timed out waiting for the concurrency limit of host: " : "Concurrency limit reached for host: ") + host);
+		
+		this.host = host;
+		this.isTimedOut = isTimedOut;
+	}
+	
+	/**
+	 * @return the host
+	 */
+	public HttpHost getHost() {
+		return host;
+	}
+	
+	/**
+	 * @return true if the request waited in the queue for too long, false if it was rejected right away
+	 */
+	public boolean isTimedOut() {
+		return isTimedOut;
+	}
+}
@@ -0,0 +1,475 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounds the number of requests in flight to every host with a limit that adapts to how the host copes with load.
+ * 
+ * <p>The limit follows AIMD: it grows by one every round of successful requests while it is being used, and is cut by the 
+ * backoff ratio whenever a request is dropped, meaning it failed with an exception, was answered with a 429 or a 503, or took 
+ * longer than the latency threshold.</p>
+ * 
+ * <p>Requests over the limit are failed with a {@link ConcurrencyLimitExceededException}, or wait in a bounded queue 
+ * for a request to finish if the policy has one, failing if they have not been sent within the maximum wait.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class ConcurrencyLimitPolicy {
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitPolicy.class);
+	
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 200;
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+	
+	private int initialLimit = DEFAULT_INITIAL_LIMIT;
+	private int minLimit = DEFAULT_MIN_LIMIT;
+	private int maxLimit = DEFAULT_MAX_LIMIT;
+	private final ConcurrentMap<HttpHost, int[]> hostLimits = new ConcurrentHashMap<>();
+	
+	private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+	private long latencyThresholdNanos = Long.MAX_VALUE;
+	
+	private int maxQueued = 0;
+	private long maxWaitNanos = 0;
+	private ScheduledExecutorService scheduler;
+	
+	private final ConcurrentMap<HttpHost, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+	
+	private final AtomicLong rejections = new AtomicLong();
+	
+	/**
+	 * With the limit every host starts with, and the bounds it adapts within. Defaults to 20, between 1 and 200.
+	 * 
+	 * @param initialLimit
+	 * @param minLimit
+	 * @param maxLimit
+	 * @return
+	 */
+	public ConcurrencyLimitPolicy withLimits(int initialLimit, int minLimit, int maxLimit) {
+		validateLimits(initialLimit, minLimit, maxLimit);
+		
+		this.initialLimit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		
+		return this;
+	}
+	
+	/**
+	 * With the limits of one host, overriding the ones every other host uses.
+	 * 
+	 * @param host
+	 * @param initialLimit
+	 * @param minLimit
+	 * @param maxLimit
+	 * @return
+	 */
+	public ConcurrencyLimitPolicy withLimits(HttpHost host, int initialLimit, int minLimit, int maxLimit) {
+		validateLimits(initialLimit, minLimit, maxLimit);
+		
+		hostLimits.put(host, new int[] { initialLimit, minLimit, maxLimit });
+		
+		return this;
+	}
+	
+	/**
+	 * With the ratio the limit is multiplied by when a request is dropped. Defaults to 0.9.
+	 * 
+	 * @param backoffRatio between 0 and 1
+	 * @return
+	 */
+	public ConcurrencyLimitPolicy withBackoffRatio(double backoffRatio) {
+		if (!(backoffRatio > 0 && backoffRatio < 1)) {
+			throw new IllegalArgumentException("Invalid backoff ratio: " + backoffRatio);
+		}
+		
+		this.backoffRatio = backoffRatio;
+		
+		return this;
+	}
+	
+	/**
+	 * With how long a request may take before it counts as dropped. Latency is not taken into account by default.
+	 * 
+	 * @param latencyThreshold
+	 * @param unit
+	 * @return
+	 */
+	public ConcurrencyLimitPolicy withLatencyThreshold(long latencyThreshold, TimeUnit unit) {
+		this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+		
+		return this;
+	}
+	
+	/**
+	 * With a queue for requests over the limit. By default they are failed right away.
+	 * 
+	 * @param maxQueued the maximum number of requests waiting for each host
+	 * @param maxWait how long a request may wait before it fails
+	 * @param unit
+	 * @return
+	 */
+	public ConcurrencyLimitPolicy withQueue(int maxQueued, long maxWait, TimeUnit unit) {
+		this.maxQueued = maxQueued;
+		this.maxWaitNanos = unit.toNanos(maxWait);
+		
+		return this;
+	}
+	
+	/**
+	 * With the scheduler queued requests are timed out on.
+	 * 
+	 * @param scheduler
+	 * @return
+	 */
+	public ConcurrencyLimitPolicy withScheduler(ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+		
+		return this;
+	}
+	
+	/**
+	 * Gets the current limit of a host.
+	 * 
+	 * @param host
+	 * @return
+	 */
+	public int getLimit(HttpHost host) {
+		ConcurrencyLimiter limiter = limiters.get(host);
+		
+		if (limiter != null) {
+			return limiter.getLimit();
+		}
+		
+		int[] limits = hostLimits.get(host);
+		
+		return limits != null ? limits[0] : initialLimit;
+	}
+	
+	/**
+	 * Gets the number of requests in flight to a host.
+	 * 
+	 * @param host
+	 * @return
+	 */
+	public int getInFlightCount(HttpHost host) {
+		ConcurrencyLimiter limiter = limiters.get(host);
+		
+		return limiter != null ? limiter.getInFlightCount() : 0;
+	}
+	
+	/**
+	 * Gets the number of requests waiting to be sent to a host.
+	 * 
+	 * @param host
+	 * @return
+	 */
+	public int getQueuedCount(HttpHost host) {
+		ConcurrencyLimiter limiter = limiters.get(host);
+		
+		return limiter != null ? limiter.getQueuedCount() : 0;
+	}
+	
+	/**
+	 * @return the number of requests that were failed because a limit was reached
+	 */
+	public long getRejectedCount() {
+		return rejections.get();
+	}
+	
+	/**
+	 * Gets the limiter of a host.
+	 * 
+	 * @param host
+	 * @return
+	 */
+	protected ConcurrencyLimiter getLimiter(HttpHost host) {
+		ConcurrencyLimiter limiter = limiters.get(host);
+		
+		if (limiter == null) {
+			int[] limits = hostLimits.get(host);
+			ConcurrencyLimiter newLimiter = limits != null ? new ConcurrencyLimiter(host, limits[0], limits[1], limits[2]) : 
+				new ConcurrencyLimiter(host, initialLimit, minLimit, maxLimit);
+			
+			limiter = limiters.putIfAbsent(host, newLimiter);
+			if (limiter == null) {
+				limiter = newLimiter;
+			}
+		}
+		
+		return limiter;
+	}
+	
+	/**
+	 * Gets the scheduler queued requests are timed out on.
+	 * 
+	 * @return
+	 */
+	protected ScheduledExecutorService getScheduler() {
+		return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+	}
+	
+	/**
+	 * Validates limits.
+	 * 
+	 * @param initialLimit
+	 * @param minLimit
+	 * @param maxLimit
+	 */
+	private static void validateLimits(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+			throw new IllegalArgumentException("Invalid limits: " + initialLimit + ", " + minLimit + ", " + maxLimit);
+		}
+	}
+	
+	/**
+	 * Waits for a request to be let through.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	protected static interface Waiter {
+		/**
+		 * Called when the request may be sent. It must then be finished with 
+		 * {@link ConcurrencyLimiter#completed(long, boolean)} or {@link ConcurrencyLimiter#cancelled()}.
+		 */
+		public void acquired();
+		
+		/**
+		 * Called when the request may not be sent.
+		 * 
+		 * @param error
+		 */
+		public void rejected(ConcurrencyLimitExceededException error);
+	}
+	
+	/**
+	 * The limiter of one host.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	protected class ConcurrencyLimiter {
+		private final HttpHost host;
+		private final int minLimit;
+		private final int maxLimit;
+		
+		// guarded by this
+		private double limit;
+		private int inFlight = 0;
+		private final ArrayDeque<QueuedWaiter> queue = new ArrayDeque<>();
+		
+		/**
+		 * @param host
+		 * @param initialLimit
+		 * @param minLimit
+		 * @param maxLimit
+		 */
+		private ConcurrencyLimiter(HttpHost host, int initialLimit, int minLimit, int maxLimit) {
+			this.host = host;
+			this.limit = initialLimit;
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+		}
+		
+		/**
+		 * @return the current limit
+		 */
+		protected synchronized int getLimit() {
+			return (int)limit;
+		}
+		
+		/**
+		 * @return the number of requests in flight
+		 */
+		protected synchronized int getInFlightCount() {
+			return inFlight;
+		}
+		
+		/**
+		 * @return the number of requests waiting
+		 */
+		protected synchronized int getQueuedCount() {
+			return queue.size();
+		}
+		
+		/**
+		 * Lets the request through right away if the limit allows, otherwise queues or rejects it.
+		 * 
+		 * @param waiter
+		 */
+		protected void acquire(Waiter waiter) {
+			boolean isAcquired = false;
+			boolean isRejected = false;
+			
+			synchronized (this) {
+				if (inFlight < (int)limit) {
+					inFlight++;
+					isAcquired = true;
+				} else if (queue.size() < maxQueued) {
+					final QueuedWaiter queuedWaiter = new QueuedWaiter(waiter);
+					queue.add(queuedWaiter);
+					
+					queuedWaiter.timeout = getScheduler().schedule(new Runnable() {
+						public void run() {
+							timedOut(queuedWaiter);
+						}
+					}, maxWaitNanos, TimeUnit.NANOSECONDS);
+				} else {
+					isRejected = true;
+				}
+			}
+			
+			if (isAcquired) {
+				waiter.acquired();
+			} else if (isRejected) {
+				rejections.incrementAndGet();
+				
+				waiter.rejected(new ConcurrencyLimitExceededException(host, false));
+			}
+		}
+		
+		/**
+		 * Finishes a request that received a response or failed, adapting the limit.
+		 * 
+		 * @param latencyNanos
+		 * @param isDropped true for errors and responses that say the host is overloaded
+		 */
+		protected void completed(long latencyNanos, boolean isDropped) {
+			List<QueuedWaiter> acquired;
+			
+			synchronized (this) {
+				if (isDropped || latencyNanos > latencyThresholdNanos) {
+					limit = Math.max(minLimit, limit * backoffRatio);
+				} else if (inFlight * 2 >= limit) {
+					limit = Math.min(maxLimit, limit + (1 / limit));
+				}
+				
+				acquired = release();
+			}
+			
+			notifyAcquired(acquired);
+		}
+		
+		/**
+		 * Finishes a request that was cancelled, which says nothing about the host.
+		 */
+		protected void cancelled() {
+			List<QueuedWaiter> acquired;
+			
+			synchronized (this) {
+				acquired = release();
+			}
+			
+			notifyAcquired(acquired);
+		}
+		
+		/**
+		 * Frees a slot and hands the free slots to queued requests. Must be called holding the lock.
+		 * 
+		 * @return the requests that were let through
+		 */
+		private List<QueuedWaiter> release() {
+			inFlight--;
+			
+			List<QueuedWaiter> acquired = null;
+			
+			while (inFlight < (int)limit && !queue.isEmpty()) {
+				if (acquired == null) {
+					acquired = new ArrayList<>(1);
+				}
+				
+				acquired.add(queue.poll());
+				inFlight++;
+			}
+			
+			return acquired;
+		}
+		
+		/**
+		 * Tells queued requests they may be sent.
+		 * 
+		 * @param acquired
+		 */
+		private void notifyAcquired(List<QueuedWaiter> acquired) {
+			if (acquired == null) {
+				return;
+			}
+			
+			for (QueuedWaiter queuedWaiter : acquired) {
+				queuedWaiter.timeout.cancel(false);
+				
+				try {
+					queuedWaiter.waiter.acquired();
+				} catch (Exception e) {
+					logger.error("Unexpected error sending queued request", e);
+				}
+			}
+		}
+		
+		/**
+		 * Rejects a queued request that waited too long.
+		 * 
+		 * @param queuedWaiter
+		 */
+		private void timedOut(QueuedWaiter queuedWaiter) {
+			synchronized (this) {
+				if (!queue.remove(queuedWaiter)) {
+					return;
+				}
+			}
+			
+			rejections.incrementAndGet();
+			
+			queuedWaiter.waiter.rejected(new ConcurrencyLimitExceededException(host, true));
+		}
+	}
+	
+	/**
+	 * A request waiting in the queue.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	private static class QueuedWaiter {
+		private final Waiter waiter;
+		private ScheduledFuture<?> timeout;
+		
+		/**
+		 * @param waiter
+		 */
+		private QueuedWaiter(Waiter waiter) {
+			this.waiter = waiter;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A snapshot of the connection pool.
+ * 
+ * @author ebahtijaragic
+ */
+public class ConnectionPoolStats {
+	private final PoolStats totalStats;
+	private final Map<String, PoolStats> routeStats;
+	
+	/**
+	 * @param totalStats
+	 * @param routeStats
+	 */
+	public ConnectionPoolStats(PoolStats totalStats, Map<String, PoolStats> routeStats) {
+		this.totalStats = totalStats;
+		this.routeStats = Collections.unmodifiableMap(routeStats);
+	}
+
+	/**
+	 * @return the leased/pending/available/max counts across all routes
+	 */
+	public PoolStats getTotalStats() {
+		return totalStats;
+	}
+
+	/**
+	 * @return the leased/pending/available/max counts of every route this client has used, keyed by scheme://host:port
+	 */
+	public Map<String, PoolStats> getRouteStats() {
+		return routeStats;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "[total: " + totalStats + "; routes: " + routeStats + "]";
+	}
+}
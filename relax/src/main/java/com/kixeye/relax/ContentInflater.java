@@ -0,0 +1,360 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates a gzip or deflate body as it arrives, into whatever buffer the caller hands it.
+ * 
+ * <p>The gzip header and trailer are parsed here, byte by byte since they may be split across reads, and the trailer's 
+ * CRC and size are checked. A deflate body may be zlib wrapped, as the spec says, or raw, as some servers send it.</p>
+ * 
+ * @author ebahtijaragic
+ */
+class ContentInflater {
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	
+	private static final int ID1 = 0;
+	private static final int ID2 = 1;
+	private static final int CM = 2;
+	private static final int FLG = 3;
+	private static final int FIXED = 4;
+	private static final int XLEN1 = 5;
+	private static final int XLEN2 = 6;
+	private static final int EXTRA = 7;
+	private static final int NAME = 8;
+	private static final int COMMENT = 9;
+	private static final int HCRC = 10;
+	private static final int DETECT = 11;
+	private static final int BODY = 12;
+	private static final int TRAILER = 13;
+	private static final int DONE = 14;
+	
+	private final boolean isGzip;
+	private final CRC32 crc;
+	private Inflater inflater;
+	
+	private int state;
+	private int flags;
+	private int skip;
+	
+	private byte[] input;
+	private int inputOffset;
+	private int inputEnd;
+	
+	private final byte[] trailer;
+	private int trailerLength = 0;
+	private long inflatedLength = 0;
+	
+	/**
+	 * @param isGzip true for gzip, false for deflate
+	 */
+	private ContentInflater(boolean isGzip) {
+		this.isGzip = isGzip;
+		this.crc = isGzip ? new CRC32() : null;
+		this.trailer = isGzip ? new byte[8] : null;
+		this.state = isGzip ? ID1 : DETECT;
+	}
+	
+	/**
+	 * Creates an inflater for a content encoding.
+	 * 
+	 * @param contentEncoding
+	 * @return null if the encoding is not gzip or deflate
+	 */
+	protected static ContentInflater create(String contentEncoding) {
+		if (contentEncoding == null) {
+			return null;
+		}
+		
+		String encoding = contentEncoding.trim();
+		
+		if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+			return new ContentInflater(true);
+		} else if ("deflate".equalsIgnoreCase(encoding)) {
+			return new ContentInflater(false);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Hands the inflater more compressed bytes. The array must not be touched until {@link #needsInput()} returns true.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	protected void setInput(byte[] data, int offset, int length) {
+		input = data;
+		inputOffset = offset;
+		inputEnd = offset + length;
+		
+		if (state == BODY) {
+			handToInflater();
+		}
+	}
+	
+	/**
+	 * @return true if all of the input has been consumed
+	 */
+	protected boolean needsInput() {
+		return state == BODY ? inflater.needsInput() : inputOffset >= inputEnd;
+	}
+	
+	/**
+	 * @return true once the whole body, including the gzip trailer, has been inflated
+	 */
+	protected boolean isFinished() {
+		return state == DONE;
+	}
+	
+	/**
+	 * @return the number of bytes inflated so far
+	 */
+	protected long getInflatedLength() {
+		return inflatedLength;
+	}
+	
+	/**
+	 * Inflates into the buffer.
+	 * 
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @return the number of bytes inflated, 0 if more input is needed or the body is complete
+	 * @throws IOException if the body is corrupt
+	 */
+	protected int inflate(byte[] buffer, int offset, int length) throws IOException {
+		while (state < BODY && inputOffset < inputEnd) {
+			if (state == DETECT) {
+				// a zlib header starts with the deflate compression method
+				inflater = new Inflater((input[inputOffset] & 0x0F) != 8);
+				state = BODY;
+			} else {
+				parseHeader(input[inputOffset++] & 0xFF);
+				
+				if (state == DETECT) {
+					inflater = new Inflater(true);
+					state = BODY;
+				}
+			}
+			
+			if (state == BODY) {
+				handToInflater();
+			}
+		}
+		
+		if (state == BODY) {
+			int inflated;
+			
+			try {
+				inflated = inflater.inflate(buffer, offset, length);
+			} catch (DataFormatException e) {
+				throw new ZipException(e.getMessage());
+			}
+			
+			if (inflated > 0) {
+				inflatedLength += inflated;
+				
+				if (crc != null) {
+					crc.update(buffer, offset, inflated);
+				}
+			}
+			
+			if (inflater.finished()) {
+				// what the inflater did not use is the start of the trailer
+				inputOffset = inputEnd - inflater.getRemaining();
+				state = isGzip ? TRAILER : DONE;
+			} else if (inflated == 0 && inflater.needsDictionary()) {
+				throw new ZipException("Deflate dictionaries are not supported");
+			}
+			
+			if (inflated > 0) {
+				return inflated;
+			}
+		}
+		
+		if (state == TRAILER) {
+			int count = Math.min(trailer.length - trailerLength, inputEnd - inputOffset);
+			
+			System.arraycopy(input, inputOffset, trailer, trailerLength, count);
+			inputOffset += count;
+			trailerLength += count;
+			
+			if (trailerLength == trailer.length) {
+				verifyTrailer();
+				state = DONE;
+			}
+		}
+		
+		if (state == DONE) {
+			// anything after the body is ignored
+			inputOffset = inputEnd;
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Releases the native inflater.
+	 */
+	protected void end() {
+		if (inflater != null) {
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Hands the rest of the input to the inflater.
+	 */
+	private void handToInflater() {
+		if (inputOffset < inputEnd) {
+			inflater.setInput(input, inputOffset, inputEnd - inputOffset);
+		}
+		
+		inputOffset = inputEnd;
+	}
+	
+	/**
+	 * Parses a byte of the gzip header.
+	 * 
+	 * @param value
+	 * @throws IOException
+	 */
+	private void parseHeader(int value) throws IOException {
+		switch (state) {
+			case ID1:
+				if (value != 0x1f) {
+					throw new ZipException("Not in gzip format");
+				}
+				state = ID2;
+				break;
+			case ID2:
+				if (value != 0x8b) {
+					throw new ZipException("Not in gzip format");
+				}
+				state = CM;
+				break;
+			case CM:
+				if (value != 8) {
+					throw new ZipException("Unsupported gzip compression method: " + value);
+				}
+				state = FLG;
+				break;
+			case FLG:
+				flags = value;
+				// MTIME, XFL and OS
+				skip = 6;
+				state = FIXED;
+				break;
+			case FIXED:
+				if (--skip == 0) {
+					state = nextOptionalField(FIXED);
+				}
+				break;
+			case XLEN1:
+				skip = value;
+				state = XLEN2;
+				break;
+			case XLEN2:
+				skip |= value << 8;
+				state = skip > 0 ? EXTRA : nextOptionalField(EXTRA);
+				break;
+			case EXTRA:
+				if (--skip == 0) {
+					state = nextOptionalField(EXTRA);
+				}
+				break;
+			case NAME:
+				if (value == 0) {
+					state = nextOptionalField(NAME);
+				}
+				break;
+			case COMMENT:
+				if (value == 0) {
+					state = nextOptionalField(COMMENT);
+				}
+				break;
+			case HCRC:
+				if (--skip == 0) {
+					state = DETECT;
+				}
+				break;
+		}
+	}
+	
+	/**
+	 * Gets the header field that follows a field, skipping the optional fields that are absent.
+	 * 
+	 * @param field
+	 * @return
+	 */
+	private int nextOptionalField(int field) {
+		if (field < XLEN1 && (flags & FEXTRA) != 0) {
+			return XLEN1;
+		} else if (field < NAME && (flags & FNAME) != 0) {
+			return NAME;
+		} else if (field < COMMENT && (flags & FCOMMENT) != 0) {
+			return COMMENT;
+		} else if ((flags & FHCRC) != 0) {
+			skip = 2;
+			
+			return HCRC;
+		}
+		
+		// the header is complete
+		return DETECT;
+	}
+	
+	/**
+	 * Checks the CRC and size in the gzip trailer.
+	 * 
+	 * @throws IOException
+	 */
+	private void verifyTrailer() throws IOException {
+		if (readInt(0) != (int)crc.getValue()) {
+			throw new ZipException("Corrupt gzip trailer: CRC mismatch");
+		}
+		
+		if (readInt(4) != (int)inflatedLength) {
+			throw new ZipException("Corrupt gzip trailer: size mismatch");
+		}
+	}
+	
+	/**
+	 * Reads a little-endian int from the trailer.
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	private int readInt(int offset) {
+		return (trailer[offset] & 0xFF) | ((trailer[offset + 1] & 0xFF) << 8) | ((trailer[offset + 2] & 0xFF) << 16) | ((trailer[offset + 3] & 0xFF) << 24);
+	}
+}
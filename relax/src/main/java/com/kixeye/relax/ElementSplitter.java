@@ -0,0 +1,216 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+/**
+ * Splits a streamed body into the JSON documents it is made of, either the lines of newline delimited JSON 
+ * or the elements of a top level JSON array, without parsing the documents themselves.
+ * 
+ * <p>The body is handed over as it arrives. {@link #split(byte[], int, ElementHandler)} reports every complete 
+ * document and returns how many bytes it is done with; the caller drops those from the front of its buffer 
+ * and hands the rest back, with more bytes appended, on the next call.</p>
+ * 
+ * @author ebahtijaragic
+ */
+class ElementSplitter {
+	private static final int UNKNOWN = 0;
+	private static final int LINES = 1;
+	private static final int ARRAY = 2;
+	
+	private int mode;
+	private int scanOffset = 0;
+	
+	private int depth = 0;
+	private boolean isInString = false;
+	private boolean isEscaped = false;
+	private boolean isClosed = false;
+	
+	/**
+	 * Handles the documents that are split off.
+	 */
+	protected static interface ElementHandler {
+		/**
+		 * @param data
+		 * @param offset
+		 * @param length
+		 * @throws IOException
+		 */
+		public void element(byte[] data, int offset, int length) throws IOException;
+	}
+	
+	/**
+	 * @param contentType the content type of the body, newline delimited types are split by lines and anything else by what the body starts with
+	 */
+	protected ElementSplitter(String contentType) {
+		this.mode = isLineDelimited(contentType) ? LINES : UNKNOWN;
+	}
+	
+	/**
+	 * @param contentType
+	 * @return true if the content type is one of the newline delimited JSON types
+	 */
+	protected static boolean isLineDelimited(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		
+		String type = contentType.toLowerCase();
+		
+		return type.contains("ndjson") || type.contains("jsonl") || type.contains("json-seq") || type.contains("jsonlines");
+	}
+	
+	/**
+	 * @return true if the body turned out to be a JSON array
+	 */
+	protected boolean isArray() {
+		return mode == ARRAY;
+	}
+	
+	/**
+	 * Splits off the complete documents in the buffer.
+	 * 
+	 * @param data
+	 * @param length
+	 * @param handler
+	 * @return the number of bytes at the front of the buffer that are done with
+	 * @throws IOException if the body is not a well formed array
+	 */
+	protected int split(byte[] data, int length, ElementHandler handler) throws IOException {
+		int start = 0;
+		int index = scanOffset;
+		
+		if (mode == UNKNOWN) {
+			while (index < length && isWhitespace(data[index])) {
+				index++;
+			}
+			
+			if (index == length) {
+				scanOffset = 0;
+				
+				return length;
+			}
+			
+			if (data[index] == '[') {
+				mode = ARRAY;
+				depth = 1;
+				index++;
+			} else {
+				mode = LINES;
+			}
+			
+			start = index;
+		}
+		
+		if (mode == LINES) {
+			for (; index < length; index++) {
+				if (data[index] == '\n') {
+					emit(data, start, index, handler);
+					start = index + 1;
+				}
+			}
+		} else {
+			for (; index < length; index++) {
+				byte value = data[index];
+				
+				if (isClosed) {
+					if (!isWhitespace(value)) {
+						throw new IOException("Unexpected content after the JSON array");
+					}
+				} else if (isInString) {
+					if (isEscaped) {
+						isEscaped = false;
+					} else if (value == '\\') {
+						isEscaped = true;
+					} else if (value == '"') {
+						isInString = false;
+					}
+				} else if (value == '"') {
+					isInString = true;
+				} else if (value == '{' || value == '[') {
+					depth++;
+				} else if (value == '}' || value == ']') {
+					if (--depth == 0) {
+						emit(data, start, index, handler);
+						start = index + 1;
+						isClosed = true;
+					}
+				} else if (value == ',' && depth == 1) {
+					emit(data, start, index, handler);
+					start = index + 1;
+				}
+			}
+		}
+		
+		scanOffset = index - start;
+		
+		return start;
+	}
+	
+	/**
+	 * Splits off what is left once the body is complete.
+	 * 
+	 * @param data
+	 * @param length
+	 * @param handler
+	 * @throws IOException if the body ended inside an array
+	 */
+	protected void finish(byte[] data, int length, ElementHandler handler) throws IOException {
+		if (mode == LINES) {
+			// the last line does not need a newline
+			emit(data, 0, length, handler);
+		} else if (mode == ARRAY && !isClosed) {
+			throw new IOException("Truncated JSON array");
+		}
+	}
+	
+	/**
+	 * Hands a document to the handler without the whitespace around it, skipping blank ones.
+	 * 
+	 * @param data
+	 * @param start
+	 * @param end
+	 * @param handler
+	 * @throws IOException
+	 */
+	private static void emit(byte[] data, int start, int end, ElementHandler handler) throws IOException {
+		while (start < end && isWhitespace(data[start])) {
+			start++;
+		}
+		
+		while (end > start && isWhitespace(data[end - 1])) {
+			end--;
+		}
+		
+		if (start < end) {
+			handler.element(data, start, end - start);
+		}
+	}
+	
+	/**
+	 * @param value
+	 * @return true for JSON whitespace, and the record separator of JSON text sequences
+	 */
+	private static boolean isWhitespace(byte value) {
+		return value == ' ' || value == '\t' || value == '\r' || value == '\n' || value == 0x1E;
+	}
+}
@@ -0,0 +1,528 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kixeye.relax.HttpPromise.HttpPromiseListener;
+
+/**
+ * Consumes streamed responses as the elements of a {@link StreamPublisher}.
+ * 
+ * <p>The body is turned into elements by an {@link ElementParser} as it arrives, so only the elements that are 
+ * waiting for demand are held in memory. Once that many reach the prefetch, input from the connection is suspended 
+ * until the subscriber has taken half of them, which leaves the rest of the body in the socket buffers and makes 
+ * a slow subscriber slow down the server instead of filling the heap.</p>
+ * 
+ * <p>Every exchange is read with a {@link #createResponseConsumer() response consumer} of its own, and its promise 
+ * completing is what ends the stream, unless a subclass starts another exchange. Cancelling the subscription 
+ * cancels the current promise, which aborts the exchange.</p>
+ * 
+ * @author ebahtijaragic
+ */
+abstract class ElementStream<T> implements StreamSubscription, HttpPromiseListener<HttpResponse<Void>> {
+	private static final Logger logger = LoggerFactory.getLogger(ElementStream.class);
+	
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	private static final int MAX_ELEMENT_SIZE = 16 * 1024 * 1024;
+	
+	private final CompressionPolicy compressionPolicy;
+	private final StreamSubscriber<? super T> subscriber;
+	private final int prefetch;
+	
+	private final Queue<T> elements = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger elementCount = new AtomicInteger();
+	private final AtomicLong requested = new AtomicLong();
+	private final AtomicInteger pendingDrains = new AtomicInteger();
+	
+	private volatile IOControl ioControl;
+	private final AtomicBoolean isInputSuspended = new AtomicBoolean();
+	
+	private volatile HttpPromise<HttpResponse<Void>> promise;
+	private volatile boolean isCancelled = false;
+	private volatile boolean isDone = false;
+	private volatile Throwable error;
+	private boolean isTerminated = false;
+	
+	/**
+	 * Turns the bytes of a body into elements.
+	 * 
+	 * <p>The body is handed over as it arrives. {@link #parse(byte[], int)} emits every complete element and returns 
+	 * how many bytes it is done with; those are dropped from the front of the buffer and the rest is handed back, 
+	 * with more bytes appended, on the next call.</p>
+	 */
+	protected static interface ElementParser {
+		/**
+		 * @param data
+		 * @param length
+		 * @return the number of bytes at the front of the buffer that are done with
+		 * @throws IOException
+		 */
+		public int parse(byte[] data, int length) throws IOException;
+		
+		/**
+		 * Parses what is left once the body is complete.
+		 * 
+		 * @param data
+		 * @param length
+		 * @throws IOException
+		 */
+		public void finish(byte[] data, int length) throws IOException;
+	}
+	
+	/**
+	 * @param compressionPolicy the policy compressed responses are counted by, or null if they are not inflated
+	 * @param subscriber
+	 * @param prefetch the number of elements that are decoded ahead of demand
+	 */
+	protected ElementStream(CompressionPolicy compressionPolicy, StreamSubscriber<? super T> subscriber, int prefetch) {
+		this.compressionPolicy = compressionPolicy;
+		this.subscriber = subscriber;
+		this.prefetch = prefetch;
+	}
+	
+	/**
+	 * Creates the parser of a response's body.
+	 * 
+	 * @param statusCode
+	 * @param contentType
+	 * @return the parser, or null if the body is to be discarded
+	 */
+	protected abstract ElementParser createParser(int statusCode, String contentType);
+	
+	/**
+	 * Creates a consumer to read the next exchange's response with.
+	 * 
+	 * @return
+	 */
+	protected HttpAsyncResponseConsumer<HttpResponse<Void>> createResponseConsumer() {
+		return new ResponseConsumer();
+	}
+	
+	/**
+	 * Ties the stream to the promise of its current exchange.
+	 * 
+	 * @param promise
+	 */
+	protected void setPromise(HttpPromise<HttpResponse<Void>> promise) {
+		this.promise = promise;
+		
+		promise.addListener(this);
+		
+		if (isCancelled) {
+			promise.cancel();
+		}
+	}
+	
+	/**
+	 * @return true if the subscriber cancelled
+	 */
+	protected boolean isCancelled() {
+		return isCancelled;
+	}
+	
+	/**
+	 * @return true if the stream completed, failed or was cancelled
+	 */
+	protected boolean isFinished() {
+		return isCancelled || isDone || error != null;
+	}
+	
+	/**
+	 * @see com.kixeye.relax.StreamSubscription#request(long)
+	 */
+	@Override
+	public void request(long n) {
+		if (n <= 0) {
+			fail(new IllegalArgumentException("Requested " + n + " elements, the number has to be positive"));
+			
+			return;
+		}
+		
+		while (true) {
+			long current = requested.get();
+			long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+			
+			if (requested.compareAndSet(current, next)) {
+				break;
+			}
+		}
+		
+		drain();
+	}
+	
+	/**
+	 * @see com.kixeye.relax.StreamSubscription#cancel()
+	 */
+	@Override
+	public void cancel() {
+		isCancelled = true;
+		
+		HttpPromise<HttpResponse<Void>> currentPromise = promise;
+		
+		if (currentPromise != null) {
+			currentPromise.cancel();
+		}
+		
+		drain();
+	}
+	
+	/**
+	 * @see com.kixeye.relax.HttpPromise.HttpPromiseListener#handle(com.kixeye.relax.HttpPromise)
+	 */
+	@Override
+	public void handle(HttpPromise<HttpResponse<Void>> promise) {
+		if (promise != this.promise) {
+			// an exchange that was replaced
+			return;
+		}
+		
+		try {
+			HttpResponse<Void> response = promise.get();
+			
+			completed(response);
+		} catch (CancellationException e) {
+			if (!isCancelled) {
+				failed(e);
+			}
+		} catch (Exception e) {
+			failed(e);
+		}
+	}
+	
+	/**
+	 * Called when the body of the current exchange has been consumed. Completes the stream if the response was a success.
+	 * 
+	 * @param response
+	 */
+	protected void completed(HttpResponse<Void> response) {
+		if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+			fail(new UnexpectedStatusException(response.getStatusCode()));
+		} else {
+			complete();
+		}
+	}
+	
+	/**
+	 * Called when the current exchange failed. Fails the stream.
+	 * 
+	 * @param error
+	 */
+	protected void failed(Exception error) {
+		fail(error);
+	}
+	
+	/**
+	 * Completes the stream once the elements that were not delivered yet are.
+	 */
+	protected void complete() {
+		isDone = true;
+		
+		drain();
+	}
+	
+	/**
+	 * Fails the stream, dropping the elements that were not delivered.
+	 * 
+	 * @param error
+	 */
+	protected void fail(Throwable error) {
+		if (this.error == null) {
+			this.error = error;
+		}
+		
+		HttpPromise<HttpResponse<Void>> currentPromise = promise;
+		
+		if (currentPromise != null) {
+			currentPromise.cancel();
+		}
+		
+		drain();
+	}
+	
+	/**
+	 * Queues an element for the subscriber. Called by the parsers.
+	 * 
+	 * @param element
+	 */
+	protected void emit(T element) {
+		elements.add(element);
+		elementCount.incrementAndGet();
+	}
+	
+	/**
+	 * Delivers what the subscriber asked for and signals the end of the stream, on one thread at a time.
+	 */
+	protected void drain() {
+		if (pendingDrains.getAndIncrement() != 0) {
+			return;
+		}
+		
+		do {
+			if (!isTerminated) {
+				try {
+					if (isCancelled) {
+						isTerminated = true;
+					} else if (error != null) {
+						isTerminated = true;
+						
+						subscriber.onError(error);
+					} else {
+						deliver();
+					}
+				} catch (RuntimeException e) {
+					logger.error("Unexpected error from stream subscriber, cancelling the stream", e);
+					
+					isTerminated = true;
+					cancel();
+				}
+				
+				if (isTerminated) {
+					elements.clear();
+				}
+			}
+		} while (pendingDrains.decrementAndGet() != 0);
+	}
+	
+	/**
+	 * Delivers the elements the subscriber asked for and completes the stream once they are all delivered.
+	 */
+	private void deliver() {
+		long demand = requested.get();
+		long delivered = 0;
+		
+		while (delivered < demand && !isCancelled && error == null) {
+			T element = elements.poll();
+			
+			if (element == null) {
+				break;
+			}
+			
+			elementCount.decrementAndGet();
+			delivered++;
+			
+			subscriber.onNext(element);
+		}
+		
+		if (delivered > 0 && demand != Long.MAX_VALUE) {
+			requested.addAndGet(-delivered);
+		}
+		
+		if (isDone && elements.isEmpty() && !isCancelled && error == null) {
+			isTerminated = true;
+			
+			subscriber.onComplete();
+		}
+		
+		// resume reading once half of the prefetched elements have been taken
+		if (elementCount.get() <= prefetch / 2 && isInputSuspended.compareAndSet(true, false)) {
+			ioControl.requestInput();
+		}
+	}
+	
+	/**
+	 * Reads the body into elements as the connection delivers it.
+	 */
+	private class ResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse<Void>> {
+		private int statusCode;
+		private Header[] headers;
+		private String contentEncoding;
+		
+		private ElementParser parser;
+		private byte[] buffer;
+		private int length;
+		
+		private ContentInflater inflater;
+		private ByteBuffer compressedChunk;
+		private long compressedLength;
+		
+		/**
+		 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#onResponseReceived(org.apache.http.HttpResponse)
+		 */
+		@Override
+		protected void onResponseReceived(org.apache.http.HttpResponse response) {
+			statusCode = response.getStatusLine().getStatusCode();
+			headers = response.getAllHeaders();
+			
+			Header contentTypeHeader = response.getFirstHeader("Content-Type");
+			parser = createParser(statusCode, contentTypeHeader != null ? contentTypeHeader.getValue() : null);
+			
+			Header contentEncodingHeader = response.getFirstHeader("Content-Encoding");
+			contentEncoding = contentEncodingHeader != null ? contentEncodingHeader.getValue() : null;
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#onEntityEnclosed(org.apache.http.HttpEntity, org.apache.http.entity.ContentType)
+		 */
+		@Override
+		protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+			buffer = new byte[DEFAULT_BUFFER_SIZE];
+			
+			// only a body that is there is inflated, a 204 may name an encoding too
+			if (compressionPolicy != null && contentEncoding != null) {
+				inflater = ContentInflater.create(contentEncoding);
+			}
+			
+			if (inflater != null) {
+				compressedChunk = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+			}
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#onContentReceived(org.apache.http.nio.ContentDecoder, org.apache.http.nio.IOControl)
+		 */
+		@Override
+		protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+			ioControl = ioctrl;
+			
+			while (parser == null || elementCount.get() < prefetch) {
+				int read;
+				
+				if (inflater != null) {
+					if (inflater.needsInput()) {
+						compressedChunk.clear();
+						
+						int compressedRead = decoder.read(compressedChunk);
+						
+						if (compressedRead <= 0) {
+							break;
+						}
+						
+						compressedLength += compressedRead;
+						inflater.setInput(compressedChunk.array(), 0, compressedRead);
+					}
+					
+					read = inflater.inflate(buffer, length, buffer.length - length);
+				} else {
+					read = decoder.read(ByteBuffer.wrap(buffer, length, buffer.length - length));
+					
+					if (read <= 0) {
+						break;
+					}
+				}
+				
+				appended(read);
+			}
+			
+			if (parser != null && elementCount.get() >= prefetch && !decoder.isCompleted() && isInputSuspended.compareAndSet(false, true)) {
+				ioctrl.suspendInput();
+			}
+			
+			drain();
+		}
+		
+		/**
+		 * Parses the elements off the bytes that were appended to the buffer.
+		 * 
+		 * @param read
+		 * @throws IOException
+		 */
+		private void appended(int read) throws IOException {
+			length += read;
+			
+			if (parser == null) {
+				length = 0;
+				
+				return;
+			}
+			
+			int consumed = parser.parse(buffer, length);
+			
+			if (consumed > 0) {
+				System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+				length -= consumed;
+			}
+			
+			if (length == buffer.length) {
+				if (buffer.length >= MAX_ELEMENT_SIZE) {
+					throw new IOException("Element larger than " + MAX_ELEMENT_SIZE + " bytes");
+				}
+				
+				buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_ELEMENT_SIZE));
+			}
+		}
+		
+		/**
+		 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#buildResult(org.apache.http.protocol.HttpContext)
+		 */
+		@Override
+		protected HttpResponse<Void> buildResult(HttpContext context) throws Exception {
+			if (inflater != null) {
+				int read;
+				
+				// the prefetch may have stopped the inflater short of the end of the body
+				while (buffer != null && (read = inflater.inflate(buffer, length, buffer.length - length)) > 0) {
+					appended(read);
+				}
+				
+				if (!inflater.isFinished()) {
+					throw new IOException("Truncated compressed response body");
+				}
+				
+				compressionPolicy.received(compressedLength, inflater.getInflatedLength());
+			}
+			
+			if (parser != null && buffer != null) {
+				parser.finish(buffer, length);
+			}
+			
+			return new HttpResponse<>(statusCode, headers, null);
+		}
+
+		/**
+		 * @see org.apache.http.nio.protocol.AbstractAsyncResponseConsumer#releaseResources()
+		 */
+		@Override
+		protected void releaseResources() {
+			parser = null;
+			buffer = null;
+			
+			if (inflater != null) {
+				inflater.end();
+			}
+			
+			inflater = null;
+			compressedChunk = null;
+			
+			// a new exchange starts with its input flowing
+			isInputSuspended.set(false);
+		}
+	}
+}
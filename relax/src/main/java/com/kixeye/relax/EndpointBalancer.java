@@ -0,0 +1,246 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the endpoint each request of a load-balanced client goes to.
+ * 
+ * <p>Two endpoints are picked at random and the one with the lower cost, its in-flight count times its 
+ * decaying average (EWMA) latency, wins. An endpoint that fails a number of times in a row, with an exception 
+ * or a 5xx, is ejected for a cooldown. After the cooldown a single failure ejects it again and a success restores it. 
+ * If every endpoint is ejected they are all used.</p>
+ * 
+ * @author ebahtijaragic
+ */
+class EndpointBalancer {
+	public static final int DEFAULT_EJECTION_FAILURES = 5;
+	public static final long DEFAULT_EJECTION_COOLDOWN_MILLIS = 30000;
+	
+	private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+	// keeps the in-flight count relevant between endpoints that have seen no latency yet
+	private static final double LATENCY_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private final Endpoint[] endpoints;
+	
+	private final int ejectionFailures;
+	private final long ejectionCooldownNanos;
+	
+	/**
+	 * @param uriPrefixes
+	 * @param ejectionFailures
+	 * @param ejectionCooldownMillis
+	 */
+	protected EndpointBalancer(List<String> uriPrefixes, int ejectionFailures, long ejectionCooldownMillis) {
+		if (uriPrefixes == null || uriPrefixes.isEmpty()) {
+			throw new IllegalArgumentException("At least one uri prefix is required");
+		}
+		
+		this.endpoints = new Endpoint[uriPrefixes.size()];
+		for (int i = 0; i < endpoints.length; i++) {
+			endpoints[i] = new Endpoint(uriPrefixes.get(i));
+		}
+		
+		this.ejectionFailures = ejectionFailures;
+		this.ejectionCooldownNanos = TimeUnit.MILLISECONDS.toNanos(ejectionCooldownMillis);
+	}
+	
+	/**
+	 * Gets the prefix requests are built with before an endpoint is picked.
+	 * 
+	 * @return
+	 */
+	protected String getPrimaryUriPrefix() {
+		return endpoints[0].uriPrefix;
+	}
+	
+	/**
+	 * Picks an endpoint and counts the request as in flight to it. 
+	 * The request must be finished with {@link Endpoint#completed(long, boolean)} or {@link Endpoint#cancelled()}.
+	 * 
+	 * @return
+	 */
+	protected Endpoint select() {
+		Endpoint endpoint;
+		
+		if (endpoints.length == 1) {
+			endpoint = endpoints[0];
+		} else {
+			long now = System.nanoTime();
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			
+			endpoint = pick(random, now, true);
+			if (endpoint == null) {
+				endpoint = pick(random, now, false);
+			}
+		}
+		
+		endpoint.inFlight.incrementAndGet();
+		
+		return endpoint;
+	}
+	
+	/**
+	 * Picks the cheaper of two random endpoints.
+	 * 
+	 * @param random
+	 * @param now
+	 * @param isEjectionHonored
+	 * @return null if no endpoint is available
+	 */
+	private Endpoint pick(ThreadLocalRandom random, long now, boolean isEjectionHonored) {
+		Endpoint first = pickRandom(random, now, isEjectionHonored, null);
+		Endpoint second = first != null ? pickRandom(random, now, isEjectionHonored, first) : null;
+		
+		if (second == null) {
+			return first;
+		}
+		
+		return first.cost() <= second.cost() ? first : second;
+	}
+	
+	/**
+	 * Picks a random endpoint.
+	 * 
+	 * @param random
+	 * @param now
+	 * @param isEjectionHonored
+	 * @param excluded
+	 * @return null if no endpoint is available
+	 */
+	private Endpoint pickRandom(ThreadLocalRandom random, long now, boolean isEjectionHonored, Endpoint excluded) {
+		int start = random.nextInt(endpoints.length);
+		
+		for (int i = 0; i < endpoints.length; i++) {
+			Endpoint candidate = endpoints[(start + i) % endpoints.length];
+			
+			if (candidate != excluded && !(isEjectionHonored && candidate.isEjected(now))) {
+				return candidate;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * An endpoint requests can be sent to.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	protected class Endpoint {
+		private final String uriPrefix;
+		
+		private final AtomicInteger inFlight = new AtomicInteger();
+		
+		// guarded by this
+		private double latencyEwma = 0;
+		private long lastUpdateNanos = System.nanoTime();
+		private int consecutiveFailures = 0;
+		
+		private volatile long ejectedUntilNanos = 0;
+		private volatile boolean isEjected = false;
+		
+		/**
+		 * @param uriPrefix
+		 */
+		private Endpoint(String uriPrefix) {
+			this.uriPrefix = uriPrefix;
+		}
+		
+		/**
+		 * @return the uri prefix
+		 */
+		protected String getUriPrefix() {
+			return uriPrefix;
+		}
+		
+		/**
+		 * @return the number of requests in flight
+		 */
+		protected int getInFlightCount() {
+			return inFlight.get();
+		}
+		
+		/**
+		 * @return the decaying average latency in nanos
+		 */
+		protected synchronized double getLatencyEwma() {
+			return latencyEwma;
+		}
+		
+		/**
+		 * Finishes a request that received a response or failed.
+		 * 
+		 * @param latencyNanos
+		 * @param isSuccess false for errors and 5xx responses
+		 */
+		protected void completed(long latencyNanos, boolean isSuccess) {
+			inFlight.decrementAndGet();
+			
+			long now = System.nanoTime();
+			
+			synchronized (this) {
+				double weight = Math.exp(-Math.max(0, now - lastUpdateNanos) / DECAY_NANOS);
+				
+				latencyEwma = latencyEwma == 0 ? latencyNanos : (latencyEwma * weight) + (latencyNanos * (1 - weight));
+				lastUpdateNanos = now;
+				
+				if (isSuccess) {
+					consecutiveFailures = 0;
+					isEjected = false;
+				} else if (++consecutiveFailures >= ejectionFailures && (!isEjected || now - ejectedUntilNanos >= 0)) {
+					ejectedUntilNanos = now + ejectionCooldownNanos;
+					isEjected = true;
+				}
+			}
+		}
+		
+		/**
+		 * Finishes a request that was cancelled, which says nothing about the endpoint.
+		 */
+		protected void cancelled() {
+			inFlight.decrementAndGet();
+		}
+		
+		/**
+		 * Returns true if the endpoint is cooling down.
+		 * 
+		 * @param now
+		 * @return
+		 */
+		protected boolean isEjected(long now) {
+			return isEjected && now - ejectedUntilNanos < 0;
+		}
+		
+		/**
+		 * Gets the cost of sending another request here.
+		 * 
+		 * @return
+		 */
+		private double cost() {
+			return (getLatencyEwma() + LATENCY_FLOOR_NANOS) * (inFlight.get() + 1);
+		}
+	}
+}
@@ -0,0 +1,316 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.kixeye.relax.metrics.LatencyHistogram;
+
+/**
+ * Decides when a request is hedged: sent a second time if no response has arrived after a delay, 
+ * with the first response winning and the other attempt cancelled.
+ * 
+ * <p>GETs and DELETEs are hedged, as are the methods and path templates that are explicitly marked idempotent. 
+ * The delay is either fixed or tracks a percentile of each endpoint's latency, measured over windows of 
+ * {@value #PERCENTILE_WINDOW} responses; the initial delay is used until the first window is complete.</p>
+ * 
+ * <p>Hedges are paid for from a budget that every request adds a fraction of a hedge to, so hedging never adds 
+ * more than that fraction of extra load, plus a small burst.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class HedgingPolicy {
+	public static final int PERCENTILE_WINDOW = 1000;
+	public static final double DEFAULT_BUDGET_RATIO = 0.1;
+	public static final int DEFAULT_MAX_BURST = 10;
+	
+	private static final long TOKEN = 1000;
+	
+	private final long initialDelayNanos;
+	private final double percentile;
+	
+	private double budgetRatio = DEFAULT_BUDGET_RATIO;
+	private int maxBurst = DEFAULT_MAX_BURST;
+	private final AtomicLong budget = new AtomicLong(0);
+	
+	private ScheduledExecutorService scheduler;
+	
+	private final Set<String> idempotentEndpoints = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentMap<String, LatencyTracker> trackers = new ConcurrentHashMap<>();
+	
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	private final AtomicLong throttledHedges = new AtomicLong();
+	
+	/**
+	 * @param initialDelayNanos
+	 * @param percentile
+	 */
+	private HedgingPolicy(long initialDelayNanos, double percentile) {
+		this.initialDelayNanos = initialDelayNanos;
+		this.percentile = percentile;
+	}
+	
+	/**
+	 * Creates a policy that hedges after a fixed delay.
+	 * 
+	 * @param delay
+	 * @param unit
+	 * @return
+	 */
+	public static HedgingPolicy fixedDelay(long delay, TimeUnit unit) {
+		return new HedgingPolicy(unit.toNanos(delay), Double.NaN);
+	}
+	
+	/**
+	 * Creates a policy that hedges once a request has taken longer than the given percentile of its endpoint's latency.
+	 * 
+	 * @param percentile between 0 and 100, e.g. 95
+	 * @param initialDelay the delay used until enough latencies have been seen
+	 * @param unit
+	 * @return
+	 */
+	public static HedgingPolicy percentile(double percentile, long initialDelay, TimeUnit unit) {
+		if (!(percentile > 0 && percentile < 100)) {
+			throw new IllegalArgumentException("Invalid percentile: " + percentile);
+		}
+		
+		return new HedgingPolicy(unit.toNanos(initialDelay), percentile);
+	}
+	
+	/**
+	 * With the fraction of requests that may be hedged, e.g. 0.05 for 5%, and the number of hedges that may be sent in a burst.
+	 * 
+	 * @param budgetRatio
+	 * @param maxBurst
+	 * @return
+	 */
+	public HedgingPolicy withBudget(double budgetRatio, int maxBurst) {
+		this.budgetRatio = budgetRatio;
+		this.maxBurst = maxBurst;
+		
+		return this;
+	}
+	
+	/**
+	 * With a request that is safe to hedge although its method is not GET or DELETE.
+	 * 
+	 * @param method
+	 * @param pathTemplate the unexpanded path template, as passed to the client
+	 * @return
+	 */
+	public HedgingPolicy withIdempotent(String method, String pathTemplate) {
+		idempotentEndpoints.add(key(method, pathTemplate));
+		
+		return this;
+	}
+	
+	/**
+	 * With the scheduler hedges are sent from.
+	 * 
+	 * @param scheduler
+	 * @return
+	 */
+	public HedgingPolicy withScheduler(ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+		
+		return this;
+	}
+	
+	/**
+	 * Gets the number of hedges that were sent.
+	 * 
+	 * @return
+	 */
+	public long getHedgeCount() {
+		return hedges.get();
+	}
+	
+	/**
+	 * Gets the number of hedges that responded before the request they hedged.
+	 * 
+	 * @return
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWins.get();
+	}
+	
+	/**
+	 * Gets the number of hedges that were not sent because the budget was exhausted.
+	 * 
+	 * @return
+	 */
+	public long getThrottledHedgeCount() {
+		return throttledHedges.get();
+	}
+	
+	/**
+	 * Returns true if requests to the endpoint may be hedged.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @return
+	 */
+	protected boolean isHedged(String method, String pathTemplate) {
+		return "GET".equals(method) || "DELETE".equals(method) || (!idempotentEndpoints.isEmpty() && idempotentEndpoints.contains(key(method, pathTemplate)));
+	}
+	
+	/**
+	 * Adds a request's share to the hedge budget.
+	 */
+	protected void deposit() {
+		long deposit = (long)(budgetRatio * TOKEN);
+		long max = maxBurst * TOKEN;
+		long current;
+		
+		do {
+			current = budget.get();
+			
+			if (current >= max) {
+				return;
+			}
+		} while (!budget.compareAndSet(current, Math.min(max, current + deposit)));
+	}
+	
+	/**
+	 * Takes a hedge from the budget.
+	 * 
+	 * @return false if the budget is exhausted
+	 */
+	protected boolean tryAcquire() {
+		long current;
+		
+		do {
+			current = budget.get();
+			
+			if (current < TOKEN) {
+				throttledHedges.incrementAndGet();
+				
+				return false;
+			}
+		} while (!budget.compareAndSet(current, current - TOKEN));
+		
+		hedges.incrementAndGet();
+		
+		return true;
+	}
+	
+	/**
+	 * Gets how long to wait for a response before hedging.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @return
+	 */
+	protected long getDelayNanos(String method, String pathTemplate) {
+		if (Double.isNaN(percentile)) {
+			return initialDelayNanos;
+		}
+		
+		LatencyTracker tracker = trackers.get(key(method, pathTemplate));
+		
+		return tracker != null && tracker.delayNanos >= 0 ? tracker.delayNanos : initialDelayNanos;
+	}
+	
+	/**
+	 * Records the latency of a request's first attempt, up to when it responded or, if a hedge responded first, was cancelled.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @param latencyNanos measured from when the first attempt was sent
+	 * @param isHedge whether the response came from a hedge
+	 */
+	protected void record(String method, String pathTemplate, long latencyNanos, boolean isHedge) {
+		if (isHedge) {
+			hedgeWins.incrementAndGet();
+		}
+		
+		if (Double.isNaN(percentile)) {
+			return;
+		}
+		
+		String key = key(method, pathTemplate);
+		LatencyTracker tracker = trackers.get(key);
+		
+		if (tracker == null) {
+			LatencyTracker newTracker = new LatencyTracker();
+			
+			tracker = trackers.putIfAbsent(key, newTracker);
+			if (tracker == null) {
+				tracker = newTracker;
+			}
+		}
+		
+		tracker.record(latencyNanos, percentile);
+	}
+	
+	/**
+	 * Gets the scheduler hedges are sent from.
+	 * 
+	 * @return
+	 */
+	protected ScheduledExecutorService getScheduler() {
+		return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+	}
+	
+	/**
+	 * Builds an endpoint key.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @return
+	 */
+	private static String key(String method, String pathTemplate) {
+		return method + " " + pathTemplate;
+	}
+	
+	/**
+	 * Tracks the latency percentile of one endpoint over consecutive windows.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	private static class LatencyTracker {
+		private volatile LatencyHistogram window = new LatencyHistogram();
+		private final AtomicLong samples = new AtomicLong();
+		
+		private volatile long delayNanos = -1;
+		
+		/**
+		 * @param latencyNanos
+		 * @param percentile
+		 */
+		private void record(long latencyNanos, double percentile) {
+			LatencyHistogram current = window;
+			current.record(latencyNanos);
+			
+			if (samples.incrementAndGet() % PERCENTILE_WINDOW == 0) {
+				window = new LatencyHistogram();
+				delayNanos = current.getValueAtPercentile(percentile);
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A transport over httpasyncclient's pooled HTTP/1.1 connections.
+ * 
+ * @author ebahtijaragic
+ */
+public class HttpAsyncClientTransport implements RestClientTransport {
+	private final CloseableHttpAsyncClient httpClient;
+	private final boolean isHttpClientShared;
+	
+	private final PoolingNHttpClientConnectionManager connectionManager;
+	private final ConcurrentMap<HttpHost, HttpRoute> routes = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param httpClient a started client
+	 * @param connectionManager the client's connection manager, or null if its stats are not to be read
+	 * @param isHttpClientShared true if the client is not to be closed with the transport
+	 */
+	public HttpAsyncClientTransport(CloseableHttpAsyncClient httpClient, PoolingNHttpClientConnectionManager connectionManager, boolean isHttpClientShared) {
+		this.httpClient = httpClient;
+		this.connectionManager = connectionManager;
+		this.isHttpClientShared = isHttpClientShared;
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClientTransport#execute(org.apache.http.HttpHost, org.apache.http.client.methods.HttpUriRequest, org.apache.http.nio.protocol.HttpAsyncResponseConsumer, org.apache.http.concurrent.FutureCallback)
+	 */
+	@Override
+	public <T> Future<T> execute(HttpHost target, HttpUriRequest request, HttpAsyncResponseConsumer<T> responseConsumer, FutureCallback<T> callback) {
+		trackRoute(target);
+		
+		return httpClient.execute(HttpAsyncMethods.create(target, request), responseConsumer, callback);
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClientTransport#getConnectionPoolStats()
+	 */
+	@Override
+	public ConnectionPoolStats getConnectionPoolStats() {
+		Map<String, PoolStats> routeStats = new TreeMap<>();
+		
+		if (connectionManager == null) {
+			return new ConnectionPoolStats(new PoolStats(0, 0, 0, 0), routeStats);
+		}
+		
+		for (HttpRoute route : routes.values()) {
+			routeStats.put(route.getTargetHost().toURI(), connectionManager.getStats(route));
+		}
+		
+		return new ConnectionPoolStats(connectionManager.getTotalStats(), routeStats);
+	}
+	
+	/**
+	 * @see com.kixeye.relax.RestClientTransport#isRunning()
+	 */
+	@Override
+	public boolean isRunning() {
+		return httpClient.isRunning();
+	}
+	
+	/**
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!isHttpClientShared) {
+			httpClient.close();
+		}
+	}
+	
+	/**
+	 * Remembers the route to a host so its pool stats can be reported.
+	 * 
+	 * @param target
+	 */
+	private void trackRoute(HttpHost target) {
+		if (!routes.containsKey(target)) {
+			boolean isSecure = "https".equalsIgnoreCase(target.getSchemeName());
+			int port = target.getPort() > 0 ? target.getPort() : (isSecure ? 443 : 80);
+			
+			// mirrors the route the default route planner plans for a direct connection
+			routes.putIfAbsent(target, new HttpRoute(new HttpHost(target.getHostName(), port, target.getSchemeName()), null, isSecure));
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.http.Header;
+
+/**
+ * A read-only, case-insensitive view of response headers backed by the raw header array.
+ * 
+ * <p>Lookups scan the array directly, the full map is only built if it is iterated.</p>
+ * 
+ * @author ebahtijaragic
+ */
+class HttpHeaderMap extends AbstractMap<String, List<String>> {
+	private static final Header[] EMPTY_HEADERS = new Header[0];
+	
+	private final Header[] headers;
+	
+	private volatile Map<String, List<String>> materialized;
+	
+	/**
+	 * @param headers
+	 */
+	protected HttpHeaderMap(Header[] headers) {
+		this.headers = headers != null ? headers : EMPTY_HEADERS;
+	}
+	
+	/**
+	 * Returns the first value of the given header.
+	 * 
+	 * @param name
+	 * @return the value, or null if there is no such header
+	 */
+	public String getFirst(String name) {
+		for (Header header : headers) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+		
+		return null;
+	}
+
+	/**
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	@Override
+	public List<String> get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		
+		String name = (String)key;
+		List<String> values = null;
+		
+		for (Header header : headers) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				if (values == null) {
+					values = new ArrayList<>(2);
+				}
+				values.add(header.getValue());
+			}
+		}
+		
+		return values != null ? Collections.unmodifiableList(values) : null;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && getFirst((String)key) != null;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return headers.length == 0;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#size()
+	 */
+	@Override
+	public int size() {
+		return materialize().size();
+	}
+
+	/**
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	@Override
+	public Set<Entry<String, List<String>>> entrySet() {
+		return materialize().entrySet();
+	}
+	
+	/**
+	 * @return the raw headers
+	 */
+	protected Header[] getHeaders() {
+		return headers;
+	}
+	
+	/**
+	 * Builds the full map on first use.
+	 * 
+	 * @return
+	 */
+	private Map<String, List<String>> materialize() {
+		Map<String, List<String>> result = materialized;
+		
+		if (result == null) {
+			Map<String, List<String>> building = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			
+			for (Header header : headers) {
+				List<String> values = building.get(header.getName());
+				if (values == null) {
+					values = new ArrayList<>(2);
+					building.put(header.getName(), values);
+				}
+				values.add(header.getValue());
+			}
+			
+			for (Entry<String, List<String>> entry : building.entrySet()) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+			
+			materialized = result = Collections.unmodifiableMap(building);
+		}
+		
+		return result;
+	}
+}
@@ -0,0 +1,774 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.http.concurrent.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Represents a promise.
+ * 
+ * <p>All state lives in a single field that is either a stack of pending listeners and waiting threads, 
+ * or the completed value. Registering and completing are each a CAS on that field, 
+ * so a listener is never lost to a concurrent completion and waiting threads simply park.</p>
+ * 
+ * <p>Promises compose without blocking through {@link #thenApply(HttpPromiseFunction)}, {@link #thenCompose(HttpPromiseFunction)}, 
+ * {@link #allOf(List)}, {@link #anyOf(List)} and {@link #withTimeout(long, TimeUnit)}.</p>
+ * 
+ * @author ebahtijaragic
+ *
+ * @param <T>
+ */
+public class HttpPromise<T> {
+	private static final Logger logger = LoggerFactory.getLogger(HttpPromise.class);
+	
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<HttpPromise, Object> STATE = 
+			AtomicReferenceFieldUpdater.newUpdater(HttpPromise.class, Object.class, "state");
+	
+	/**
+	 * Either null, the head {@link Node} of the pending stack, or the completed {@link Value}.
+	 */
+	private volatile Object state = null;
+	
+	private ExecutorService executor = null;
+	
+	private volatile Cancellable cancellable = null;
+	
+	private class Value {
+		private T value;
+		private Exception exception;
+		
+		/**
+		 * @param value
+		 */
+		public Value(T value) {
+			this.value = value;
+		}
+
+		/**
+		 * @param exception
+		 */
+		public Value(T value, Exception exception) {
+			this.value = value;
+			this.exception = exception;
+		}
+	}
+	
+	/**
+	 * A pending listener or waiting thread.
+	 */
+	private static final class Node<T> {
+		private final HttpPromiseListener<T> listener;
+		private volatile Thread thread;
+		private volatile Node<T> next;
+		
+		/**
+		 * @param listener
+		 * @param thread
+		 */
+		public Node(HttpPromiseListener<T> listener, Thread thread) {
+			this.listener = listener;
+			this.thread = thread;
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	public HttpPromise() {
+	}
+	
+	/**
+	 * @param executor
+	 */
+	public HttpPromise(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Adds a listener.
+	 * 
+	 * @param listener
+	 */
+	public void addListener(HttpPromiseListener<T> listener) {
+		if (!push(new Node<>(listener, null))) {
+			notifyListener(listener);
+		}
+	}
+	
+	/**
+	 * Gets the current value.
+	 * 
+	 * @return
+	 * @throws Throwable 
+	 */
+	@SuppressWarnings("unchecked")
+	public T get() throws Exception {
+		Object currentState = state;
+		
+		if (!(currentState instanceof HttpPromise.Value)) {
+			return null;
+		} else {
+			Value currentValue = (Value)currentState;
+			
+			if (currentValue.exception != null) {
+				throw currentValue.exception;
+			}
+			
+			return currentValue.value;
+		}
+	}
+	
+	/**
+	 * Waits until this promise completes.
+	 * 
+	 * @param time
+	 * @param timeUnits
+	 * @return
+	 * @throws InterruptedException 
+	 */
+	public HttpPromise<T> waitForComplete(long time, TimeUnit timeUnits) throws InterruptedException {
+		if (isComplete() || time <= 0) {
+			return this;
+		}
+		
+		long deadline = System.nanoTime() + timeUnits.toNanos(time);
+		
+		Node<T> waiter = new Node<>(null, Thread.currentThread());
+		
+		if (!push(waiter)) {
+			return this;
+		}
+		
+		try {
+			while (!isComplete()) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				
+				long remaining = deadline - System.nanoTime();
+				
+				if (remaining <= 0) {
+					break;
+				}
+				
+				LockSupport.parkNanos(this, remaining);
+			}
+		} finally {
+			removeWaiter(waiter);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the value.
+	 * 
+	 * @param value
+	 */
+	public HttpPromise<T> set(T value) {
+		complete(new Value(value));
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the value.
+	 * 
+	 * @param value
+	 */
+	public HttpPromise<T> setError(Exception error) {
+		complete(new Value(null, error));
+		
+		return this;
+	}
+	
+	/**
+	 * Returns true if this promise is complete.
+	 * 
+	 * @return
+	 */
+	public boolean isComplete() {
+		return state instanceof HttpPromise.Value;
+	}
+	
+	/**
+	 * Cancels the promise, failing it with a {@link CancellationException} and aborting the exchange behind it.
+	 * 
+	 * @return false if the promise was already complete
+	 */
+	public boolean cancel() {
+		if (!complete(new Value(null, new CancellationException()))) {
+			return false;
+		}
+		
+		Cancellable currentCancellable = cancellable;
+		
+		if (currentCancellable != null) {
+			currentCancellable.cancel();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns true if this promise was cancelled.
+	 * 
+	 * @return
+	 */
+	public boolean isCancelled() {
+		Object currentState = state;
+		
+		return currentState instanceof HttpPromise.Value && 
+				((HttpPromise<?>.Value)currentState).exception instanceof CancellationException;
+	}
+	
+	/**
+	 * Sets what {@link #cancel()} aborts. If the promise has already been cancelled it is aborted right away.
+	 * 
+	 * @param cancellable
+	 */
+	protected void setCancellable(Cancellable cancellable) {
+		this.cancellable = cancellable;
+		
+		if (isCancelled()) {
+			cancellable.cancel();
+		}
+	}
+	
+	/**
+	 * Returns a promise of the function applied to this promise's value. Errors skip the function.
+	 * 
+	 * @param function
+	 * @return
+	 */
+	public <R> HttpPromise<R> thenApply(final HttpPromiseFunction<? super T, ? extends R> function) {
+		final HttpPromise<R> result = new HttpPromise<>(executor);
+		
+		addListener(new HttpPromiseListener<T>() {
+			public void handle(HttpPromise<T> promise) {
+				try {
+					result.set(function.apply(promise.get()));
+				} catch (Exception e) {
+					result.setError(e);
+				}
+			}
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Returns a promise of the promise that the function returns for this promise's value. Errors skip the function.
+	 * 
+	 * @param function
+	 * @return
+	 */
+	public <R> HttpPromise<R> thenCompose(final HttpPromiseFunction<? super T, HttpPromise<R>> function) {
+		final HttpPromise<R> result = new HttpPromise<>(executor);
+		
+		addListener(new HttpPromiseListener<T>() {
+			public void handle(HttpPromise<T> promise) {
+				try {
+					function.apply(promise.get()).addListener(new ForwardingListener<>(result));
+				} catch (Exception e) {
+					result.setError(e);
+				}
+			}
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Returns a promise that fails with a {@link TimeoutException} if this one has not completed in time.
+	 * The timeout is tracked on a shared daemon scheduler.
+	 * 
+	 * @param time
+	 * @param timeUnits
+	 * @return
+	 */
+	public HttpPromise<T> withTimeout(long time, TimeUnit timeUnits) {
+		return withTimeout(time, timeUnits, SharedScheduler.INSTANCE);
+	}
+	
+	/**
+	 * Returns a promise that fails with a {@link TimeoutException} if this one has not completed in time.
+	 * 
+	 * @param time
+	 * @param timeUnits
+	 * @param scheduler
+	 * @return
+	 */
+	public HttpPromise<T> withTimeout(final long time, final TimeUnit timeUnits, ScheduledExecutorService scheduler) {
+		final HttpPromise<T> result = new HttpPromise<>(executor);
+		
+		if (isComplete()) {
+			addListener(new ForwardingListener<>(result));
+			
+			return result;
+		}
+		
+		final ScheduledFuture<?> timeout = scheduler.schedule(new Runnable() {
+			public void run() {
+				result.setError(new TimeoutException("Promise did not complete within " + time + " " + timeUnits));
+			}
+		}, time, timeUnits);
+		
+		addListener(new HttpPromiseListener<T>() {
+			public void handle(HttpPromise<T> promise) {
+				timeout.cancel(false);
+				
+				new ForwardingListener<>(result).handle(promise);
+			}
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Returns a {@link Future} view of this promise. Cancelling the future cancels the promise.
+	 * 
+	 * @return
+	 */
+	public Future<T> toFuture() {
+		return new Future<T>() {
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				return HttpPromise.this.cancel();
+			}
+
+			public boolean isCancelled() {
+				return HttpPromise.this.isCancelled();
+			}
+
+			public boolean isDone() {
+				return isComplete();
+			}
+
+			public T get() throws InterruptedException, ExecutionException {
+				while (!isComplete()) {
+					waitForComplete(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+				}
+				
+				return getValue();
+			}
+
+			public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+				if (!waitForComplete(timeout, unit).isComplete()) {
+					throw new TimeoutException();
+				}
+				
+				return getValue();
+			}
+			
+			private T getValue() throws ExecutionException {
+				try {
+					return HttpPromise.this.get();
+				} catch (CancellationException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new ExecutionException(e);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Returns a promise of all the values, in order. Fails as soon as any of the promises fails.
+	 * 
+	 * @param promises
+	 * @return
+	 */
+	@SafeVarargs
+	@SuppressWarnings("varargs")
+	public static <T> HttpPromise<List<T>> allOf(HttpPromise<? extends T>... promises) {
+		return allOf(Arrays.asList(promises));
+	}
+	
+	/**
+	 * Returns a promise of all the values, in order. Fails as soon as any of the promises fails.
+	 * 
+	 * @param promises
+	 * @return
+	 */
+	public static <T> HttpPromise<List<T>> allOf(List<? extends HttpPromise<? extends T>> promises) {
+		final HttpPromise<List<T>> result = new HttpPromise<>();
+		
+		if (promises.isEmpty()) {
+			return result.set(Collections.<T>emptyList());
+		}
+		
+		final AtomicReferenceArray<T> values = new AtomicReferenceArray<>(promises.size());
+		final AtomicInteger remaining = new AtomicInteger(promises.size());
+		
+		for (int i = 0; i < promises.size(); i++) {
+			final int index = i;
+			
+			addTypedListener(promises.get(i), new HttpPromiseListener<T>() {
+				public void handle(HttpPromise<T> promise) {
+					try {
+						values.set(index, promise.get());
+					} catch (Exception e) {
+						result.setError(e);
+						
+						return;
+					}
+					
+					if (remaining.decrementAndGet() == 0) {
+						List<T> list = new ArrayList<>(values.length());
+						
+						for (int j = 0; j < values.length(); j++) {
+							list.add(values.get(j));
+						}
+						
+						result.set(list);
+					}
+				}
+			});
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns a promise completed by whichever of the promises completes first, with a value or an error.
+	 * 
+	 * @param promises
+	 * @return
+	 */
+	@SafeVarargs
+	@SuppressWarnings("varargs")
+	public static <T> HttpPromise<T> anyOf(HttpPromise<? extends T>... promises) {
+		return anyOf(Arrays.asList(promises));
+	}
+	
+	/**
+	 * Returns a promise completed by whichever of the promises completes first, with a value or an error.
+	 * 
+	 * @param promises
+	 * @return
+	 */
+	public static <T> HttpPromise<T> anyOf(List<? extends HttpPromise<? extends T>> promises) {
+		HttpPromise<T> result = new HttpPromise<>();
+		
+		for (HttpPromise<? extends T> promise : promises) {
+			addTypedListener(promise, new ForwardingListener<>(result));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Adds a listener that sees a promise of a subtype as a promise of its supertype, which is safe since promises are read-only to listeners.
+	 * 
+	 * @param promise
+	 * @param listener
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <T> void addTypedListener(HttpPromise<? extends T> promise, HttpPromiseListener<T> listener) {
+		((HttpPromise)promise).addListener(listener);
+	}
+	
+	/**
+	 * Pushes a node onto the pending stack.
+	 * 
+	 * @param node
+	 * @return false if the promise is already complete
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean push(Node<T> node) {
+		for (;;) {
+			Object currentState = state;
+			
+			if (currentState instanceof HttpPromise.Value) {
+				return false;
+			}
+			
+			node.next = (Node<T>)currentState;
+			
+			if (STATE.compareAndSet(this, currentState, node)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Completes the promise and releases everything that was pending.
+	 * 
+	 * @param value
+	 * @return false if the promise was already complete
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean complete(Value value) {
+		for (;;) {
+			Object currentState = state;
+			
+			if (currentState instanceof HttpPromise.Value) {
+				return false;
+			}
+			
+			if (STATE.compareAndSet(this, currentState, value)) {
+				processPending((Node<T>)currentState);
+				
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Unlinks a waiter that stopped waiting, along with any other waiters that did, so timed waits 
+	 * on a promise that stays pending do not pile up on the stack. 
+	 * 
+	 * <p>Nodes are only ever unlinked, never relinked, so a concurrent completion walking the stack 
+	 * may still see an unlinked waiter, which it skips as its thread is null.</p>
+	 * 
+	 * @param waiter
+	 */
+	@SuppressWarnings("unchecked")
+	private void removeWaiter(Node<T> waiter) {
+		waiter.thread = null;
+		
+		retry:
+		for (;;) {
+			Object currentState = state;
+			
+			if (!(currentState instanceof Node)) {
+				return;
+			}
+			
+			Node<T> predecessor = null;
+			Node<T> node = (Node<T>)currentState;
+			
+			while (node != null) {
+				Node<T> next = node.next;
+				
+				if (node.listener != null || node.thread != null) {
+					predecessor = node;
+				} else if (predecessor != null) {
+					predecessor.next = next;
+					
+					if (predecessor.listener == null && predecessor.thread == null) {
+						// the predecessor was unlinked concurrently
+						continue retry;
+					}
+				} else if (!STATE.compareAndSet(this, node, next)) {
+					continue retry;
+				}
+				
+				node = next;
+			}
+			
+			return;
+		}
+	}
+	
+	/**
+	 * Counts the listeners and threads that are still pending.
+	 * 
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	int getPendingCount() {
+		Object currentState = state;
+		int count = 0;
+		
+		for (Node<T> node = currentState instanceof Node ? (Node<T>)currentState : null; node != null; node = node.next) {
+			count++;
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Wakes the waiting threads and runs the listeners in the order they were added.
+	 * 
+	 * <p>The stack is walked without changing its links, which waiters that stop waiting may still be unlinking.</p>
+	 * 
+	 * @param head
+	 */
+	private void processPending(Node<T> head) {
+		if (head == null) {
+			return;
+		}
+		
+		if (head.next == null) {
+			release(head);
+			
+			return;
+		}
+		
+		List<Node<T>> nodes = new ArrayList<>();
+		
+		for (Node<T> node = head; node != null; node = node.next) {
+			nodes.add(node);
+		}
+		
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			release(nodes.get(i));
+		}
+	}
+	
+	/**
+	 * Runs a pending listener or wakes a waiting thread.
+	 * 
+	 * @param node
+	 */
+	private void release(Node<T> node) {
+		if (node.listener != null) {
+			notifyListener(node.listener);
+		} else {
+			Thread thread = node.thread;
+			
+			if (thread != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+	
+	/**
+	 * Notifies a listener.
+	 * 
+	 * @param listener
+	 */
+	private void notifyListener(HttpPromiseListener<T> listener) {
+		try {
+			if (executor != null) {
+				executor.submit(new HttpPromiseTask<T>(listener, this));
+			} else {
+				listener.handle(this);
+			}
+		} catch (Exception e) {
+			logger.error("Unexpected error processing listener", e);
+		}
+	}
+	
+	/**
+	 * A listener for promise events.
+	 * 
+	 * @author ebahtijaragic
+	 *
+	 * @param <T>
+	 */
+	public static interface HttpPromiseListener<T> {
+		/**
+		 * Handles a promise update.
+		 * 
+		 * @param promise
+		 */
+		public void handle(HttpPromise<T> promise);
+	}
+	
+	/**
+	 * A function applied to the value of a promise.
+	 * 
+	 * @author ebahtijaragic
+	 *
+	 * @param <I>
+	 * @param <O>
+	 */
+	public static interface HttpPromiseFunction<I, O> {
+		/**
+		 * Applies the function.
+		 * 
+		 * @param input
+		 * @return
+		 * @throws Exception
+		 */
+		public O apply(I input) throws Exception;
+	}
+	
+	/**
+	 * A listener that completes another promise with the outcome of the one it listens to.
+	 * 
+	 * @author ebahtijaragic
+	 *
+	 * @param <T>
+	 */
+	private static class ForwardingListener<T> implements HttpPromiseListener<T> {
+		private final HttpPromise<? super T> target;
+		
+		/**
+		 * @param target
+		 */
+		public ForwardingListener(HttpPromise<? super T> target) {
+			this.target = target;
+		}
+
+		/**
+		 * @see com.kixeye.relax.HttpPromise.HttpPromiseListener#handle(com.kixeye.relax.HttpPromise)
+		 */
+		public void handle(HttpPromise<T> promise) {
+			try {
+				target.set(promise.get());
+			} catch (Exception e) {
+				target.setError(e);
+			}
+		}
+	}
+	
+	/**
+	 * A task that executes the listener.
+	 * 
+	 * @author ebahtijaragic
+	 *
+	 * @param <T>
+	 */
+	public static class HttpPromiseTask<T> implements Runnable {
+		private final HttpPromiseListener<T> listener;
+		private final HttpPromise<T> promise;
+		
+		/**
+		 * @param listener
+		 * @param promise
+		 */
+		public HttpPromiseTask(HttpPromiseListener<T> listener,
+				HttpPromise<T> promise) {
+			this.listener = listener;
+			this.promise = promise;
+		}
+
+		/**
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			listener.handle(promise);
+		}
+	}
+}
@@ -22,13 +22,13 @@ package com.kixeye.relax;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.util.EntityUtils;
 
 /**
@@ -40,7 +40,7 @@ import org.apache.http.util.EntityUtils;
  */
 public class HttpResponse<T> {
 	private final int statusCode;
-	private final Map<String, List<String>> headers = new HashMap<>();
+	private final HttpHeaderMap headers;
 	private final SerializedObject<T> body;
 	
 	/**
@@ -52,11 +52,28 @@ public class HttpResponse<T> {
 		this.statusCode = statusCode;
 		this.body = body;
 		
+		List<Header> headerList = new ArrayList<>();
+		
 		if (headers != null) {
 			for (Entry<String, List<String>> headerEntry : headers.entrySet()) {
-				this.headers.put(headerEntry.getKey(), new ArrayList<>(headerEntry.getValue()));
+				for (String value : headerEntry.getValue()) {
+					headerList.add(new BasicHeader(headerEntry.getKey(), value));
+				}
 			}
 		}
+		
+		this.headers = new HttpHeaderMap(headerList.toArray(new Header[headerList.size()]));
+	}
+	
+	/**
+	 * @param statusCode
+	 * @param headers
+	 * @param body
+	 */
+	protected HttpResponse(int statusCode, Header[] headers, SerializedObject<T> body) {
+		this.statusCode = statusCode;
+		this.headers = new HttpHeaderMap(headers);
+		this.body = body;
 	}
 	
 	/**
@@ -67,18 +84,7 @@ public class HttpResponse<T> {
 	 */
 	protected HttpResponse(org.apache.http.HttpResponse result, RestClientSerDe serDe, Class<T> objectType) throws IOException {
 		this.statusCode = result.getStatusLine().getStatusCode();
-		
-		Header[] headers = result.getAllHeaders();
-		if (headers != null) {
-			for (Header header : headers) {
-				List<String> headerValues = this.headers.get(header.getName());
-				if (headerValues == null) {
-					headerValues = new ArrayList<>();
-					this.headers.put(header.getName(), headerValues);
-				}
-				headerValues.add(header.getValue());
-			}
-		}
+		this.headers = new HttpHeaderMap(result.getAllHeaders());
 		
 		HttpEntity entity = result.getEntity();
 		byte[] data = null;
@@ -105,11 +111,40 @@ public class HttpResponse<T> {
 	}
 
 	/**
+	 * Returns a read-only, case-insensitive view of the headers.
+	 * 
 	 * @return the headers
 	 */
 	public Map<String, List<String>> getHeaders() {
 		return headers;
 	}
+	
+	/**
+	 * Returns all the values of a header, ignoring case.
+	 * 
+	 * @param name
+	 * @return the values, or null if there is no such header
+	 */
+	public List<String> getHeaders(String name) {
+		return headers.get(name);
+	}
+	
+	/**
+	 * Returns the first value of a header, ignoring case.
+	 * 
+	 * @param name
+	 * @return the value, or null if there is no such header
+	 */
+	public String getFirstHeader(String name) {
+		return headers.getFirst(name);
+	}
+
+	/**
+	 * @return the raw headers
+	 */
+	protected Header[] getAllHeaders() {
+		return headers.getHeaders();
+	}
 
 	/**
 	 * @return the body
@@ -0,0 +1,768 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpMessage;
+import org.apache.http.HttpRequest;
+import org.apache.http.HeaderElement;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * A bounded, in-memory HTTP cache for GET responses, following the rules RFC 7234 sets for a private cache.
+ * 
+ * <p>Responses are stored if they have an explicit freshness lifetime (max-age or Expires) or a validator 
+ * (ETag or Last-Modified). Fresh responses are served without a request, stale ones are revalidated with 
+ * If-None-Match/If-Modified-Since and a 304 refreshes the stored entry. Lifetimes are never guessed heuristically.</p>
+ * 
+ * <p>Entries are evicted by a segmented LRU with a byte budget: new entries go to a probationary segment and 
+ * are promoted to a protected segment, holding up to 80% of the budget, when they are used again. Entries 
+ * larger than the probationary segment are not stored.</p>
+ * 
+ * <p>A cache may be shared between clients.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class HttpResponseCache {
+	private static final int ENTRY_OVERHEAD = 256;
+	private static final int HEADER_OVERHEAD = 48;
+	
+	private static final String[] NOT_MODIFIED_EXCLUDED_HEADERS = new String[] { "Content-Length", "Content-Type", "Content-Encoding", "Transfer-Encoding" };
+	
+	private final long maxBytes;
+	private final long maxProtectedBytes;
+	
+	private final LinkedHashMap<String, CachedResponse> probation = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<String, CachedResponse> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+	
+	private long probationBytes = 0;
+	private long protectedBytes = 0;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	
+	/**
+	 * @param maxBytes the estimated number of bytes the stored responses may take
+	 */
+	public HttpResponseCache(long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+		}
+		
+		this.maxBytes = maxBytes;
+		this.maxProtectedBytes = maxBytes * 4 / 5;
+	}
+	
+	/**
+	 * Gets the number of requests that were served from the cache without contacting the server.
+	 * 
+	 * @return
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	
+	/**
+	 * Gets the number of requests that found no usable entry.
+	 * 
+	 * @return
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+	
+	/**
+	 * Gets the number of conditional requests that were sent to revalidate a stale entry.
+	 * 
+	 * @return
+	 */
+	public long getRevalidationCount() {
+		return revalidations.get();
+	}
+	
+	/**
+	 * Gets the number of revalidations that were answered with 304 Not Modified and served from the cache.
+	 * 
+	 * @return
+	 */
+	public long getNotModifiedCount() {
+		return notModified.get();
+	}
+	
+	/**
+	 * Gets the number of entries that were evicted to stay within the byte budget.
+	 * 
+	 * @return
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+	
+	/**
+	 * Gets the estimated number of bytes the stored responses take.
+	 * 
+	 * @return
+	 */
+	public synchronized long getSize() {
+		return probationBytes + protectedBytes;
+	}
+	
+	/**
+	 * Gets the number of stored responses.
+	 * 
+	 * @return
+	 */
+	public synchronized int getEntryCount() {
+		return probation.size() + protectedSegment.size();
+	}
+	
+	/**
+	 * Removes the response stored for a URI.
+	 * 
+	 * @param uri
+	 */
+	public synchronized void invalidate(String uri) {
+		remove(uri);
+	}
+	
+	/**
+	 * Removes every stored response.
+	 */
+	public synchronized void invalidateAll() {
+		probation.clear();
+		protectedSegment.clear();
+		probationBytes = 0;
+		protectedBytes = 0;
+	}
+	
+	/**
+	 * Returns true if the request may be answered from, and its response stored in, the cache.
+	 * 
+	 * @param request
+	 * @return
+	 */
+	protected static boolean isCacheable(HttpRequest request) {
+		return "GET".equals(request.getRequestLine().getMethod()) 
+				&& !hasDirective(request, "no-store")
+				&& !request.containsHeader("Range") 
+				&& !request.containsHeader("If-None-Match") 
+				&& !request.containsHeader("If-Modified-Since");
+	}
+	
+	/**
+	 * Looks up the response stored for a cacheable request.
+	 * 
+	 * <p>Returns a fresh response that can be served, a stale response that has to be revalidated, or null if there is none. 
+	 * Requests with "no-cache" always miss.</p>
+	 * 
+	 * @param uri
+	 * @param request
+	 * @param now
+	 * @return
+	 */
+	protected CachedResponse lookup(String uri, HttpRequest request, long now) {
+		CachedResponse response = null;
+		
+		if (!hasDirective(request, "no-cache") && !hasPragmaNoCache(request)) {
+			synchronized (this) {
+				response = get(uri);
+				
+				if (response != null && !response.matchesVary(request)) {
+					response = null;
+				} else if (response != null && !response.isFresh(now) && !response.hasValidators()) {
+					remove(uri);
+					response = null;
+				}
+			}
+		}
+		
+		if (response == null) {
+			misses.incrementAndGet();
+		} else if (response.isFresh(now)) {
+			hits.incrementAndGet();
+		} else {
+			revalidations.incrementAndGet();
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * Stores a response if it is storable, otherwise removes whatever was stored for the URI.
+	 * 
+	 * @param uri
+	 * @param request
+	 * @param statusCode
+	 * @param headers
+	 * @param data
+	 * @param requestTime when the request was sent, in millis
+	 * @param responseTime when the response was received, in millis
+	 */
+	protected void store(String uri, HttpRequest request, int statusCode, Header[] headers, byte[] data, long requestTime, long responseTime) {
+		CachedResponse response = null;
+		
+		if (isStorable(statusCode, headers)) {
+			response = new CachedResponse(uri, statusCode, headers, data, varyValues(request, headers), requestTime, responseTime);
+		}
+		
+		synchronized (this) {
+			if (response != null) {
+				put(uri, response);
+			} else {
+				remove(uri);
+			}
+		}
+	}
+	
+	/**
+	 * Refreshes a stale response with the headers of the 304 that revalidated it, and stores the result.
+	 * 
+	 * @param uri
+	 * @param request
+	 * @param stale
+	 * @param notModifiedHeaders
+	 * @param requestTime
+	 * @param responseTime
+	 * @return the refreshed response
+	 */
+	protected CachedResponse revalidated(String uri, HttpRequest request, CachedResponse stale, Header[] notModifiedHeaders, long requestTime, long responseTime) {
+		notModified.incrementAndGet();
+		
+		List<Header> headers = new ArrayList<>(stale.headers.length + notModifiedHeaders.length);
+		
+		for (Header header : stale.headers) {
+			if (!containsHeader(notModifiedHeaders, header.getName()) || isExcludedFromNotModified(header.getName())) {
+				headers.add(header);
+			}
+		}
+		for (Header header : notModifiedHeaders) {
+			if (!isExcludedFromNotModified(header.getName())) {
+				headers.add(header);
+			}
+		}
+		
+		Header[] mergedHeaders = headers.toArray(new Header[headers.size()]);
+		CachedResponse response = new CachedResponse(uri, stale.statusCode, mergedHeaders, stale.data, stale.varyValues, requestTime, responseTime);
+		
+		synchronized (this) {
+			if (!hasDirective(mergedHeaders, "no-store")) {
+				put(uri, response);
+			} else {
+				remove(uri);
+			}
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * Gets an entry, promoting it to the protected segment on its second use.
+	 * 
+	 * @param uri
+	 * @return
+	 */
+	private CachedResponse get(String uri) {
+		CachedResponse response = protectedSegment.get(uri);
+		
+		if (response == null) {
+			response = probation.remove(uri);
+			
+			if (response != null) {
+				probationBytes -= response.size;
+				
+				protectedSegment.put(uri, response);
+				protectedBytes += response.size;
+				
+				// demoted entries get another chance at the head of probation
+				Iterator<CachedResponse> eldest = protectedSegment.values().iterator();
+				while (protectedBytes > maxProtectedBytes && eldest.hasNext()) {
+					CachedResponse demoted = eldest.next();
+					eldest.remove();
+					protectedBytes -= demoted.size;
+					
+					probation.put(demoted.uri, demoted);
+					probationBytes += demoted.size;
+				}
+			}
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * Puts an entry into the probationary segment and evicts until the cache fits its budget.
+	 * 
+	 * @param uri
+	 * @param response
+	 */
+	private void put(String uri, CachedResponse response) {
+		remove(uri);
+		
+		if (response.size > maxBytes - maxProtectedBytes) {
+			return;
+		}
+		
+		probation.put(uri, response);
+		probationBytes += response.size;
+		
+		while (probationBytes + protectedBytes > maxBytes) {
+			LinkedHashMap<String, CachedResponse> segment = probation.isEmpty() ? protectedSegment : probation;
+			Iterator<CachedResponse> eldest = segment.values().iterator();
+			CachedResponse evicted = eldest.next();
+			eldest.remove();
+			
+			if (segment == probation) {
+				probationBytes -= evicted.size;
+			} else {
+				protectedBytes -= evicted.size;
+			}
+			
+			evictions.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Removes an entry from either segment.
+	 * 
+	 * @param uri
+	 */
+	private void remove(String uri) {
+		CachedResponse response = probation.remove(uri);
+		
+		if (response != null) {
+			probationBytes -= response.size;
+		}
+		
+		response = protectedSegment.remove(uri);
+		
+		if (response != null) {
+			protectedBytes -= response.size;
+		}
+	}
+	
+	/**
+	 * Returns true if a response may be stored and is worth storing.
+	 * 
+	 * @param statusCode
+	 * @param headers
+	 * @return
+	 */
+	private static boolean isStorable(int statusCode, Header[] headers) {
+		switch (statusCode) {
+			case 200:
+			case 203:
+			case 204:
+			case 300:
+			case 301:
+			case 404:
+			case 405:
+			case 410:
+			case 414:
+			case 501:
+				break;
+			default:
+				return false;
+		}
+		
+		if (hasDirective(headers, "no-store") || "*".equals(getFirstHeader(headers, "Vary"))) {
+			return false;
+		}
+		
+		return getDirectiveValue(headers, "max-age") != null || getFirstHeader(headers, "Expires") != null 
+				|| getFirstHeader(headers, "ETag") != null || getFirstHeader(headers, "Last-Modified") != null;
+	}
+	
+	/**
+	 * Gets the values of the request headers the response varies by, in the order of its Vary header.
+	 * 
+	 * @param request
+	 * @param headers
+	 * @return
+	 */
+	private static String[] varyValues(HttpRequest request, Header[] headers) {
+		List<String> names = new ArrayList<>();
+		
+		for (Header header : headers) {
+			if (header.getName().equalsIgnoreCase("Vary")) {
+				for (HeaderElement element : header.getElements()) {
+					names.add(element.getName());
+				}
+			}
+		}
+		
+		String[] varyValues = new String[names.size() * 2];
+		
+		for (int i = 0; i < names.size(); i++) {
+			varyValues[i * 2] = names.get(i);
+			varyValues[i * 2 + 1] = joinedValues(request, names.get(i));
+		}
+		
+		return varyValues;
+	}
+	
+	/**
+	 * Joins all the values of a request header.
+	 * 
+	 * @param message
+	 * @param name
+	 * @return the values, or null if there is no such header
+	 */
+	private static String joinedValues(HttpMessage message, String name) {
+		Header[] headers = message.getHeaders(name);
+		
+		if (headers.length == 0) {
+			return null;
+		} else if (headers.length == 1) {
+			return headers[0].getValue();
+		}
+		
+		StringBuilder builder = new StringBuilder();
+		for (Header header : headers) {
+			if (builder.length() > 0) {
+				builder.append(',');
+			}
+			builder.append(header.getValue());
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Returns true if the request has a "Pragma: no-cache" header.
+	 * 
+	 * @param request
+	 * @return
+	 */
+	private static boolean hasPragmaNoCache(HttpRequest request) {
+		for (Header header : request.getHeaders("Pragma")) {
+			for (HeaderElement element : header.getElements()) {
+				if ("no-cache".equalsIgnoreCase(element.getName())) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns true if the message has the given Cache-Control directive.
+	 * 
+	 * @param message
+	 * @param directive
+	 * @return
+	 */
+	private static boolean hasDirective(HttpMessage message, String directive) {
+		return hasDirective(message.getHeaders("Cache-Control"), directive);
+	}
+	
+	/**
+	 * Returns true if the headers have the given Cache-Control directive.
+	 * 
+	 * @param headers
+	 * @param directive
+	 * @return
+	 */
+	private static boolean hasDirective(Header[] headers, String directive) {
+		return findDirective(headers, directive) != null;
+	}
+	
+	/**
+	 * Gets the value of a Cache-Control directive.
+	 * 
+	 * @param headers
+	 * @param directive
+	 * @return the value, or null if the directive is missing or has no value
+	 */
+	private static String getDirectiveValue(Header[] headers, String directive) {
+		HeaderElement element = findDirective(headers, directive);
+		
+		return element != null ? element.getValue() : null;
+	}
+	
+	/**
+	 * Finds a Cache-Control directive.
+	 * 
+	 * @param headers
+	 * @param directive
+	 * @return
+	 */
+	private static HeaderElement findDirective(Header[] headers, String directive) {
+		for (Header header : headers) {
+			if (header.getName().equalsIgnoreCase("Cache-Control")) {
+				for (HeaderElement element : header.getElements()) {
+					if (directive.equalsIgnoreCase(element.getName())) {
+						return element;
+					}
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Gets the first value of a header.
+	 * 
+	 * @param headers
+	 * @param name
+	 * @return
+	 */
+	private static String getFirstHeader(Header[] headers, String name) {
+		for (Header header : headers) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns true if the headers contain the given header.
+	 * 
+	 * @param headers
+	 * @param name
+	 * @return
+	 */
+	private static boolean containsHeader(Header[] headers, String name) {
+		return getFirstHeader(headers, name) != null;
+	}
+	
+	/**
+	 * Returns true if a 304 must not replace the stored value of the header.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	private static boolean isExcludedFromNotModified(String name) {
+		for (String excluded : NOT_MODIFIED_EXCLUDED_HEADERS) {
+			if (excluded.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Parses an HTTP date.
+	 * 
+	 * @param value
+	 * @return the millis, or null if the date is missing or invalid
+	 */
+	private static Long parseDate(String value) {
+		Date date = value != null ? DateUtils.parseDate(value) : null;
+		
+		return date != null ? date.getTime() : null;
+	}
+	
+	/**
+	 * Parses a delta-seconds value.
+	 * 
+	 * @param value
+	 * @return the millis, or null if the value is missing or invalid
+	 */
+	private static Long parseDeltaSeconds(String value) {
+		if (value == null) {
+			return null;
+		}
+		
+		try {
+			long seconds = Long.parseLong(value.trim());
+			
+			return seconds >= 0 ? seconds * 1000 : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * A stored response.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	protected static class CachedResponse {
+		private final String uri;
+		private final int statusCode;
+		private final Header[] headers;
+		private final byte[] data;
+		
+		// alternating request header names and values
+		private final String[] varyValues;
+		
+		private final String entityTag;
+		private final String lastModified;
+		private final long freshUntil;
+		
+		private final long size;
+		
+		/**
+		 * @param uri
+		 * @param statusCode
+		 * @param headers
+		 * @param data
+		 * @param varyValues
+		 * @param requestTime
+		 * @param responseTime
+		 */
+		private CachedResponse(String uri, int statusCode, Header[] headers, byte[] data, String[] varyValues, long requestTime, long responseTime) {
+			this.uri = uri;
+			this.statusCode = statusCode;
+			this.headers = headers;
+			this.data = data;
+			this.varyValues = varyValues;
+			this.entityTag = getFirstHeader(headers, "ETag");
+			this.lastModified = getFirstHeader(headers, "Last-Modified");
+			this.freshUntil = responseTime - initialAge(requestTime, responseTime) + freshnessLifetime(responseTime);
+			
+			long size = ENTRY_OVERHEAD + uri.length() * 2 + (data != null ? data.length : 0);
+			for (Header header : headers) {
+				size += HEADER_OVERHEAD + (header.getName().length() + header.getValue().length()) * 2;
+			}
+			for (String varyValue : varyValues) {
+				size += varyValue != null ? varyValue.length() * 2 : 0;
+			}
+			this.size = size;
+		}
+		
+		/**
+		 * Returns true if the response can be served without revalidation.
+		 * 
+		 * @param now
+		 * @return
+		 */
+		protected boolean isFresh(long now) {
+			return now < freshUntil;
+		}
+		
+		/**
+		 * Returns true if the response has an ETag or Last-Modified date to revalidate with.
+		 * 
+		 * @return
+		 */
+		protected boolean hasValidators() {
+			return entityTag != null || lastModified != null;
+		}
+		
+		/**
+		 * Makes a request conditional on this response having changed.
+		 * 
+		 * @param request
+		 */
+		protected void addConditionalHeaders(HttpRequest request) {
+			if (entityTag != null) {
+				request.setHeader("If-None-Match", entityTag);
+			}
+			if (lastModified != null) {
+				request.setHeader("If-Modified-Since", lastModified);
+			}
+		}
+		
+		/**
+		 * Returns true if the request selects this response.
+		 * 
+		 * @param request
+		 * @return
+		 */
+		protected boolean matchesVary(HttpRequest request) {
+			for (int i = 0; i < varyValues.length; i += 2) {
+				String value = joinedValues(request, varyValues[i]);
+				
+				if (value == null ? varyValues[i + 1] != null : !value.equals(varyValues[i + 1])) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Creates a response for a caller, with a body of its own.
+		 * 
+		 * @param serDe
+		 * @param responseType
+		 * @param isDataDiscardedOnDeserialize
+		 * @return
+		 */
+		protected <R> HttpResponse<R> toResponse(RestClientSerDe serDe, Class<R> responseType, boolean isDataDiscardedOnDeserialize) {
+			SerializedObject<R> body = new SerializedObject<>(serDe, getFirstHeader(headers, "Content-Type"), data, data != null ? data.length : 0, 
+					responseType, null, isDataDiscardedOnDeserialize);
+			
+			return new HttpResponse<>(statusCode, headers, body);
+		}
+		
+		/**
+		 * Gets the freshness lifetime from max-age, or from Expires relative to Date.
+		 * 
+		 * @param responseTime
+		 * @return
+		 */
+		private long freshnessLifetime(long responseTime) {
+			if (hasDirective(headers, "no-cache")) {
+				return 0;
+			}
+			
+			Long maxAge = parseDeltaSeconds(getDirectiveValue(headers, "max-age"));
+			if (maxAge != null) {
+				return maxAge;
+			}
+			
+			String expiresValue = getFirstHeader(headers, "Expires");
+			if (expiresValue != null) {
+				Long expires = parseDate(expiresValue);
+				Long date = parseDate(getFirstHeader(headers, "Date"));
+				
+				// an invalid Expires means already expired
+				return expires != null ? Math.max(0, expires - (date != null ? date : responseTime)) : 0;
+			}
+			
+			return 0;
+		}
+		
+		/**
+		 * Gets the age the response already had when it was received.
+		 * 
+		 * @param requestTime
+		 * @param responseTime
+		 * @return
+		 */
+		private long initialAge(long requestTime, long responseTime) {
+			Long date = parseDate(getFirstHeader(headers, "Date"));
+			Long age = parseDeltaSeconds(getFirstHeader(headers, "Age"));
+			
+			long apparentAge = date != null ? Math.max(0, responseTime - date) : 0;
+			long correctedAge = (age != null ? age : 0) + (responseTime - requestTime);
+			
+			return Math.max(apparentAge, correctedAge);
+		}
+	}
+}
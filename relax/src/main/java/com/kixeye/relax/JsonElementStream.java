@@ -0,0 +1,78 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+/**
+ * A stream of the JSON documents of a newline delimited JSON or JSON array body, each deserialized with the serDe.
+ * 
+ * @author ebahtijaragic
+ */
+class JsonElementStream<T> extends ElementStream<T> {
+	private final RestClientSerDe serDe;
+	private final Class<T> elementType;
+	
+	/**
+	 * @param serDe
+	 * @param elementType
+	 * @param compressionPolicy the policy compressed responses are counted by, or null if they are not inflated
+	 * @param subscriber
+	 * @param prefetch the number of elements that are decoded ahead of demand
+	 */
+	protected JsonElementStream(RestClientSerDe serDe, Class<T> elementType, CompressionPolicy compressionPolicy, StreamSubscriber<? super T> subscriber, int prefetch) {
+		super(compressionPolicy, subscriber, prefetch);
+		
+		this.serDe = serDe;
+		this.elementType = elementType;
+	}
+
+	/**
+	 * @see com.kixeye.relax.ElementStream#createParser(int, java.lang.String)
+	 */
+	@Override
+	protected ElementParser createParser(int statusCode, String contentType) {
+		if (statusCode < 200 || statusCode >= 300) {
+			// the body of a failed response is not of any use
+			return null;
+		}
+		
+		// every line of newline delimited JSON is a JSON document of its own
+		final String elementContentType = ElementSplitter.isLineDelimited(contentType) ? "application/json" : contentType;
+		final ElementSplitter splitter = new ElementSplitter(contentType);
+		
+		final ElementSplitter.ElementHandler handler = new ElementSplitter.ElementHandler() {
+			public void element(byte[] data, int offset, int length) throws IOException {
+				emit(serDe.deserialize(elementContentType, data, offset, length, elementType));
+			}
+		};
+		
+		return new ElementParser() {
+			public int parse(byte[] data, int length) throws IOException {
+				return splitter.split(data, length, handler);
+			}
+			
+			public void finish(byte[] data, int length) throws IOException {
+				splitter.finish(data, length, handler);
+			}
+		};
+	}
+}
@@ -0,0 +1,358 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Paces the requests of every route, keyed by path template, with a token bucket.
+ * 
+ * <p>A request that finds the bucket empty is delayed until its token is due, without blocking the caller, 
+ * as long as that is within the maximum delay; otherwise it fails with a {@link RateLimitExceededException}. 
+ * Delayed requests are spaced evenly at the route's rate.</p>
+ * 
+ * <p>When a route is answered with a 429 or a 503 its requests are held back until the time given by the Retry-After header, 
+ * and its rate is cut by the backoff ratio, at most once a second and never below a tenth of the configured rate. 
+ * The rate then climbs linearly back to the configured one over the recovery period.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class RateLimitPolicy {
+	public static final double DEFAULT_BACKOFF_RATIO = 0.8;
+	public static final long DEFAULT_RECOVERY_MILLIS = 30000;
+	
+	private static final long MIN_CUT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final double MIN_RATE_RATIO = 0.1;
+	
+	private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+	
+	private double defaultPermitsPerSecond = 0;
+	private int defaultBurst = 1;
+	
+	private long maxDelayNanos = 0;
+	private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+	private long recoveryNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_RECOVERY_MILLIS);
+	
+	private ScheduledExecutorService scheduler;
+	
+	private final AtomicLong delays = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final AtomicLong throttles = new AtomicLong();
+	
+	/**
+	 * With the rate of a route.
+	 * 
+	 * @param pathTemplate the unexpanded path template, as passed to the client
+	 * @param permitsPerSecond
+	 * @param burst the number of requests that may be sent at once after the route was idle
+	 * @return
+	 */
+	public RateLimitPolicy withRoute(String pathTemplate, double permitsPerSecond, int burst) {
+		validateRate(permitsPerSecond, burst);
+		
+		buckets.put(pathTemplate, new TokenBucket(permitsPerSecond, burst));
+		
+		return this;
+	}
+	
+	/**
+	 * With the rate of every route that has none of its own. Each route gets a bucket of its own. 
+	 * By default only the routes given to {@link #withRoute(String, double, int)} are limited.
+	 * 
+	 * @param permitsPerSecond
+	 * @param burst
+	 * @return
+	 */
+	public RateLimitPolicy withDefaultRoute(double permitsPerSecond, int burst) {
+		validateRate(permitsPerSecond, burst);
+		
+		this.defaultPermitsPerSecond = permitsPerSecond;
+		this.defaultBurst = burst;
+		
+		return this;
+	}
+	
+	/**
+	 * With how long a request may be delayed before it fails instead. By default requests fail as soon as the bucket is empty.
+	 * 
+	 * @param maxDelay
+	 * @param unit
+	 * @return
+	 */
+	public RateLimitPolicy withMaxDelay(long maxDelay, TimeUnit unit) {
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		
+		return this;
+	}
+	
+	/**
+	 * With how much the rate of a route is cut when it is answered with a 429 or a 503, and how long it takes to recover.
+	 * Defaults to 0.8 and 30 seconds.
+	 * 
+	 * @param backoffRatio between 0 and 1
+	 * @param recovery
+	 * @param unit
+	 * @return
+	 */
+	public RateLimitPolicy withBackoff(double backoffRatio, long recovery, TimeUnit unit) {
+		if (!(backoffRatio > 0 && backoffRatio <= 1)) {
+			throw new IllegalArgumentException("Invalid backoff ratio: " + backoffRatio);
+		}
+		
+		this.backoffRatio = backoffRatio;
+		this.recoveryNanos = unit.toNanos(recovery);
+		
+		return this;
+	}
+	
+	/**
+	 * With the scheduler delayed requests are sent from.
+	 * 
+	 * @param scheduler
+	 * @return
+	 */
+	public RateLimitPolicy withScheduler(ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+		
+		return this;
+	}
+	
+	/**
+	 * Gets the current rate of a route.
+	 * 
+	 * @param pathTemplate
+	 * @return the permits per second, or 0 if the route is not limited
+	 */
+	public double getRate(String pathTemplate) {
+		TokenBucket bucket = getBucket(pathTemplate);
+		
+		return bucket != null ? bucket.getRate(System.nanoTime()) : 0;
+	}
+	
+	/**
+	 * @return the number of requests that were delayed
+	 */
+	public long getDelayedCount() {
+		return delays.get();
+	}
+	
+	/**
+	 * @return the number of requests that failed because they would have been delayed for too long
+	 */
+	public long getRejectedCount() {
+		return rejections.get();
+	}
+	
+	/**
+	 * @return the number of 429 and 503 responses that held a route back
+	 */
+	public long getThrottledCount() {
+		return throttles.get();
+	}
+	
+	/**
+	 * Gets the bucket of a route.
+	 * 
+	 * @param pathTemplate
+	 * @return null if the route is not limited
+	 */
+	protected TokenBucket getBucket(String pathTemplate) {
+		TokenBucket bucket = buckets.get(pathTemplate);
+		
+		if (bucket == null && defaultPermitsPerSecond > 0) {
+			TokenBucket newBucket = new TokenBucket(defaultPermitsPerSecond, defaultBurst);
+			
+			bucket = buckets.putIfAbsent(pathTemplate, newBucket);
+			if (bucket == null) {
+				bucket = newBucket;
+			}
+		}
+		
+		return bucket;
+	}
+	
+	/**
+	 * Gets the scheduler delayed requests are sent from.
+	 * 
+	 * @return
+	 */
+	protected ScheduledExecutorService getScheduler() {
+		return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+	}
+	
+	/**
+	 * Parses a Retry-After value, either delay-seconds or an HTTP date.
+	 * 
+	 * @param value
+	 * @param now the current time in millis
+	 * @return the delay in millis, or -1 if the value is missing or invalid
+	 */
+	protected static long parseRetryAfter(String value, long now) {
+		if (value == null) {
+			return -1;
+		}
+		
+		value = value.trim();
+		
+		try {
+			return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+		} catch (NumberFormatException e) {
+			Date date = DateUtils.parseDate(value);
+			
+			return date != null ? Math.max(0, date.getTime() - now) : -1;
+		}
+	}
+	
+	/**
+	 * Validates a rate.
+	 * 
+	 * @param permitsPerSecond
+	 * @param burst
+	 */
+	private static void validateRate(double permitsPerSecond, int burst) {
+		if (!(permitsPerSecond > 0) || burst < 1) {
+			throw new IllegalArgumentException("Invalid rate: " + permitsPerSecond + ", " + burst);
+		}
+	}
+	
+	/**
+	 * The bucket of one route. 
+	 * 
+	 * <p>Tokens are not counted but tracked as the time the next one is due, so a request can reserve a token 
+	 * that is due in the future and be delayed until then.</p>
+	 * 
+	 * @author ebahtijaragic
+	 */
+	protected class TokenBucket {
+		private final double permitsPerSecond;
+		private final int burst;
+		
+		// guarded by this
+		private long nextDueNanos = System.nanoTime();
+		private double cutPermitsPerSecond = 0;
+		private long cutAtNanos = 0;
+		
+		/**
+		 * @param permitsPerSecond
+		 * @param burst
+		 */
+		private TokenBucket(double permitsPerSecond, int burst) {
+			this.permitsPerSecond = permitsPerSecond;
+			this.burst = burst;
+		}
+		
+		/**
+		 * Takes a token.
+		 * 
+		 * @return how long in nanos to wait before sending the request, or -1 if it may not be sent
+		 */
+		protected long reserve() {
+			long now = System.nanoTime();
+			long delayNanos;
+			
+			synchronized (this) {
+				long interval = interval(now);
+				long tolerance = interval * (burst - 1);
+				
+				delayNanos = Math.max(0, nextDueNanos - tolerance - now);
+				
+				if (delayNanos > maxDelayNanos) {
+					delayNanos = -1;
+				} else {
+					nextDueNanos = Math.max(nextDueNanos, now) + interval;
+				}
+			}
+			
+			if (delayNanos < 0) {
+				rejections.incrementAndGet();
+			} else if (delayNanos > 0) {
+				delays.incrementAndGet();
+			}
+			
+			return delayNanos;
+		}
+		
+		/**
+		 * Holds the route back after a 429 or a 503.
+		 * 
+		 * @param retryAfter the Retry-After header, or null
+		 */
+		protected void throttled(String retryAfter) {
+			throttles.incrementAndGet();
+			
+			long now = System.nanoTime();
+			long retryAfterMillis = parseRetryAfter(retryAfter, System.currentTimeMillis());
+			
+			synchronized (this) {
+				if (cutAtNanos == 0 || now - cutAtNanos >= MIN_CUT_INTERVAL_NANOS) {
+					cutPermitsPerSecond = Math.max(permitsPerSecond * MIN_RATE_RATIO, getRate(now) * backoffRatio);
+					cutAtNanos = now;
+				}
+				
+				if (retryAfterMillis >= 0) {
+					// the first request after the pause goes out on time, the rest follow at the rate instead of in a burst
+					long interval = interval(now);
+					
+					nextDueNanos = Math.max(nextDueNanos, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis) + interval * (burst - 1));
+				}
+			}
+		}
+		
+		/**
+		 * Gets the rate, which climbs back to the configured one after a cut.
+		 * 
+		 * @param now
+		 * @return
+		 */
+		protected synchronized double getRate(long now) {
+			if (cutAtNanos == 0) {
+				return permitsPerSecond;
+			}
+			
+			long sinceCut = now - cutAtNanos;
+			
+			if (sinceCut >= recoveryNanos) {
+				cutAtNanos = 0;
+				
+				return permitsPerSecond;
+			}
+			
+			return cutPermitsPerSecond + ((permitsPerSecond - cutPermitsPerSecond) * sinceCut / recoveryNanos);
+		}
+		
+		/**
+		 * Gets the time between two tokens.
+		 * 
+		 * @param now
+		 * @return
+		 */
+		private long interval(long now) {
+			return (long)(TimeUnit.SECONDS.toNanos(1) / getRate(now));
+		}
+	}
+}
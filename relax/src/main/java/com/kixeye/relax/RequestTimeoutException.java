@@ -0,0 +1,50 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.InterruptedIOException;
+
+/**
+ * Fails a blocking call whose response did not arrive in time. The exchange behind it has been aborted.
+ * 
+ * @author ebahtijaragic
+ */
+public class RequestTimeoutException extends InterruptedIOException {
+	private static final long serialVersionUID = 1L;
+	
+	private final long timeoutMillis;
+	
+	/**
+	 * @param timeoutMillis
+	 */
+	public RequestTimeoutException(long timeoutMillis) {
+		super("No response within " + timeoutMillis + "ms");
+		
+		this.timeoutMillis = timeoutMillis;
+	}
+	
+	/**
+	 * @return the timeout that ran out, in millis
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+}
@@ -0,0 +1,273 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A REST Client.
+ * 
+ * @author ebahtijaragic
+ */
+public interface RestClient extends Closeable {
+	/**
+	 * Performs an HTTP get.
+	 * 
+	 * @param path
+	 * @param acceptHeader
+	 * @param responseType
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <O> HttpPromise<HttpResponse<O>> get(String path, String acceptHeader, 
+			Class<O> responseType, Object... pathVariables) throws IOException;
+
+	/**
+	 * Performs a HTTP post.
+	 * 
+	 * @param path
+	 * @param contentTypeHeader
+	 * @param acceptHeader
+	 * @param requestObject
+	 * @param responseType
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <I, O> HttpPromise<HttpResponse<O>> post(String path,
+			String contentTypeHeader, String acceptHeader, I requestObject,
+			Class<O> responseType, Object... pathVariables) throws IOException;
+
+	/**
+	 * Performs a HTTP put.
+	 * 
+	 * @param path
+	 * @param contentTypeHeader
+	 * @param acceptHeader
+	 * @param requestObject
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <I> HttpPromise<HttpResponse<Void>> put(String path,
+			String contentTypeHeader, String acceptHeader, I requestObject,
+			Object... pathVariables) throws IOException;
+
+	/**
+	 * Performs a HTTP patch.
+	 * 
+	 * @param path
+	 * @param contentTypeHeader
+	 * @param acceptHeader
+	 * @param requestObject
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <I> HttpPromise<HttpResponse<Void>> patch(String path,
+			String contentTypeHeader, String acceptHeader, I requestObject,
+			Object... pathVariables) throws IOException;
+
+	/**
+	 * Performs a HTTP delete.
+	 * 
+	 * @param path
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <I> HttpPromise<HttpResponse<Void>> delete(String path,
+			Object... pathVariables) throws IOException;
+	
+	/**
+	 * Performs an HTTP get.
+	 * 
+	 * @param path
+	 * @param acceptHeader
+	 * @param responseType
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <O> HttpPromise<HttpResponse<O>> get(String path, String acceptHeader, 
+			Class<O> responseType, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException;
+
+	/**
+	 * Performs a HTTP post.
+	 * 
+	 * @param path
+	 * @param contentTypeHeader
+	 * @param acceptHeader
+	 * @param requestObject
+	 * @param responseType
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <I, O> HttpPromise<HttpResponse<O>> post(String path,
+			String contentTypeHeader, String acceptHeader, I requestObject,
+			Class<O> responseType, Map<String, List<String>> additonalHeaders, Object... pathVariables) throws IOException;
+
+	/**
+	 * Performs a HTTP put.
+	 * 
+	 * @param path
+	 * @param contentTypeHeader
+	 * @param acceptHeader
+	 * @param requestObject
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <I> HttpPromise<HttpResponse<Void>> put(String path,
+			String contentTypeHeader, String acceptHeader, I requestObject, Map<String, List<String>> additonalHeaders,
+			Object... pathVariables) throws IOException;
+
+	/**
+	 * Performs a HTTP patch.
+	 * 
+	 * @param path
+	 * @param contentTypeHeader
+	 * @param acceptHeader
+	 * @param requestObject
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <I> HttpPromise<HttpResponse<Void>> patch(String path,
+			String contentTypeHeader, String acceptHeader, I requestObject, Map<String, List<String>> additonalHeaders,
+			Object... pathVariables) throws IOException;
+
+	/**
+	 * Performs a HTTP delete.
+	 * 
+	 * @param path
+	 * @param pathVariables
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract <I> HttpPromise<HttpResponse<Void>> delete(String path, Map<String, List<String>> additonalHeaders,
+			Object... pathVariables) throws IOException;
+	
+	/**
+	 * Performs a batch of HTTP gets of one path, one for every set of path variables.
+	 * 
+	 * <p>At most maxConcurrency of the gets are in flight at once, the next one is sent when one completes, 
+	 * so a large batch to one host keeps reusing a few kept-alive connections instead of opening one per get.</p>
+	 * 
+	 * @param path
+	 * @param acceptHeader
+	 * @param responseType
+	 * @param maxConcurrency
+	 * @param pathVariables
+	 * @return a promise per set of path variables, in the same order
+	 */
+	public abstract <O> List<HttpPromise<HttpResponse<O>>> getBatch(String path, String acceptHeader, 
+			Class<O> responseType, int maxConcurrency, List<Object[]> pathVariables);
+	
+	/**
+	 * Performs a batch of HTTP gets of one path, one for every set of path variables.
+	 * 
+	 * @param path
+	 * @param acceptHeader
+	 * @param responseType
+	 * @param additonalHeaders
+	 * @param maxConcurrency
+	 * @param pathVariables
+	 * @return a promise per set of path variables, in the same order
+	 * @see #getBatch(String, String, Class, int, List)
+	 */
+	public abstract <O> List<HttpPromise<HttpResponse<O>>> getBatch(String path, String acceptHeader, 
+			Class<O> responseType, Map<String, List<String>> additonalHeaders, int maxConcurrency, List<Object[]> pathVariables);
+	
+	/**
+	 * Streams the elements of an HTTP get whose body is newline delimited JSON or a JSON array. 
+	 * 
+	 * <p>Every subscriber performs a get of its own. Elements are deserialized one at a time as they arrive, 
+	 * and reading from the connection pauses while the subscriber is not asking for more, so the body never 
+	 * has to fit in memory. A response that is not a success fails the stream with an {@link UnexpectedStatusException}.</p>
+	 * 
+	 * <p>The circuit breaker, concurrency limit, endpoint balancer and metrics account for the get once its response headers 
+	 * arrive, so neither a long body nor a slow subscriber counts as latency, and no concurrency permit is held while streaming.</p>
+	 * 
+	 * @param path
+	 * @param acceptHeader
+	 * @param elementType
+	 * @param pathVariables
+	 * @return
+	 */
+	public abstract <O> StreamPublisher<O> stream(String path, String acceptHeader, 
+			Class<O> elementType, Object... pathVariables);
+	
+	/**
+	 * Streams the elements of an HTTP get whose body is newline delimited JSON or a JSON array.
+	 * 
+	 * @param path
+	 * @param acceptHeader
+	 * @param elementType
+	 * @param additonalHeaders
+	 * @param pathVariables
+	 * @return
+	 * @see #stream(String, String, Class, Object...)
+	 */
+	public abstract <O> StreamPublisher<O> stream(String path, String acceptHeader, 
+			Class<O> elementType, Map<String, List<String>> additonalHeaders, Object... pathVariables);
+	
+	/**
+	 * Subscribes to the Server-Sent Events of an HTTP get. 
+	 * 
+	 * <p>Every subscriber has a stream of its own. Events are parsed as the body arrives and, like {@link #stream(String, String, Class, Object...)}, 
+	 * reading pauses while the subscriber is not asking for more. Whenever the connection ends the stream reconnects, 
+	 * sending the last event id it received as Last-Event-ID, as the client's {@link ServerSentEventPolicy} says. 
+	 * It completes if the server answers 204 No Content and fails if it answers anything else than 200 with an event stream.</p>
+	 * 
+	 * <p>Each connection is accounted for by the host's policies and the metrics once its headers arrive, like a stream's, 
+	 * so an open event stream holds no concurrency permit and its connection ending is not a failure of the host.</p>
+	 * 
+	 * @param path
+	 * @param pathVariables
+	 * @return
+	 */
+	public abstract StreamPublisher<ServerSentEvent> events(String path, Object... pathVariables);
+	
+	/**
+	 * Subscribes to the Server-Sent Events of an HTTP get.
+	 * 
+	 * @param path
+	 * @param additonalHeaders
+	 * @param pathVariables
+	 * @return
+	 * @see #events(String, Object...)
+	 */
+	public abstract StreamPublisher<ServerSentEvent> events(String path, Map<String, List<String>> additonalHeaders, Object... pathVariables);
+	
+	/**
+	 * Returns a snapshot of the connection pool, per route and in total.
+	 * 
+	 * @return
+	 */
+	public abstract ConnectionPoolStats getConnectionPoolStats();
+
+}
\ No newline at end of file
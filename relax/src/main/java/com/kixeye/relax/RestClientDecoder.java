@@ -0,0 +1,49 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An incremental decoder of a single response body.
+ * 
+ * @author ebahtijaragic
+ *
+ * @param <T>
+ */
+public interface RestClientDecoder<T> {
+	/**
+	 * Decodes the next chunk of the body. The buffer is only valid for the duration of the call.
+	 * 
+	 * @param chunk
+	 * @throws IOException
+	 */
+	public void decode(ByteBuffer chunk) throws IOException;
+	
+	/**
+	 * Completes decoding once the whole body has been received.
+	 * 
+	 * @return the decoded object
+	 * @throws IOException
+	 */
+	public T complete() throws IOException;
+}
@@ -0,0 +1,64 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+
+/**
+ * Moves requests and responses between the client and the wire.
+ * 
+ * <p>The client hands the transport a fully built request and the consumer its response is to be streamed into, 
+ * and expects the callback to be completed exactly once. Everything above that, caching, balancing, breakers, limits, 
+ * hedging and compression, is done by the client, so it works the same over any transport.</p>
+ * 
+ * @see HttpAsyncClientTransport
+ * @author ebahtijaragic
+ */
+public interface RestClientTransport extends Closeable {
+	/**
+	 * Sends a request.
+	 * 
+	 * @param target the host to send the request to
+	 * @param request
+	 * @param responseConsumer consumes the response as it arrives
+	 * @param callback
+	 * @return a future that aborts the exchange when cancelled
+	 */
+	public <T> Future<T> execute(HttpHost target, HttpUriRequest request, HttpAsyncResponseConsumer<T> responseConsumer, FutureCallback<T> callback);
+	
+	/**
+	 * Gets a snapshot of the transport's connections.
+	 * 
+	 * @return
+	 */
+	public ConnectionPoolStats getConnectionPoolStats();
+	
+	/**
+	 * @return true if the transport can send requests
+	 */
+	public boolean isRunning();
+}
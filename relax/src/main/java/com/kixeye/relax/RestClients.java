@@ -0,0 +1,641 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import com.kixeye.relax.metrics.RestClientMetricsListener;
+import com.kixeye.relax.util.ByteArrayPool;
+
+/**
+ * Builds rest clients.
+ * 
+ * @author ebahtijaragic
+ */
+public final class RestClients {
+	private RestClients() {}
+	
+	/**
+	 * Creates a new RestClient without a uri prefix.
+	 * 
+	 * @return
+	 */
+	public static RestClientBuilder create(RestClientSerDe serDe) {
+		return new RestClientBuilder(serDe);
+	}
+	
+	/**
+	 * Creates a new RestClient with a uri prefix.
+	 * 
+	 * @param uriPrefix
+	 * @return
+	 */
+	public static RestClientBuilder create(String uriPrefix, RestClientSerDe serDe) {
+		return new RestClientBuilder(uriPrefix, serDe);
+	}
+	
+	/**
+	 * Creates a new RestClient that balances requests across several uri prefixes, picking the less loaded 
+	 * of two random endpoints for every request and ejecting endpoints that keep failing for a while.
+	 * 
+	 * @param uriPrefixes
+	 * @return
+	 */
+	public static RestClientBuilder create(List<String> uriPrefixes, RestClientSerDe serDe) {
+		return new RestClientBuilder(uriPrefixes, serDe);
+	}
+	
+	/**
+	 * Wraps a RestClient in one whose calls block, for at most the given time, until the response arrives.
+	 * 
+	 * @param restClient
+	 * @param timeout
+	 * @param timeUnit
+	 * @return
+	 */
+	public static BlockingRestClient blocking(RestClient restClient, long timeout, TimeUnit timeUnit) {
+		return new AsyncBlockingRestClient(restClient, timeout, timeUnit);
+	}
+	
+	/**
+	 * A builder of Rest Clients.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	public static final class RestClientBuilder {
+		private final String uriPrefix;
+		private final List<String> uriPrefixes;
+		private final RestClientSerDe serDe;
+		
+		private Header[] defaultHeaders;
+		private ConnectionReuseStrategy connectionReuseStrategy;
+		private RequestConfig requestConfig;
+		private SSLContext sslContext;
+		private String userAgentName;
+		private Executor serializationExecutor;
+		private int serializationBufferSize = 64 * 1024;
+		private ByteArrayPool bufferPool;
+		private boolean isDataDiscardedOnDeserialize = false;
+		private Executor deserializationExecutor;
+		private RestClientMetricsListener metricsListener;
+		private HttpResponseCache responseCache;
+		private boolean isGetCoalesced = false;
+		private HedgingPolicy hedgingPolicy;
+		private CircuitBreakerPolicy circuitBreakerPolicy;
+		private ConcurrencyLimitPolicy concurrencyLimitPolicy;
+		private RateLimitPolicy rateLimitPolicy;
+		private CompressionPolicy compressionPolicy;
+		private ServerSentEventPolicy serverSentEventPolicy;
+		private RestClientTransport transport;
+		private int ejectionFailures = EndpointBalancer.DEFAULT_EJECTION_FAILURES;
+		private long ejectionCooldownMillis = EndpointBalancer.DEFAULT_EJECTION_COOLDOWN_MILLIS;
+		
+		private Integer maxConnectionsPerRoute;
+		private Integer maxConnectionsTotal;
+		private Integer ioThreadCount;
+		private Integer sendBufferSize;
+		private Integer receiveBufferSize;
+		private Boolean isTcpNoDelay;
+
+		/**
+		 * @param uriPrefix
+		 */
+		protected RestClientBuilder(String uriPrefix, RestClientSerDe serDe) {
+			this.uriPrefix = uriPrefix;
+			this.uriPrefixes = null;
+			this.serDe = serDe;
+		}
+		
+		/**
+		 * @param uriPrefixes
+		 */
+		protected RestClientBuilder(List<String> uriPrefixes, RestClientSerDe serDe) {
+			if (uriPrefixes == null || uriPrefixes.isEmpty()) {
+				throw new IllegalArgumentException("At least one uri prefix is required");
+			}
+			
+			this.uriPrefix = null;
+			this.uriPrefixes = new ArrayList<>(uriPrefixes);
+			this.serDe = serDe;
+		}
+		
+		/**
+		 * 
+		 */
+		protected RestClientBuilder(RestClientSerDe serDe) {
+			this.uriPrefix = null;
+			this.uriPrefixes = null;
+			this.serDe = serDe;
+		}
+		
+		/**
+		 * With a connection resuse strategy.
+		 * 
+		 * @param requestConfig
+		 * @return
+		 */
+		public RestClientBuilder withConnectionReuseStrategy(ConnectionReuseStrategy connectionReuseStrategy) {
+			this.connectionReuseStrategy = connectionReuseStrategy;
+			
+			return this;
+		}
+		
+		/**
+		 * With a request config.
+		 * 
+		 * @param requestConfig
+		 * @return
+		 */
+		public RestClientBuilder withRequestConfig(RequestConfig requestConfig) {
+			this.requestConfig = requestConfig;
+			
+			return this;
+		}
+		
+		/**
+		 * With a default headers.
+		 * 
+		 * @param requestConfig
+		 * @return
+		 */
+		public RestClientBuilder withDefaultHeaders(Header... defaultHeaders) {
+			this.defaultHeaders = defaultHeaders;
+			
+			return this;
+		}
+		
+		/**
+		 * With a ssl context.
+		 * 
+		 * @param sslContext
+		 * @return
+		 */
+		public RestClientBuilder withSSLContext(SSLContext sslContext) {
+			this.sslContext = sslContext;
+			
+			return this;
+		}
+		
+		/**
+		 * With a user agent name.
+		 * 
+		 * @param userAgentName
+		 * @return
+		 */
+		public RestClientBuilder withUserAgentName(String userAgentName) {
+			this.userAgentName = userAgentName;
+			
+			return this;
+		}
+		
+		/**
+		 * With an executor that request bodies are serialized on. Only used when the serDe 
+		 * is a {@link StreamingRestClientSerDe}, in which case bodies are sent chunked while they are being written.
+		 * 
+		 * @param serializationExecutor
+		 * @return
+		 */
+		public RestClientBuilder withSerializationExecutor(Executor serializationExecutor) {
+			this.serializationExecutor = serializationExecutor;
+			
+			return this;
+		}
+		
+		/**
+		 * With the size of the buffer between a streaming serializer and the wire.
+		 * 
+		 * @param serializationBufferSize
+		 * @return
+		 */
+		public RestClientBuilder withSerializationBufferSize(int serializationBufferSize) {
+			this.serializationBufferSize = serializationBufferSize;
+			
+			return this;
+		}
+		
+		/**
+		 * With a pool of reusable response buffers. Bodies are then backed by pooled arrays 
+		 * and must be released with {@link SerializedObject#release()} once they are no longer needed.
+		 * 
+		 * @param bufferPool
+		 * @return
+		 */
+		public RestClientBuilder withBufferPool(ByteArrayPool bufferPool) {
+			this.bufferPool = bufferPool;
+			
+			return this;
+		}
+		
+		/**
+		 * With response data dropped once the body has been deserialized, so a response 
+		 * holds either its raw data or its decoded object, not both.
+		 * 
+		 * @param isDataDiscardedOnDeserialize
+		 * @return
+		 */
+		public RestClientBuilder withDataDiscardedOnDeserialize(boolean isDataDiscardedOnDeserialize) {
+			this.isDataDiscardedOnDeserialize = isDataDiscardedOnDeserialize;
+			
+			return this;
+		}
+		
+		/**
+		 * With an executor that response bodies are deserialized on before their promise completes, 
+		 * keeping the I/O dispatcher threads free of deserialization work.
+		 * 
+		 * @param deserializationExecutor
+		 * @return
+		 */
+		public RestClientBuilder withDeserializationExecutor(Executor deserializationExecutor) {
+			this.deserializationExecutor = deserializationExecutor;
+			
+			return this;
+		}
+		
+		/**
+		 * With a listener that is told when every request starts and how it ends, keyed by method and unexpanded path template.
+		 * 
+		 * @param metricsListener
+		 * @return
+		 */
+		public RestClientBuilder withMetricsListener(RestClientMetricsListener metricsListener) {
+			this.metricsListener = metricsListener;
+			
+			return this;
+		}
+		
+		/**
+		 * With a cache that GET responses are served from and stored in, following their Cache-Control, Expires and validators.
+		 * 
+		 * @param responseCache
+		 * @return
+		 */
+		public RestClientBuilder withResponseCache(HttpResponseCache responseCache) {
+			this.responseCache = responseCache;
+			
+			return this;
+		}
+		
+		/**
+		 * With identical concurrent GETs (same URL, response type and headers) sharing a single exchange. 
+		 * Every caller gets its own promise, completed with the same response.
+		 * 
+		 * @param isGetCoalesced
+		 * @return
+		 */
+		public RestClientBuilder withGetCoalescing(boolean isGetCoalesced) {
+			this.isGetCoalesced = isGetCoalesced;
+			
+			return this;
+		}
+		
+		/**
+		 * With a circuit breaker per host: once too many of the recent requests to a host failed or were slow, 
+		 * requests to it fail with a {@link CircuitBreakerOpenException} until probes show it has recovered.
+		 * 
+		 * @param circuitBreakerPolicy
+		 * @return
+		 */
+		public RestClientBuilder withCircuitBreaker(CircuitBreakerPolicy circuitBreakerPolicy) {
+			this.circuitBreakerPolicy = circuitBreakerPolicy;
+			
+			return this;
+		}
+		
+		/**
+		 * With an adaptive limit on the number of requests in flight to every host. Requests over the limit fail with a 
+		 * {@link ConcurrencyLimitExceededException}, or wait for a while if the policy has a queue.
+		 * 
+		 * @param concurrencyLimitPolicy
+		 * @return
+		 */
+		public RestClientBuilder withConcurrencyLimit(ConcurrencyLimitPolicy concurrencyLimitPolicy) {
+			this.concurrencyLimitPolicy = concurrencyLimitPolicy;
+			
+			return this;
+		}
+		
+		/**
+		 * With rate limits per route, keyed by path template. Requests over the rate are delayed without blocking, or fail 
+		 * with a {@link RateLimitExceededException} if they would wait too long, and 429 and 503 responses slow the route down.
+		 * 
+		 * @param rateLimitPolicy
+		 * @return
+		 */
+		public RestClientBuilder withRateLimit(RateLimitPolicy rateLimitPolicy) {
+			this.rateLimitPolicy = rateLimitPolicy;
+			
+			return this;
+		}
+		
+		/**
+		 * With compression: gzip and deflate responses are asked for and inflated as they arrive, 
+		 * and request bodies are gzipped if the policy says so.
+		 * 
+		 * @param compressionPolicy
+		 * @return
+		 */
+		public RestClientBuilder withCompression(CompressionPolicy compressionPolicy) {
+			this.compressionPolicy = compressionPolicy;
+			
+			return this;
+		}
+		
+		/**
+		 * With the policy Server-Sent Events streams reconnect and buffer events by, instead of the default one.
+		 * 
+		 * @param serverSentEventPolicy
+		 * @return
+		 */
+		public RestClientBuilder withServerSentEvents(ServerSentEventPolicy serverSentEventPolicy) {
+			this.serverSentEventPolicy = serverSentEventPolicy;
+			
+			return this;
+		}
+		
+		/**
+		 * With a transport to send requests over instead of the built-in httpasyncclient one. 
+		 * 
+		 * <p>The http client, pool and socket settings of this builder only apply to the built-in transport 
+		 * and are ignored, and the transport is left open when the client is closed.</p>
+		 * 
+		 * @param transport
+		 * @return
+		 */
+		public RestClientBuilder withTransport(RestClientTransport transport) {
+			this.transport = transport;
+			
+			return this;
+		}
+		
+		/**
+		 * With hedging: GETs, DELETEs and requests the policy marks idempotent are sent a second time if no response 
+		 * has arrived after the policy's delay, the first response wins and the other attempt is cancelled.
+		 * 
+		 * @param hedgingPolicy
+		 * @return
+		 */
+		public RestClientBuilder withHedgingPolicy(HedgingPolicy hedgingPolicy) {
+			this.hedgingPolicy = hedgingPolicy;
+			
+			return this;
+		}
+		
+		/**
+		 * With how many failures in a row (exceptions or 5xx responses) eject an endpoint of a load-balanced client, 
+		 * and for how long. Defaults to 5 failures and 30 seconds.
+		 * 
+		 * @param ejectionFailures
+		 * @param cooldown
+		 * @param unit
+		 * @return
+		 */
+		public RestClientBuilder withEjection(int ejectionFailures, long cooldown, TimeUnit unit) {
+			this.ejectionFailures = ejectionFailures;
+			this.ejectionCooldownMillis = unit.toMillis(cooldown);
+			
+			return this;
+		}
+		
+		/**
+		 * With the maximum number of pooled connections per route (host). httpasyncclient defaults to 2.
+		 * 
+		 * @param maxConnectionsPerRoute
+		 * @return
+		 */
+		public RestClientBuilder withMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+			this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+			
+			return this;
+		}
+		
+		/**
+		 * With the maximum number of pooled connections across all routes. httpasyncclient defaults to 20.
+		 * 
+		 * @param maxConnectionsTotal
+		 * @return
+		 */
+		public RestClientBuilder withMaxConnectionsTotal(int maxConnectionsTotal) {
+			this.maxConnectionsTotal = maxConnectionsTotal;
+			
+			return this;
+		}
+		
+		/**
+		 * With the number of I/O dispatcher threads. Defaults to the number of processors.
+		 * 
+		 * @param ioThreadCount
+		 * @return
+		 */
+		public RestClientBuilder withIoThreadCount(int ioThreadCount) {
+			this.ioThreadCount = ioThreadCount;
+			
+			return this;
+		}
+		
+		/**
+		 * With the socket send buffer size (SO_SNDBUF).
+		 * 
+		 * @param sendBufferSize
+		 * @return
+		 */
+		public RestClientBuilder withSendBufferSize(int sendBufferSize) {
+			this.sendBufferSize = sendBufferSize;
+			
+			return this;
+		}
+		
+		/**
+		 * With the socket receive buffer size (SO_RCVBUF).
+		 * 
+		 * @param receiveBufferSize
+		 * @return
+		 */
+		public RestClientBuilder withReceiveBufferSize(int receiveBufferSize) {
+			this.receiveBufferSize = receiveBufferSize;
+			
+			return this;
+		}
+		
+		/**
+		 * With TCP_NODELAY on or off.
+		 * 
+		 * @param isTcpNoDelay
+		 * @return
+		 */
+		public RestClientBuilder withTcpNoDelay(boolean isTcpNoDelay) {
+			this.isTcpNoDelay = isTcpNoDelay;
+			
+			return this;
+		}
+		
+		/**
+		 * Builds the RestClient.
+		 * 
+		 * @return
+		 */
+		public RestClient build() {
+			AsyncRestClient client = new AsyncRestClient();
+			if (uriPrefixes != null) {
+				client.setEndpointBalancer(new EndpointBalancer(uriPrefixes, ejectionFailures, ejectionCooldownMillis));
+			} else {
+				client.setUriPrefix(uriPrefix);
+			}
+			
+			if (transport != null) {
+				client.setTransport(transport, true);
+			} else {
+				client.setTransport(createTransport(), false);
+			}
+			
+			client.setSerDe(serDe);
+			client.setSerializationExecutor(serializationExecutor, serializationBufferSize);
+			client.setBufferPool(bufferPool);
+			client.setDataDiscardedOnDeserialize(isDataDiscardedOnDeserialize);
+			client.setDeserializationExecutor(deserializationExecutor);
+			client.setMetricsListener(metricsListener);
+			client.setResponseCache(responseCache);
+			client.setGetCoalesced(isGetCoalesced);
+			client.setHedgingPolicy(hedgingPolicy);
+			client.setCircuitBreakerPolicy(circuitBreakerPolicy);
+			client.setConcurrencyLimitPolicy(concurrencyLimitPolicy);
+			client.setRateLimitPolicy(rateLimitPolicy);
+			client.setCompressionPolicy(compressionPolicy);
+			
+			if (serverSentEventPolicy != null) {
+				client.setServerSentEventPolicy(serverSentEventPolicy);
+			}
+			
+			return client;
+		}
+		
+		/**
+		 * Builds a RestClient whose calls block, for at most the given time, until the response arrives.
+		 * 
+		 * @param timeout
+		 * @param timeUnit
+		 * @return
+		 */
+		public BlockingRestClient buildBlocking(long timeout, TimeUnit timeUnit) {
+			return blocking(build(), timeout, timeUnit);
+		}
+		
+		/**
+		 * Creates and starts the built-in transport.
+		 * 
+		 * @return
+		 */
+		private RestClientTransport createTransport() {
+			HttpAsyncClientBuilder builder = HttpAsyncClients.custom();
+			if (requestConfig != null) {
+				builder.setDefaultRequestConfig(requestConfig);
+			}
+			if (userAgentName != null) {
+				builder.setUserAgent(userAgentName);
+			}
+			
+			PoolingNHttpClientConnectionManager connectionManager = createConnectionManager();
+			builder.setConnectionManager(connectionManager);
+			
+			if (connectionReuseStrategy != null) {
+				builder.setConnectionReuseStrategy(connectionReuseStrategy);
+			}
+			if (defaultHeaders != null) {
+				builder.setDefaultHeaders(Arrays.asList(defaultHeaders));
+			}
+			
+			CloseableHttpAsyncClient httpClient = builder.build();
+			httpClient.start();
+			
+			return new HttpAsyncClientTransport(httpClient, connectionManager, false);
+		}
+		
+		/**
+		 * Creates the pooling connection manager and its I/O reactor, the same way 
+		 * {@link HttpAsyncClientBuilder} would, so that it can be tuned and its stats read.
+		 * 
+		 * @return
+		 */
+		private PoolingNHttpClientConnectionManager createConnectionManager() {
+			IOReactorConfig.Builder ioReactorConfig = IOReactorConfig.custom();
+			if (ioThreadCount != null) {
+				ioReactorConfig.setIoThreadCount(ioThreadCount);
+			}
+			if (sendBufferSize != null) {
+				ioReactorConfig.setSndBufSize(sendBufferSize);
+			}
+			if (receiveBufferSize != null) {
+				ioReactorConfig.setRcvBufSize(receiveBufferSize);
+			}
+			if (isTcpNoDelay != null) {
+				ioReactorConfig.setTcpNoDelay(isTcpNoDelay);
+			}
+			
+			SSLIOSessionStrategy sslStrategy = new SSLIOSessionStrategy(sslContext != null ? sslContext : SSLContexts.createDefault(), 
+					SSLIOSessionStrategy.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+			
+			Registry<SchemeIOSessionStrategy> ioSessionStrategies = RegistryBuilder.<SchemeIOSessionStrategy>create()
+					.register("http", NoopIOSessionStrategy.INSTANCE)
+					.register("https", sslStrategy)
+					.build();
+			
+			PoolingNHttpClientConnectionManager connectionManager;
+			
+			try {
+				connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig.build()), ioSessionStrategies);
+			} catch (IOReactorException e) {
+				throw new IllegalStateException("Unable to create the I/O reactor", e);
+			}
+			
+			if (maxConnectionsTotal != null) {
+				connectionManager.setMaxTotal(maxConnectionsTotal);
+			}
+			if (maxConnectionsPerRoute != null) {
+				connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+			}
+			
+			return connectionManager;
+		}
+	}
+}
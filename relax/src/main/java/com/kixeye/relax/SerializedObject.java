@@ -0,0 +1,211 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.kixeye.relax.util.ByteArrayPool;
+
+/**
+ * Represents a serialized object.
+ * 
+ * <p>If the client was built with a {@link ByteArrayPool} the data is a pooled buffer that may be longer than 
+ * {@link #getDataLength()}, and it is handed back to the pool once {@link #release()} (or {@link #close()}) 
+ * has been called as many times as {@link #retain()} plus one.</p>
+ * 
+ * <p>The deserialized object is cached after the first successful {@link #deserialize()}. If the client was built to 
+ * discard data on deserialize, that drops the owner's reference to the raw data, so once no one else has 
+ * {@link #retain() retained} it only the decoded object is held.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class SerializedObject<O> implements Closeable {
+	private static final Object NOT_DECODED = new Object();
+	
+	private final RestClientSerDe serDe;
+	private final String contentType;
+	private final Class<O> responseType;
+	
+	private final boolean isDataDiscardedOnDeserialize;
+	private volatile Object decodedObject = NOT_DECODED;
+	
+	private final ByteArrayPool pool;
+	private final AtomicInteger referenceCount = new AtomicInteger(1);
+	
+	private volatile byte[] data;
+	private final int dataLength;
+	
+	/**
+	 * @param serDe
+	 * @param contentType
+	 * @param data
+	 * @param responseType
+	 */
+	protected SerializedObject(RestClientSerDe serDe, String contentType, byte[] data, Class<O> responseType) {
+		this(serDe, contentType, data, data != null ? data.length : 0, responseType, null, false);
+	}
+	
+	/**
+	 * @param serDe
+	 * @param contentType
+	 * @param data
+	 * @param dataLength
+	 * @param responseType
+	 * @param pool the pool the data came from, or null
+	 * @param isDataDiscardedOnDeserialize
+	 */
+	protected SerializedObject(RestClientSerDe serDe, String contentType, byte[] data, int dataLength, Class<O> responseType, 
+			ByteArrayPool pool, boolean isDataDiscardedOnDeserialize) {
+		this.serDe = serDe;
+		this.contentType = contentType;
+		this.data = data;
+		this.dataLength = dataLength;
+		this.responseType = responseType;
+		this.pool = pool;
+		this.isDataDiscardedOnDeserialize = isDataDiscardedOnDeserialize;
+	}
+	
+	/**
+	 * Creates a serialized object that was already decoded while streaming.
+	 * 
+	 * @param contentType
+	 * @param decodedObject
+	 * @param responseType
+	 */
+	protected SerializedObject(String contentType, O decodedObject, Class<O> responseType) {
+		this.serDe = null;
+		this.contentType = contentType;
+		this.data = null;
+		this.dataLength = 0;
+		this.responseType = responseType;
+		this.pool = null;
+		this.isDataDiscardedOnDeserialize = false;
+		this.decodedObject = decodedObject;
+	}
+
+	/**
+	 * Deserializes the serialized object, decoding it on the first call only.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public O deserialize() throws IOException {
+		Object current = decodedObject;
+		
+		if (current == NOT_DECODED) {
+			synchronized (this) {
+				current = decodedObject;
+				
+				if (current == NOT_DECODED) {
+					byte[] currentData = data;
+					
+					if (currentData == null && pool != null) {
+						throw new IllegalStateException("The serialized object has already been released");
+					}
+					
+					current = serDe.deserialize(contentType, currentData, 0, dataLength, responseType);
+					decodedObject = current;
+					
+					if (isDataDiscardedOnDeserialize) {
+						// other holders keep the data until they release it too
+						release();
+					}
+				}
+			}
+		}
+		
+		return (O)current;
+	}
+	
+	/**
+	 * @return true if the object has been deserialized
+	 */
+	public boolean isDeserialized() {
+		return decodedObject != NOT_DECODED;
+	}
+	
+	/**
+	 * Adds a reference to the underlying buffer.
+	 * 
+	 * @return
+	 */
+	public SerializedObject<O> retain() {
+		if (referenceCount.getAndIncrement() <= 0) {
+			referenceCount.getAndDecrement();
+			
+			throw new IllegalStateException("The serialized object has already been released");
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Drops a reference to the underlying buffer, returning it to the pool when the last one is gone.
+	 */
+	public void release() {
+		int remaining = referenceCount.decrementAndGet();
+		
+		if (remaining == 0 && (pool != null || (isDataDiscardedOnDeserialize && isDeserialized()))) {
+			synchronized (this) {
+				byte[] currentData = data;
+				data = null;
+				
+				if (pool != null && currentData != null) {
+					pool.release(currentData);
+				}
+			}
+		} else if (remaining < 0) {
+			referenceCount.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		release();
+	}
+
+	/**
+	 * @return the data, or null if the body was decoded while streaming or discarded after deserializing
+	 */
+	public byte[] getData() {
+		return data;
+	}
+	
+	/**
+	 * @return the number of valid bytes in the data
+	 */
+	public int getDataLength() {
+		return dataLength;
+	}
+
+	/**
+	 * @return the responseType
+	 */
+	public Class<O> getResponseType() {
+		return responseType;
+	}
+}
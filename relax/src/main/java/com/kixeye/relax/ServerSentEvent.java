@@ -0,0 +1,80 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * An event received from a Server-Sent Events stream.
+ * 
+ * @author ebahtijaragic
+ */
+public class ServerSentEvent {
+	public static final String DEFAULT_EVENT = "message";
+	
+	private final String id;
+	private final String event;
+	private final String data;
+	
+	/**
+	 * @param id the last event id at the time the event was received, or null
+	 * @param event
+	 * @param data
+	 */
+	public ServerSentEvent(String id, String event, String data) {
+		this.id = id;
+		this.event = event;
+		this.data = data;
+	}
+
+	/**
+	 * Gets the last event id the stream had received when this event was, which is what a reconnect resumes from.
+	 * 
+	 * @return the id, or null if the stream has not sent one
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the event type, {@value #DEFAULT_EVENT} unless the stream named one.
+	 * 
+	 * @return
+	 */
+	public String getEvent() {
+		return event;
+	}
+
+	/**
+	 * Gets the data, with the lines of multi-line data joined by line feeds.
+	 * 
+	 * @return
+	 */
+	public String getData() {
+		return data;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ServerSentEvent [id=" + id + ", event=" + event + ", data=" + data + "]";
+	}
+}
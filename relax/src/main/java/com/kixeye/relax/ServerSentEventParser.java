@@ -0,0 +1,248 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses the events of a text/event-stream body line by line, as the body arrives.
+ * 
+ * <p>Lines may end with CRLF, LF or CR, and may be split anywhere between chunks; only the bytes of the line 
+ * that is not complete yet are left in the buffer, and they are not scanned again. An event is dispatched on 
+ * the blank line that ends it, and an event the body ends in the middle of is dropped, along with its id, 
+ * so a reconnect resumes from the last event that was actually dispatched.</p>
+ * 
+ * @author ebahtijaragic
+ */
+class ServerSentEventParser implements ElementStream.ElementParser {
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	
+	private final EventHandler handler;
+	
+	private volatile String lastEventId;
+	private String pendingEventId;
+	private boolean isEventIdPending = false;
+	private String event;
+	private final StringBuilder data = new StringBuilder();
+	
+	private boolean isStart = true;
+	private boolean isAfterCr = false;
+	private int scanned = 0;
+	
+	/**
+	 * Receives the events and reconnection times that were parsed.
+	 */
+	static interface EventHandler {
+		/**
+		 * @param event
+		 */
+		public void event(ServerSentEvent event);
+		
+		/**
+		 * @param retryMillis
+		 */
+		public void retry(long retryMillis);
+	}
+	
+	/**
+	 * @param lastEventId the id the stream resumes from, or null
+	 * @param handler
+	 */
+	protected ServerSentEventParser(String lastEventId, EventHandler handler) {
+		this.lastEventId = lastEventId;
+		this.handler = handler;
+	}
+	
+	/**
+	 * Gets the id of the last event that was dispatched, or the one the stream resumed from.
+	 * 
+	 * @return
+	 */
+	protected String getLastEventId() {
+		return lastEventId;
+	}
+
+	/**
+	 * @see com.kixeye.relax.ElementStream.ElementParser#parse(byte[], int)
+	 */
+	@Override
+	public int parse(byte[] data, int length) {
+		int lineStart = 0;
+		
+		if (isStart) {
+			if (length < 3 && isBomPrefix(data, length)) {
+				return 0;
+			}
+			
+			isStart = false;
+			
+			if (length >= 3 && isBomPrefix(data, 3)) {
+				lineStart = 3;
+				scanned = 3;
+			}
+		}
+		
+		for (int i = Math.max(scanned, lineStart); i < length; i++) {
+			byte b = data[i];
+			
+			if (b == LF && isAfterCr && i == lineStart) {
+				// the LF of a CRLF that was split from its CR
+				isAfterCr = false;
+				lineStart = i + 1;
+				
+				continue;
+			}
+			
+			isAfterCr = false;
+			
+			if (b == CR || b == LF) {
+				line(data, lineStart, i - lineStart);
+				
+				isAfterCr = b == CR;
+				lineStart = i + 1;
+			}
+		}
+		
+		scanned = length - lineStart;
+		
+		return lineStart;
+	}
+
+	/**
+	 * @see com.kixeye.relax.ElementStream.ElementParser#finish(byte[], int)
+	 */
+	@Override
+	public void finish(byte[] data, int length) {
+		// an incomplete event is not dispatched
+	}
+	
+	/**
+	 * Processes a complete line.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 */
+	private void line(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			dispatch();
+			
+			return;
+		}
+		
+		if (bytes[offset] == ':') {
+			// a comment, usually a keep-alive
+			return;
+		}
+		
+		String line = new String(bytes, offset, length, StandardCharsets.UTF_8);
+		String field = line;
+		String value = "";
+		
+		int colon = line.indexOf(':');
+		
+		if (colon >= 0) {
+			field = line.substring(0, colon);
+			value = line.substring(colon + 1 < line.length() && line.charAt(colon + 1) == ' ' ? colon + 2 : colon + 1);
+		}
+		
+		switch (field) {
+			case "data":
+				data.append(value).append('\n');
+				break;
+			case "event":
+				event = value;
+				break;
+			case "id":
+				if (value.indexOf('\0') < 0) {
+					pendingEventId = value;
+					isEventIdPending = true;
+				}
+				break;
+			case "retry":
+				if (isDigits(value)) {
+					handler.retry(Long.parseLong(value));
+				}
+				break;
+			default:
+				// unknown fields are ignored
+				break;
+		}
+	}
+	
+	/**
+	 * Dispatches the event the fields so far make up, if it has data.
+	 */
+	private void dispatch() {
+		if (isEventIdPending) {
+			// the id takes effect once its event is complete, even one without data
+			lastEventId = pendingEventId;
+			isEventIdPending = false;
+		}
+		
+		if (data.length() == 0) {
+			event = null;
+			
+			return;
+		}
+		
+		data.setLength(data.length() - 1);
+		
+		ServerSentEvent serverSentEvent = new ServerSentEvent(lastEventId, event != null && !event.isEmpty() ? event : ServerSentEvent.DEFAULT_EVENT, data.toString());
+		
+		data.setLength(0);
+		event = null;
+		
+		handler.event(serverSentEvent);
+	}
+	
+	/**
+	 * Returns true if the value is a reconnection time the stream can use.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	private static boolean isDigits(String value) {
+		if (value.isEmpty() || value.length() > 18) {
+			return false;
+		}
+		
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns true if the bytes are the UTF-8 byte order mark, or the start of it.
+	 * 
+	 * @param data
+	 * @param length
+	 * @return
+	 */
+	private static boolean isBomPrefix(byte[] data, int length) {
+		return (length < 1 || data[0] == (byte)0xEF) && (length < 2 || data[1] == (byte)0xBB) && (length < 3 || data[2] == (byte)0xBF);
+	}
+}
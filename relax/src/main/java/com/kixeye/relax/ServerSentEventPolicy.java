@@ -0,0 +1,145 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures how Server-Sent Events streams reconnect and how many events they buffer.
+ * 
+ * <p>A stream reconnects after the retry delay, which the server may change with a retry field. If a connection 
+ * fails, or ends, without delivering an event, the delay doubles each time, up to the max retry delay, until one does.</p>
+ * 
+ * <p>At most queue size events are held for a subscriber that is not asking for them; after that the stream 
+ * stops reading from the connection until the subscriber catches up.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class ServerSentEventPolicy {
+	public static final long DEFAULT_RETRY_MILLIS = 3000;
+	public static final long DEFAULT_MAX_RETRY_MILLIS = 30000;
+	public static final int DEFAULT_QUEUE_SIZE = 256;
+	
+	private long retryMillis = DEFAULT_RETRY_MILLIS;
+	private long maxRetryMillis = DEFAULT_MAX_RETRY_MILLIS;
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	
+	private ScheduledExecutorService scheduler;
+	
+	/**
+	 * With the delay before reconnecting, until the server sets one.
+	 * 
+	 * @param retry
+	 * @param unit
+	 * @return
+	 */
+	public ServerSentEventPolicy withRetry(long retry, TimeUnit unit) {
+		this.retryMillis = unit.toMillis(retry);
+		
+		return this;
+	}
+	
+	/**
+	 * With the longest delay that repeated failures back off to.
+	 * 
+	 * @param maxRetry
+	 * @param unit
+	 * @return
+	 */
+	public ServerSentEventPolicy withMaxRetry(long maxRetry, TimeUnit unit) {
+		this.maxRetryMillis = unit.toMillis(maxRetry);
+		
+		return this;
+	}
+	
+	/**
+	 * With the number of events that are buffered ahead of demand.
+	 * 
+	 * @param queueSize
+	 * @return
+	 */
+	public ServerSentEventPolicy withQueueSize(int queueSize) {
+		if (queueSize <= 0) {
+			throw new IllegalArgumentException("Invalid queue size: " + queueSize);
+		}
+		
+		this.queueSize = queueSize;
+		
+		return this;
+	}
+	
+	/**
+	 * With the scheduler reconnects are made from.
+	 * 
+	 * @param scheduler
+	 * @return
+	 */
+	public ServerSentEventPolicy withScheduler(ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+		
+		return this;
+	}
+	
+	/**
+	 * Gets the delay before reconnecting.
+	 * 
+	 * @return
+	 */
+	protected long getRetryMillis() {
+		return retryMillis;
+	}
+	
+	/**
+	 * Gets the delay before reconnecting after a number of failures in a row, given the current retry delay.
+	 * 
+	 * @param retryMillis
+	 * @param failures
+	 * @return
+	 */
+	protected long getBackoffMillis(long retryMillis, int failures) {
+		long delay = retryMillis;
+		
+		for (int i = 0; i < failures && delay < maxRetryMillis; i++) {
+			delay *= 2;
+		}
+		
+		return Math.max(retryMillis, Math.min(delay, maxRetryMillis));
+	}
+	
+	/**
+	 * Gets the number of events that are buffered ahead of demand.
+	 * 
+	 * @return
+	 */
+	protected int getQueueSize() {
+		return queueSize;
+	}
+	
+	/**
+	 * Gets the scheduler reconnects are made from.
+	 * 
+	 * @return
+	 */
+	protected ScheduledExecutorService getScheduler() {
+		return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+	}
+}
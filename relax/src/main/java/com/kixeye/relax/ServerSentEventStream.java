@@ -0,0 +1,236 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Server-Sent Events stream that reconnects, resuming from the last event id, whenever its connection ends.
+ * 
+ * <p>A connection that ends or fails with an {@link IOException} is reconnected after the {@link ServerSentEventPolicy}'s 
+ * delay. The stream completes if the server answers 204 No Content, which is how it says there will be no more events, 
+ * and fails on any other status than 200 or on a body that is not text/event-stream.</p>
+ * 
+ * @author ebahtijaragic
+ */
+abstract class ServerSentEventStream extends ElementStream<ServerSentEvent> implements ServerSentEventParser.EventHandler {
+	public static final String CONTENT_TYPE = "text/event-stream";
+	
+	private final ServerSentEventPolicy policy;
+	
+	private volatile String lastEventId;
+	private volatile long retryMillis;
+	
+	private volatile ServerSentEventParser parser;
+	private volatile boolean isEventReceived = false;
+	private int failures = 0;
+	
+	private volatile ScheduledFuture<?> pendingReconnect;
+	
+	/**
+	 * @param policy
+	 * @param compressionPolicy the policy compressed responses are counted by, or null if they are not inflated
+	 * @param subscriber
+	 */
+	protected ServerSentEventStream(ServerSentEventPolicy policy, CompressionPolicy compressionPolicy, StreamSubscriber<? super ServerSentEvent> subscriber) {
+		super(compressionPolicy, subscriber, policy.getQueueSize());
+		
+		this.policy = policy;
+		this.retryMillis = policy.getRetryMillis();
+	}
+	
+	/**
+	 * Executes the request of a connection into the given promise, reading it with a {@link #createResponseConsumer() consumer of its own}.
+	 * 
+	 * @param lastEventId the id to send as Last-Event-ID, or null
+	 * @param promise
+	 * @throws Exception
+	 */
+	protected abstract void connect(String lastEventId, HttpPromise<HttpResponse<Void>> promise) throws Exception;
+	
+	/**
+	 * Opens a connection, unless the stream is finished.
+	 */
+	protected void reconnect() {
+		if (isFinished()) {
+			return;
+		}
+		
+		HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+		
+		isEventReceived = false;
+		setPromise(promise);
+		
+		try {
+			connect(lastEventId, promise);
+		} catch (Exception e) {
+			promise.setError(e);
+		}
+	}
+	
+	/**
+	 * Gets the id the next connection resumes from.
+	 * 
+	 * @return
+	 */
+	protected String getLastEventId() {
+		return lastEventId;
+	}
+	
+	/**
+	 * Gets the delay before the next connection, as the server last set it.
+	 * 
+	 * @return
+	 */
+	protected long getRetryMillis() {
+		return retryMillis;
+	}
+
+	/**
+	 * @see com.kixeye.relax.ElementStream#createParser(int, java.lang.String)
+	 */
+	@Override
+	protected ElementParser createParser(int statusCode, String contentType) {
+		if (statusCode != 200 || !isEventStream(contentType)) {
+			return null;
+		}
+		
+		parser = new ServerSentEventParser(lastEventId, this);
+		
+		return parser;
+	}
+
+	/**
+	 * @see com.kixeye.relax.ServerSentEventParser.EventHandler#event(com.kixeye.relax.ServerSentEvent)
+	 */
+	@Override
+	public void event(ServerSentEvent event) {
+		isEventReceived = true;
+		
+		emit(event);
+	}
+
+	/**
+	 * @see com.kixeye.relax.ServerSentEventParser.EventHandler#retry(long)
+	 */
+	@Override
+	public void retry(long retryMillis) {
+		this.retryMillis = retryMillis;
+	}
+
+	/**
+	 * @see com.kixeye.relax.ElementStream#completed(com.kixeye.relax.HttpResponse)
+	 */
+	@Override
+	protected void completed(HttpResponse<Void> response) {
+		parsed();
+		
+		if (response.getStatusCode() == 204) {
+			complete();
+		} else if (response.getStatusCode() != 200) {
+			fail(new UnexpectedStatusException(response.getStatusCode()));
+		} else if (!isEventStream(response.getFirstHeader("Content-Type"))) {
+			fail(new IOException("Expected a " + CONTENT_TYPE + " response, got: " + response.getFirstHeader("Content-Type")));
+		} else {
+			scheduleReconnect();
+		}
+	}
+
+	/**
+	 * @see com.kixeye.relax.ElementStream#failed(java.lang.Exception)
+	 */
+	@Override
+	protected void failed(Exception error) {
+		parsed();
+		
+		if (isFinished()) {
+			return;
+		}
+		
+		if (error instanceof IOException) {
+			scheduleReconnect();
+		} else {
+			fail(error);
+		}
+	}
+	
+	/**
+	 * @see com.kixeye.relax.ElementStream#cancel()
+	 */
+	@Override
+	public void cancel() {
+		super.cancel();
+		
+		ScheduledFuture<?> currentReconnect = pendingReconnect;
+		
+		if (currentReconnect != null) {
+			currentReconnect.cancel(false);
+		}
+	}
+	
+	/**
+	 * Takes the last event id from the parser of the connection that ended.
+	 */
+	private void parsed() {
+		ServerSentEventParser currentParser = parser;
+		
+		if (currentParser != null) {
+			lastEventId = currentParser.getLastEventId();
+			parser = null;
+		}
+	}
+	
+	/**
+	 * Reconnects after the retry delay, backing off if the connections keep ending without events.
+	 */
+	private void scheduleReconnect() {
+		if (isEventReceived) {
+			failures = 0;
+		} else {
+			failures++;
+		}
+		
+		long delay = failures == 0 ? retryMillis : policy.getBackoffMillis(retryMillis, failures - 1);
+		
+		pendingReconnect = policy.getScheduler().schedule(new Runnable() {
+			public void run() {
+				reconnect();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+		
+		if (isCancelled()) {
+			pendingReconnect.cancel(false);
+		}
+	}
+	
+	/**
+	 * Returns true if the content type is that of an event stream.
+	 * 
+	 * @param contentType
+	 * @return
+	 */
+	private static boolean isEventStream(String contentType) {
+		return contentType != null && contentType.trim().toLowerCase(Locale.ENGLISH).startsWith(CONTENT_TYPE);
+	}
+}
@@ -0,0 +1,48 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Holds the daemon scheduler that promise timeouts and the client's policies run on unless they are given their own.
+ * 
+ * @author ebahtijaragic
+ */
+class SharedScheduler {
+	protected static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "relax-scheduler");
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	});
+	
+	static {
+		// timeouts are mostly cancelled, they should not linger in the queue
+		INSTANCE.setRemoveOnCancelPolicy(true);
+	}
+	
+	private SharedScheduler() {
+	}
+}
@@ -0,0 +1,40 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * A cold source of elements; every subscriber gets a stream of its own.
+ * 
+ * <p>Follows the Reactive Streams <code>Publisher</code> contract, so adapting it to 
+ * <code>org.reactivestreams</code> or <code>java.util.concurrent.Flow</code> is a matter of forwarding calls.</p>
+ * 
+ * @see RestClient#stream(String, String, Class, Object...)
+ * @author ebahtijaragic
+ */
+public interface StreamPublisher<T> {
+	/**
+	 * Starts a stream to the subscriber. {@link StreamSubscriber#onSubscribe(StreamSubscription)} is signalled first, 
+	 * then elements as they are requested, then at most one of {@link StreamSubscriber#onComplete()} or {@link StreamSubscriber#onError(Throwable)}.
+	 * 
+	 * @param subscriber
+	 */
+	public void subscribe(StreamSubscriber<? super T> subscriber);
+}
@@ -0,0 +1,54 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Receives the elements of a {@link StreamPublisher}. Signals are never concurrent.
+ * 
+ * @author ebahtijaragic
+ */
+public interface StreamSubscriber<T> {
+	/**
+	 * Called once, before any other signal. Nothing is sent until elements are requested through the subscription.
+	 * 
+	 * @param subscription
+	 */
+	public void onSubscribe(StreamSubscription subscription);
+	
+	/**
+	 * Called for every element, never more often than requested.
+	 * 
+	 * @param element
+	 */
+	public void onNext(T element);
+	
+	/**
+	 * Called when the stream failed. No signals follow.
+	 * 
+	 * @param error
+	 */
+	public void onError(Throwable error);
+	
+	/**
+	 * Called when every element has been delivered. No signals follow.
+	 */
+	public void onComplete();
+}
@@ -0,0 +1,40 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The link between a {@link StreamPublisher} and one of its subscribers.
+ * 
+ * @author ebahtijaragic
+ */
+public interface StreamSubscription {
+	/**
+	 * Asks for up to n more elements. Long.MAX_VALUE asks for all of them.
+	 * 
+	 * @param n a positive number
+	 */
+	public void request(long n);
+	
+	/**
+	 * Stops the stream and aborts the exchange behind it.
+	 */
+	public void cancel();
+}
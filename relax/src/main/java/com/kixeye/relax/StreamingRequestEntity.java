@@ -0,0 +1,234 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentOutputStream;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedOutputBuffer;
+
+/**
+ * A chunked request entity that is serialized on an executor into a bounded buffer 
+ * while the I/O reactor drains that buffer onto the wire. If it is given a {@link CompressionPolicy} it is gzipped on the way.
+ * 
+ * @author ebahtijaragic
+ */
+class StreamingRequestEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+	private final StreamingRestClientSerDe serDe;
+	private final String mimeType;
+	private final Object requestObject;
+	private final Executor executor;
+	private final SharedOutputBuffer buffer;
+	private final CompressionPolicy compressionPolicy;
+	
+	private volatile IOControl ioControl;
+	private volatile IOException error;
+	private boolean isStarted = false;
+	
+	/**
+	 * @param serDe
+	 * @param mimeType
+	 * @param requestObject
+	 * @param executor
+	 * @param bufferSize
+	 * @param compressionPolicy the policy to gzip the body with, or null
+	 */
+	protected StreamingRequestEntity(StreamingRestClientSerDe serDe, String mimeType, Object requestObject, Executor executor, int bufferSize, 
+			CompressionPolicy compressionPolicy) {
+		this.serDe = serDe;
+		this.mimeType = mimeType;
+		this.requestObject = requestObject;
+		this.executor = executor;
+		this.buffer = new SharedOutputBuffer(bufferSize, HeapByteBufferAllocator.INSTANCE);
+		this.compressionPolicy = compressionPolicy;
+		
+		setChunked(true);
+		
+		if (compressionPolicy != null) {
+			setContentEncoding("gzip");
+		}
+	}
+
+	/**
+	 * @see org.apache.http.nio.entity.HttpAsyncContentProducer#produceContent(org.apache.http.nio.ContentEncoder, org.apache.http.nio.IOControl)
+	 */
+	@Override
+	public synchronized void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+		if (error != null) {
+			throw error;
+		}
+		
+		ioControl = ioctrl;
+		
+		if (!isStarted) {
+			isStarted = true;
+			
+			executor.execute(new Runnable() {
+				public void run() {
+					// only a successful serialization may complete the body, a failure must abort it
+					try {
+						OutputStream outputStream = new ContentOutputStream(buffer);
+						serialize(outputStream);
+						outputStream.close();
+					} catch (IOException e) {
+						fail(e);
+					} catch (Exception e) {
+						fail(new IOException(e));
+					}
+				}
+			});
+		}
+		
+		buffer.produceContent(encoder, ioctrl);
+	}
+	
+	/**
+	 * Aborts the exchange after the serializer failed.
+	 * 
+	 * @param e
+	 */
+	private void fail(IOException e) {
+		error = e;
+		buffer.shutdown();
+		
+		IOControl ioctrl = ioControl;
+		if (ioctrl != null) {
+			ioctrl.requestOutput();
+		}
+	}
+
+	/**
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		buffer.shutdown();
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#isRepeatable()
+	 */
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#getContentLength()
+	 */
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#getContent()
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		throw new UnsupportedOperationException("Streaming entities can only be written");
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#writeTo(java.io.OutputStream)
+	 */
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		serialize(outputStream);
+	}
+	
+	/**
+	 * Serializes the request object, gzipping it if the entity is compressed.
+	 * 
+	 * @param outputStream
+	 * @throws IOException
+	 */
+	private void serialize(OutputStream outputStream) throws IOException {
+		if (compressionPolicy == null) {
+			serDe.serialize(mimeType, requestObject, outputStream);
+			
+			return;
+		}
+		
+		CountingOutputStream compressed = new CountingOutputStream(outputStream);
+		GZIPOutputStream gzipOutputStream = compressionPolicy.createOutputStream(compressed);
+		CountingOutputStream uncompressed = new CountingOutputStream(gzipOutputStream);
+		
+		serDe.serialize(mimeType, requestObject, uncompressed);
+		
+		// leaves the stream underneath open
+		gzipOutputStream.finish();
+		
+		compressionPolicy.sent(uncompressed.count, compressed.count);
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#isStreaming()
+	 */
+	@Override
+	public boolean isStreaming() {
+		return true;
+	}
+	
+	/**
+	 * Counts the bytes written through it.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+		
+		/**
+		 * @param outputStream
+		 */
+		private CountingOutputStream(OutputStream outputStream) {
+			super(outputStream);
+		}
+		
+		/**
+		 * @see java.io.FilterOutputStream#write(int)
+		 */
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+		
+		/**
+		 * @see java.io.FilterOutputStream#write(byte[], int, int)
+		 */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
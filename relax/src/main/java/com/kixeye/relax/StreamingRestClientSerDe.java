@@ -0,0 +1,52 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A Serializer/Deserializer that can stream bodies in both directions.
+ * 
+ * @author ebahtijaragic
+ */
+public interface StreamingRestClientSerDe extends RestClientSerDe {
+	/**
+	 * Serializes an object into a stream. Writes block while the request buffer is full, 
+	 * so this is called on the client's serialization executor, never on an I/O thread.
+	 * 
+	 * @param mimeType
+	 * @param obj
+	 * @param outputStream
+	 * @throws IOException
+	 */
+	public void serialize(String mimeType, Object obj, OutputStream outputStream) throws IOException;
+	
+	/**
+	 * Creates a decoder that is fed the response body chunk by chunk.
+	 * 
+	 * @param mimeType
+	 * @param clazz
+	 * @return
+	 * @throws IOException
+	 */
+	public <T> RestClientDecoder<T> createDecoder(String mimeType, Class<T> clazz) throws IOException;
+}
@@ -0,0 +1,50 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+/**
+ * Fails a stream whose response was not a success, so it has no elements to deliver.
+ * 
+ * @author ebahtijaragic
+ */
+public class UnexpectedStatusException extends IOException {
+	private static final long serialVersionUID = 1L;
+	
+	private final int statusCode;
+	
+	/**
+	 * @param statusCode
+	 */
+	public UnexpectedStatusException(int statusCode) {
+		super("Unexpected response status: " + statusCode);
+		
+		this.statusCode = statusCode;
+	}
+	
+	/**
+	 * @return the status code of the response
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+}
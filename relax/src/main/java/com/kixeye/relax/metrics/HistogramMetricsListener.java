@@ -0,0 +1,341 @@
+package com.kixeye.relax.metrics;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link RestClientMetricsListener} that keeps a {@link LatencyHistogram} and status code counters 
+ * per method and path template, and exports them in the Prometheus text format.
+ * 
+ * @author ebahtijaragic
+ */
+public class HistogramMetricsListener implements RestClientMetricsListener {
+	public static final String DEFAULT_METRIC_PREFIX = "relax_client";
+	
+	private static final double[] EXPORTED_PERCENTILES = new double[] { 50.0, 90.0, 99.0, 99.9 };
+	private static final String[] EXPORTED_QUANTILES = new String[] { "0.5", "0.9", "0.99", "0.999" };
+	
+	private final String metricPrefix;
+	
+	private final ConcurrentMap<String, ConcurrentMap<String, EndpointMetrics>> endpoints = new ConcurrentHashMap<>();
+	
+	/**
+	 * Creates a listener with the default metric prefix.
+	 */
+	public HistogramMetricsListener() {
+		this(DEFAULT_METRIC_PREFIX);
+	}
+	
+	/**
+	 * @param metricPrefix prepended to every exported metric name
+	 */
+	public HistogramMetricsListener(String metricPrefix) {
+		this.metricPrefix = metricPrefix;
+	}
+
+	/**
+	 * @see com.kixeye.relax.metrics.RestClientMetricsListener#requestStarted(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void requestStarted(String method, String pathTemplate) {
+		getOrCreateEndpoint(method, pathTemplate).inFlight.incrementAndGet();
+	}
+
+	/**
+	 * @see com.kixeye.relax.metrics.RestClientMetricsListener#requestCompleted(java.lang.String, java.lang.String, int, long)
+	 */
+	@Override
+	public void requestCompleted(String method, String pathTemplate, int statusCode, long durationNanos) {
+		EndpointMetrics endpoint = getOrCreateEndpoint(method, pathTemplate);
+		
+		endpoint.inFlight.decrementAndGet();
+		endpoint.latency.record(durationNanos);
+		endpoint.statusCounts.incrementAndGet(statusCode > 0 && statusCode < EndpointMetrics.MAX_STATUS_CODE ? statusCode : 0);
+	}
+
+	/**
+	 * @see com.kixeye.relax.metrics.RestClientMetricsListener#requestFailed(java.lang.String, java.lang.String, java.lang.Exception, long)
+	 */
+	@Override
+	public void requestFailed(String method, String pathTemplate, Exception error, long durationNanos) {
+		EndpointMetrics endpoint = getOrCreateEndpoint(method, pathTemplate);
+		
+		endpoint.inFlight.decrementAndGet();
+		endpoint.failures.incrementAndGet();
+	}
+
+	/**
+	 * @see com.kixeye.relax.metrics.RestClientMetricsListener#requestCancelled(java.lang.String, java.lang.String, long)
+	 */
+	@Override
+	public void requestCancelled(String method, String pathTemplate, long durationNanos) {
+		EndpointMetrics endpoint = getOrCreateEndpoint(method, pathTemplate);
+		
+		endpoint.inFlight.decrementAndGet();
+		endpoint.cancellations.incrementAndGet();
+	}
+	
+	/**
+	 * Gets the metrics of an endpoint.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @return the metrics or null if the endpoint was never called
+	 */
+	public EndpointMetrics getEndpointMetrics(String method, String pathTemplate) {
+		ConcurrentMap<String, EndpointMetrics> paths = endpoints.get(method);
+		
+		return paths == null ? null : paths.get(pathTemplate);
+	}
+	
+	/**
+	 * Writes every endpoint's metrics in the Prometheus text exposition format. Latencies are exported as summaries in seconds.
+	 * 
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writePrometheus(Appendable writer) throws IOException {
+		Map<String, EndpointMetrics> sortedEndpoints = new TreeMap<>();
+		
+		for (Entry<String, ConcurrentMap<String, EndpointMetrics>> method : endpoints.entrySet()) {
+			for (Entry<String, EndpointMetrics> path : method.getValue().entrySet()) {
+				sortedEndpoints.put(labels(method.getKey(), path.getKey()), path.getValue());
+			}
+		}
+		
+		String name = metricPrefix + "_request_duration_seconds";
+		writer.append("# HELP ").append(name).append(" Response latency by method and path template.\n");
+		writer.append("# TYPE ").append(name).append(" summary\n");
+		for (Entry<String, EndpointMetrics> endpoint : sortedEndpoints.entrySet()) {
+			LatencyHistogram latency = endpoint.getValue().latency;
+			long[] values = latency.getValuesAtPercentiles(EXPORTED_PERCENTILES);
+			
+			for (int i = 0; i < values.length; i++) {
+				writer.append(name).append('{').append(endpoint.getKey()).append(",quantile=\"").append(EXPORTED_QUANTILES[i]).append("\"} ")
+					.append(toSeconds(values[i])).append('\n');
+			}
+			writer.append(name).append("_sum{").append(endpoint.getKey()).append("} ").append(toSeconds(latency.getSum())).append('\n');
+			writer.append(name).append("_count{").append(endpoint.getKey()).append("} ").append(Long.toString(latency.getCount())).append('\n');
+		}
+		
+		name = metricPrefix + "_responses_total";
+		writer.append("# HELP ").append(name).append(" Responses by method, path template and status code.\n");
+		writer.append("# TYPE ").append(name).append(" counter\n");
+		for (Entry<String, EndpointMetrics> endpoint : sortedEndpoints.entrySet()) {
+			AtomicLongArray statusCounts = endpoint.getValue().statusCounts;
+			
+			for (int statusCode = 0; statusCode < EndpointMetrics.MAX_STATUS_CODE; statusCode++) {
+				long count = statusCounts.get(statusCode);
+				
+				if (count > 0) {
+					writer.append(name).append('{').append(endpoint.getKey()).append(",status=\"").append(statusCode == 0 ? "other" : Integer.toString(statusCode)).append("\"} ")
+						.append(Long.toString(count)).append('\n');
+				}
+			}
+		}
+		
+		name = metricPrefix + "_request_failures_total";
+		writer.append("# HELP ").append(name).append(" Requests that failed without a response.\n");
+		writer.append("# TYPE ").append(name).append(" counter\n");
+		for (Entry<String, EndpointMetrics> endpoint : sortedEndpoints.entrySet()) {
+			writer.append(name).append('{').append(endpoint.getKey()).append("} ").append(Long.toString(endpoint.getValue().failures.get())).append('\n');
+		}
+		
+		name = metricPrefix + "_request_cancellations_total";
+		writer.append("# HELP ").append(name).append(" Requests that were cancelled.\n");
+		writer.append("# TYPE ").append(name).append(" counter\n");
+		for (Entry<String, EndpointMetrics> endpoint : sortedEndpoints.entrySet()) {
+			writer.append(name).append('{').append(endpoint.getKey()).append("} ").append(Long.toString(endpoint.getValue().cancellations.get())).append('\n');
+		}
+		
+		name = metricPrefix + "_requests_in_flight";
+		writer.append("# HELP ").append(name).append(" Requests currently in flight.\n");
+		writer.append("# TYPE ").append(name).append(" gauge\n");
+		for (Entry<String, EndpointMetrics> endpoint : sortedEndpoints.entrySet()) {
+			writer.append(name).append('{').append(endpoint.getKey()).append("} ").append(Long.toString(endpoint.getValue().inFlight.get())).append('\n');
+		}
+	}
+	
+	/**
+	 * Gets every endpoint's metrics in the Prometheus text exposition format.
+	 * 
+	 * @return
+	 */
+	public String toPrometheusText() {
+		StringBuilder builder = new StringBuilder(1024);
+		
+		try {
+			writePrometheus(builder);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+			throw new IllegalStateException(e);
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Gets or creates the metrics of an endpoint.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @return
+	 */
+	private EndpointMetrics getOrCreateEndpoint(String method, String pathTemplate) {
+		ConcurrentMap<String, EndpointMetrics> paths = endpoints.get(method);
+		
+		if (paths == null) {
+			ConcurrentMap<String, EndpointMetrics> newPaths = new ConcurrentHashMap<>();
+			
+			paths = endpoints.putIfAbsent(method, newPaths);
+			if (paths == null) {
+				paths = newPaths;
+			}
+		}
+		
+		EndpointMetrics endpoint = paths.get(pathTemplate);
+		
+		if (endpoint == null) {
+			EndpointMetrics newEndpoint = new EndpointMetrics();
+			
+			endpoint = paths.putIfAbsent(pathTemplate, newEndpoint);
+			if (endpoint == null) {
+				endpoint = newEndpoint;
+			}
+		}
+		
+		return endpoint;
+	}
+	
+	/**
+	 * Formats the method and path labels.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @return
+	 */
+	private static String labels(String method, String pathTemplate) {
+		StringBuilder builder = new StringBuilder(method.length() + pathTemplate.length() + 20);
+		
+		builder.append("method=\"");
+		escapeLabelValue(method, builder);
+		builder.append("\",path=\"");
+		escapeLabelValue(pathTemplate, builder);
+		builder.append('"');
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Escapes a label value as the text format requires.
+	 * 
+	 * @param value
+	 * @param builder
+	 */
+	private static void escapeLabelValue(String value, StringBuilder builder) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			
+			switch (c) {
+				case '\\':
+					builder.append("\\\\");
+					break;
+				case '"':
+					builder.append("\\\"");
+					break;
+				case '\n':
+					builder.append("\\n");
+					break;
+				default:
+					builder.append(c);
+			}
+		}
+	}
+	
+	/**
+	 * Converts nanos to seconds.
+	 * 
+	 * @param nanos
+	 * @return
+	 */
+	private static String toSeconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+	
+	/**
+	 * The metrics of a single method and path template.
+	 * 
+	 * @author ebahtijaragic
+	 */
+	public static class EndpointMetrics {
+		private static final int MAX_STATUS_CODE = 600;
+		
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS_CODE);
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong cancellations = new AtomicLong();
+		private final AtomicLong inFlight = new AtomicLong();
+		
+		/**
+		 * @return the latencies, in nanos, of requests that received a response
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+		
+		/**
+		 * @param statusCode
+		 * @return the number of responses with the given status code
+		 */
+		public long getStatusCount(int statusCode) {
+			return statusCode > 0 && statusCode < MAX_STATUS_CODE ? statusCounts.get(statusCode) : 0;
+		}
+		
+		/**
+		 * @return the number of requests that failed without a response
+		 */
+		public long getFailureCount() {
+			return failures.get();
+		}
+		
+		/**
+		 * @return the number of requests that were cancelled
+		 */
+		public long getCancellationCount() {
+			return cancellations.get();
+		}
+		
+		/**
+		 * @return the number of requests currently in flight
+		 */
+		public long getInFlightCount() {
+			return inFlight.get();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.kixeye.relax.metrics;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, fixed-size latency histogram in the style of HdrHistogram.
+ * 
+ * <p>Values are bucketed by power of two, and every power of two is split into 
+ * {@value #SUB_BUCKET_COUNT} linear sub-buckets, so recorded values keep about two significant 
+ * digits (under 1.6% error) between 1 and {@value #MAX_VALUE}. Larger values are clamped. Recording 
+ * is a single atomic increment and never allocates.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 6;
+	
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	public static final long MAX_VALUE = (1L << 40) - 1;
+	
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (40 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Records a value.
+	 * 
+	 * @param value negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		} else if (value > MAX_VALUE) {
+			value = MAX_VALUE;
+		}
+		
+		counts.incrementAndGet(indexOf(value));
+		sum.addAndGet(value);
+		
+		long currentMax;
+		while (value > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, value)) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the number of recorded values.
+	 * 
+	 * @return
+	 */
+	public long getCount() {
+		long count = 0;
+		
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += counts.get(i);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Gets the sum of all recorded values.
+	 * 
+	 * @return
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+	
+	/**
+	 * Gets the largest recorded value.
+	 * 
+	 * @return
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Gets the value at the given percentile, or 0 if nothing was recorded.
+	 * 
+	 * <p>The result is the highest value that is equivalent to the bucket the percentile fell into, 
+	 * so it never under-reports.</p>
+	 * 
+	 * @param percentile between 0 and 100
+	 * @return
+	 */
+	public long getValueAtPercentile(double percentile) {
+		return getValuesAtPercentiles(percentile)[0];
+	}
+	
+	/**
+	 * Gets the values at the given percentiles in a single pass over a consistent view of the counts.
+	 * 
+	 * @param percentiles each between 0 and 100, in ascending order
+	 * @return
+	 */
+	public long[] getValuesAtPercentiles(double... percentiles) {
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		
+		long[] values = new long[percentiles.length];
+		if (total == 0) {
+			return values;
+		}
+		
+		long seen = 0;
+		int index = 0;
+		
+		for (int p = 0; p < percentiles.length; p++) {
+			double percentile = Math.min(Math.max(percentiles[p], 0.0), 100.0);
+			long target = Math.max(1, (long)Math.ceil(percentile / 100.0 * total));
+			
+			while (seen + snapshot[index] < target) {
+				seen += snapshot[index];
+				index++;
+			}
+			
+			values[p] = Math.min(highestEquivalentValue(index), max.get());
+		}
+		
+		return values;
+	}
+	
+	/**
+	 * Gets the bucket index of a value.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int)value;
+		}
+		
+		int octave = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		
+		return SUB_BUCKET_COUNT + (octave << SUB_BUCKET_BITS) + (int)((value >>> octave) - SUB_BUCKET_COUNT);
+	}
+	
+	/**
+	 * Gets the highest value that falls into the given bucket.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	static long highestEquivalentValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		
+		int octave = (index - SUB_BUCKET_COUNT) >>> SUB_BUCKET_BITS;
+		long subBucket = SUB_BUCKET_COUNT + ((index - SUB_BUCKET_COUNT) & (SUB_BUCKET_COUNT - 1));
+		
+		return ((subBucket + 1) << octave) - 1;
+	}
+}
@@ -0,0 +1,69 @@
+package com.kixeye.relax.metrics;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Receives the lifecycle of every request a rest client executes.
+ * 
+ * <p>Requests are identified by their HTTP method and the unexpanded path template that was 
+ * passed to the client (e.g. "/users/{id}"), never the expanded URL, so that the number of 
+ * distinct endpoints stays bounded. Callbacks are made on I/O dispatcher threads and must not block.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public interface RestClientMetricsListener {
+	/**
+	 * Called before a request is handed to the http client.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 */
+	public void requestStarted(String method, String pathTemplate);
+	
+	/**
+	 * Called when a response has been received, whatever its status.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @param statusCode
+	 * @param durationNanos
+	 */
+	public void requestCompleted(String method, String pathTemplate, int statusCode, long durationNanos);
+	
+	/**
+	 * Called when a request failed without a response.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @param error
+	 * @param durationNanos
+	 */
+	public void requestFailed(String method, String pathTemplate, Exception error, long durationNanos);
+	
+	/**
+	 * Called when a request was cancelled before a response was received.
+	 * 
+	 * @param method
+	 * @param pathTemplate
+	 * @param durationNanos
+	 */
+	public void requestCancelled(String method, String pathTemplate, long durationNanos);
+}
@@ -0,0 +1,146 @@
+package com.kixeye.relax.util;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of reusable byte arrays bucketed into power of two size classes.
+ * 
+ * <p>Requests larger than the biggest size class are allocated and dropped as usual.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public class ByteArrayPool {
+	public static final int DEFAULT_MIN_BUFFER_SIZE = 1024;
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 4 * 1024 * 1024;
+	public static final int DEFAULT_MAX_BUFFERS_PER_SIZE = 64;
+	
+	private final int minShift;
+	private final int maxBufferSize;
+	private final int maxBuffersPerSize;
+	
+	private final Queue<byte[]>[] sizeClasses;
+	private final AtomicInteger[] sizeClassCounts;
+	
+	/**
+	 * Creates a pool with the default sizes.
+	 */
+	public ByteArrayPool() {
+		this(DEFAULT_MIN_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_BUFFERS_PER_SIZE);
+	}
+	
+	/**
+	 * @param minBufferSize the smallest size class, rounded up to a power of two
+	 * @param maxBufferSize the largest size class, rounded up to a power of two
+	 * @param maxBuffersPerSize the most idle buffers kept per size class
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public ByteArrayPool(int minBufferSize, int maxBufferSize, int maxBuffersPerSize) {
+		if (minBufferSize <= 0 || maxBufferSize < minBufferSize || maxBufferSize > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid buffer sizes: " + minBufferSize + " - " + maxBufferSize);
+		}
+		
+		this.minShift = shiftFor(minBufferSize);
+		this.maxBufferSize = 1 << shiftFor(maxBufferSize);
+		this.maxBuffersPerSize = maxBuffersPerSize;
+		
+		int classCount = shiftFor(maxBufferSize) - minShift + 1;
+		this.sizeClasses = new Queue[classCount];
+		this.sizeClassCounts = new AtomicInteger[classCount];
+		
+		for (int i = 0; i < classCount; i++) {
+			sizeClasses[i] = new ConcurrentLinkedQueue<>();
+			sizeClassCounts[i] = new AtomicInteger(0);
+		}
+	}
+	
+	/**
+	 * Acquires a buffer of at least the given capacity.
+	 * 
+	 * @param minCapacity
+	 * @return
+	 */
+	public byte[] acquire(int minCapacity) {
+		if (minCapacity > maxBufferSize) {
+			return new byte[minCapacity];
+		}
+		
+		int sizeClass = sizeClassFor(minCapacity);
+		byte[] buffer = sizeClasses[sizeClass].poll();
+		
+		if (buffer != null) {
+			sizeClassCounts[sizeClass].decrementAndGet();
+			
+			return buffer;
+		}
+		
+		return new byte[1 << (sizeClass + minShift)];
+	}
+	
+	/**
+	 * Returns a buffer to the pool. Buffers that were not handed out by a pool with the same sizes are dropped.
+	 * 
+	 * @param buffer
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null || buffer.length > maxBufferSize || Integer.bitCount(buffer.length) != 1 || buffer.length < (1 << minShift)) {
+			return;
+		}
+		
+		int sizeClass = sizeClassFor(buffer.length);
+		
+		if (sizeClassCounts[sizeClass].incrementAndGet() <= maxBuffersPerSize) {
+			sizeClasses[sizeClass].offer(buffer);
+		} else {
+			sizeClassCounts[sizeClass].decrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return the largest buffer size that is pooled
+	 */
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+	
+	/**
+	 * Returns the size class index for a capacity.
+	 * 
+	 * @param capacity
+	 * @return
+	 */
+	private int sizeClassFor(int capacity) {
+		return Math.max(0, shiftFor(capacity) - minShift);
+	}
+	
+	/**
+	 * Returns the exponent of the smallest power of two that fits the capacity.
+	 * 
+	 * @param capacity
+	 * @return
+	 */
+	private static int shiftFor(int capacity) {
+		return capacity <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+	}
+}
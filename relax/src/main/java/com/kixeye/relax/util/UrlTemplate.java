@@ -0,0 +1,322 @@
+package com.kixeye.relax.util;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A URL template that is parsed once into literal and variable segments.
+ * 
+ * <p>Variables are written as "{}" or "{name}" and are replaced by position; names are informational. 
+ * Values are encoded like {@link java.net.URLEncoder} with UTF-8. Variables without a value, 
+ * and a "{" without a closing "}", are left as they are.</p>
+ * 
+ * <p>Templates are immutable and safe to share between threads.</p>
+ * 
+ * @author ebahtijaragic
+ */
+public final class UrlTemplate {
+	private static final int ESTIMATED_VALUE_LENGTH = 16;
+	
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	
+	private final String template;
+	
+	// literals[i] precedes variables[i], the last literal trails the last variable
+	private final String[] literals;
+	private final String[] variables;
+	
+	private final int literalLength;
+	// whether a literal starts a query string
+	private final boolean hasQuery;
+	
+	/**
+	 * @param template
+	 * @param literals
+	 * @param variables
+	 */
+	private UrlTemplate(String template, String[] literals, String[] variables) {
+		this.template = template;
+		this.literals = literals;
+		this.variables = variables;
+		
+		int literalLength = 0;
+		boolean hasQuery = false;
+		for (String literal : literals) {
+			literalLength += literal.length();
+			hasQuery |= literal.indexOf('?') != -1;
+		}
+		
+		this.literalLength = literalLength;
+		this.hasQuery = hasQuery;
+	}
+	
+	/**
+	 * Compiles a template.
+	 * 
+	 * @param template
+	 * @return
+	 */
+	public static UrlTemplate compile(String template) {
+		List<String> literals = new ArrayList<>();
+		List<String> variables = new ArrayList<>();
+		
+		int lastIndex = 0;
+		int startIndex;
+		
+		while ((startIndex = template.indexOf('{', lastIndex)) != -1) {
+			int endIndex = template.indexOf('}', startIndex);
+			
+			if (endIndex == -1) {
+				break;
+			}
+			
+			literals.add(template.substring(lastIndex, startIndex));
+			variables.add(template.substring(startIndex, endIndex + 1));
+			
+			lastIndex = endIndex + 1;
+		}
+		
+		literals.add(template.substring(lastIndex));
+		
+		return new UrlTemplate(template, literals.toArray(new String[literals.size()]), variables.toArray(new String[variables.size()]));
+	}
+	
+	/**
+	 * Gets the number of variables.
+	 * 
+	 * @return
+	 */
+	public int getVariableCount() {
+		return variables.length;
+	}
+	
+	/**
+	 * Expands the template.
+	 * 
+	 * @param values
+	 * @return
+	 */
+	public String expand(Object... values) {
+		return expand(null, values, null);
+	}
+	
+	/**
+	 * Expands the template behind a prefix, appending query parameters.
+	 * 
+	 * <p>Query parameter values that are arrays or {@link Iterable}s are repeated once per element, and null values are written without "=".</p>
+	 * 
+	 * @param prefix written as is, may be null
+	 * @param values the variable values, may be null
+	 * @param queryParameters may be null
+	 * @return
+	 */
+	public String expand(String prefix, Object[] values, Map<String, ?> queryParameters) {
+		int valueCount = values == null ? 0 : Math.min(values.length, variables.length);
+		
+		StringBuilder builder = new StringBuilder((prefix == null ? 0 : prefix.length()) + literalLength 
+				+ (variables.length * ESTIMATED_VALUE_LENGTH) + (queryParameters == null ? 0 : queryParameters.size() * ESTIMATED_VALUE_LENGTH * 2));
+		
+		if (prefix != null) {
+			builder.append(prefix);
+		}
+		
+		appendTo(builder, values);
+		
+		if (queryParameters != null && !queryParameters.isEmpty()) {
+			boolean hasQuery = this.hasQuery;
+			
+			for (int i = valueCount; !hasQuery && i < variables.length; i++) {
+				hasQuery = variables[i].indexOf('?') != -1;
+			}
+			
+			appendQuery(builder, hasQuery, queryParameters);
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Appends the expanded template to a builder.
+	 * 
+	 * @param builder
+	 * @param values the variable values, may be null
+	 */
+	public void appendTo(StringBuilder builder, Object[] values) {
+		int valueCount = values == null ? 0 : Math.min(values.length, variables.length);
+		
+		for (int i = 0; i < variables.length; i++) {
+			builder.append(literals[i]);
+			
+			if (i < valueCount) {
+				encode(String.valueOf(values[i]), builder);
+			} else {
+				builder.append(variables[i]);
+			}
+		}
+		
+		builder.append(literals[variables.length]);
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return template;
+	}
+	
+	/**
+	 * Appends query parameters.
+	 * 
+	 * @param builder
+	 * @param hasQuery
+	 * @param queryParameters
+	 */
+	private static void appendQuery(StringBuilder builder, boolean hasQuery, Map<String, ?> queryParameters) {
+		char separator;
+		
+		if (!hasQuery) {
+			separator = '?';
+		} else {
+			char last = builder.charAt(builder.length() - 1);
+			
+			separator = (last == '?' || last == '&') ? 0 : '&';
+		}
+		
+		for (Entry<String, ?> parameter : queryParameters.entrySet()) {
+			Object value = parameter.getValue();
+			
+			if (value instanceof Iterable) {
+				for (Object element : (Iterable<?>)value) {
+					separator = appendQueryParameter(builder, separator, parameter.getKey(), element);
+				}
+			} else if (value != null && value.getClass().isArray()) {
+				for (int i = 0, length = Array.getLength(value); i < length; i++) {
+					separator = appendQueryParameter(builder, separator, parameter.getKey(), Array.get(value, i));
+				}
+			} else {
+				separator = appendQueryParameter(builder, separator, parameter.getKey(), value);
+			}
+		}
+	}
+	
+	/**
+	 * Appends a single query parameter.
+	 * 
+	 * @param builder
+	 * @param separator the separator to write first, or 0 for none
+	 * @param name
+	 * @param value
+	 * @return the next separator
+	 */
+	private static char appendQueryParameter(StringBuilder builder, char separator, String name, Object value) {
+		if (separator != 0) {
+			builder.append(separator);
+		}
+		
+		encode(name, builder);
+		
+		if (value != null) {
+			builder.append('=');
+			encode(value.toString(), builder);
+		}
+		
+		return '&';
+	}
+	
+	/**
+	 * Encodes a value the way {@link java.net.URLEncoder} does with UTF-8, without allocating for values that need no encoding.
+	 * 
+	 * @param value
+	 * @param builder
+	 */
+	static void encode(String value, StringBuilder builder) {
+		int length = value.length();
+		int safeLength = 0;
+		
+		while (safeLength < length && isUnreserved(value.charAt(safeLength))) {
+			safeLength++;
+		}
+		
+		if (safeLength == length) {
+			builder.append(value);
+			
+			return;
+		}
+		
+		builder.append(value, 0, safeLength);
+		
+		for (int i = safeLength; i < length; i++) {
+			char c = value.charAt(i);
+			
+			if (isUnreserved(c)) {
+				builder.append(c);
+			} else if (c == ' ') {
+				builder.append('+');
+			} else if (c < 0x80) {
+				appendEscaped(c, builder);
+			} else if (c < 0x800) {
+				appendEscaped(0xC0 | (c >> 6), builder);
+				appendEscaped(0x80 | (c & 0x3F), builder);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				
+				appendEscaped(0xF0 | (codePoint >> 18), builder);
+				appendEscaped(0x80 | ((codePoint >> 12) & 0x3F), builder);
+				appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), builder);
+				appendEscaped(0x80 | (codePoint & 0x3F), builder);
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogates are replaced with '?' by the UTF-8 encoder
+				appendEscaped('?', builder);
+			} else {
+				appendEscaped(0xE0 | (c >> 12), builder);
+				appendEscaped(0x80 | ((c >> 6) & 0x3F), builder);
+				appendEscaped(0x80 | (c & 0x3F), builder);
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if the character is written as is.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	private static boolean isUnreserved(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') 
+				|| c == '.' || c == '-' || c == '*' || c == '_';
+	}
+	
+	/**
+	 * Appends a percent-escaped byte.
+	 * 
+	 * @param b
+	 * @param builder
+	 */
+	private static void appendEscaped(int b, StringBuilder builder) {
+		builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+	}
+}
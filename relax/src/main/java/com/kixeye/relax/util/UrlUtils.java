@@ -21,9 +21,6 @@ package com.kixeye.relax.util;
  */
 
 import java.io.IOException;
-import java.io.StringWriter;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 
 /**
  * A simple URL template parser.
@@ -34,35 +31,13 @@ public final class UrlUtils {
 	private UrlUtils() {}
 	
 	/**
-	 * Expands the template.
+	 * Expands the template. Callers that expand the same template repeatedly should compile a {@link UrlTemplate} once instead.
 	 * 
 	 * @param objects
 	 * @return
 	 * @throws IOException 
 	 */
 	public static String expand(final String template, Object... objects) throws IOException {
-		StringWriter writer = new StringWriter();
-
-		int currentIndex = 0;
-		int currentCount = 0;
-		int lastIndex = 0;
-		
-		while ((currentIndex = template.indexOf("{", lastIndex)) != -1 && currentCount < objects.length) {
-			writer.write(template.substring(lastIndex, currentIndex));
-			
-			if ((currentIndex = template.indexOf("}", currentIndex)) != -1) {
-				writer.write(URLEncoder.encode("" + objects[currentCount], StandardCharsets.UTF_8.name()));
-				currentCount++;
-				lastIndex = currentIndex + 1;
-			} else {
-				break;
-			}
-		}
-		
-		if (lastIndex < template.length()) {
-			writer.write(template.substring(lastIndex));
-		}
-		
-		return writer.toString();
+		return UrlTemplate.compile(template).expand(objects);
 	}
 }
@@ -0,0 +1,100 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link AsyncBlockingRestClient}
+ * 
+ * @author ebahtijaragic
+ */
+public class AsyncBlockingRestClientTest {
+	@Test
+	public void testReturnsResponse() throws Exception {
+		final DeferredTransport transport = new DeferredTransport();
+		
+		BlockingRestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport).buildBlocking(5, TimeUnit.SECONDS);
+		
+		Thread responder = new Thread() {
+			public void run() {
+				try {
+					transport.exchanges.poll(5, TimeUnit.SECONDS).complete(200);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		responder.start();
+		
+		try {
+			Assert.assertEquals(200, client.get("/things/{}", null, Void.class, 1).getStatusCode());
+		} finally {
+			responder.join();
+			client.close();
+		}
+	}
+	
+	@Test
+	public void testTimeoutAbortsExchange() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		
+		BlockingRestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport).buildBlocking(50, TimeUnit.MILLISECONDS);
+		
+		try {
+			client.delete("/things/{}", 1);
+			Assert.fail("Expected a timeout");
+		} catch (RequestTimeoutException e) {
+			Assert.assertEquals(50, e.getTimeoutMillis());
+		}
+		
+		Assert.assertTrue(transport.exchanges.poll().future.isCancelled());
+		
+		client.close();
+	}
+	
+	@Test
+	public void testInterruptAbortsExchange() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		
+		BlockingRestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport).buildBlocking(5, TimeUnit.SECONDS);
+		
+		Thread.currentThread().interrupt();
+		
+		try {
+			client.get("/things/{}", null, Void.class, 1);
+			Assert.fail("Expected an interrupt");
+		} catch (RequestTimeoutException e) {
+			Assert.fail("Expected an interrupt, not a timeout");
+		} catch (InterruptedIOException e) {
+			// the interrupt is kept for the caller
+			Assert.assertTrue(Thread.interrupted());
+		}
+		
+		Assert.assertTrue(transport.exchanges.poll().future.isCancelled());
+		
+		client.close();
+	}
+}
@@ -0,0 +1,137 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link AsyncRestClientResponseConsumer}
+ * 
+ * @author ebahtijaragic
+ */
+public class AsyncRestClientResponseConsumerTest {
+	@Test
+	public void testSuccessIsDecodedAsItArrives() throws Exception {
+		HttpResponse<String> response = consume(200, "application/json", "\"ok\"");
+		
+		Assert.assertEquals(200, response.getStatusCode());
+		Assert.assertTrue(response.getBody().isDeserialized());
+		Assert.assertEquals("ok", response.getBody().deserialize());
+	}
+	
+	@Test
+	public void testErrorBodyIsKeptRaw() throws Exception {
+		HttpResponse<String> response = consume(500, "text/html", "<html>Internal Server Error</html>");
+		
+		Assert.assertEquals(500, response.getStatusCode());
+		Assert.assertFalse(response.getBody().isDeserialized());
+		Assert.assertEquals("<html>Internal Server Error</html>", 
+				new String(response.getBody().getData(), 0, response.getBody().getDataLength(), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testEncodedResponseWithoutBody() throws Exception {
+		AsyncRestClientResponseConsumer<String> consumer = new AsyncRestClientResponseConsumer<>(new QuotedStringSerDe(), String.class, null, false, true, 
+				new CompressionPolicy());
+		
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, null);
+		response.setHeader("Content-Encoding", "gzip");
+		
+		consumer.responseReceived(response);
+		consumer.responseCompleted(new BasicHttpContext());
+		
+		Assert.assertNull(consumer.getException());
+		Assert.assertEquals(304, consumer.getResult().getStatusCode());
+		Assert.assertEquals("gzip", consumer.getResult().getFirstHeader("Content-Encoding"));
+	}
+	
+	private static HttpResponse<String> consume(int statusCode, String contentType, String body) throws Exception {
+		AsyncRestClientResponseConsumer<String> consumer = new AsyncRestClientResponseConsumer<>(new QuotedStringSerDe(), String.class, null, false, true, null);
+		
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+		response.setHeader("Content-Type", contentType);
+		response.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+		
+		consumer.responseReceived(response);
+		consumer.consumeContent(new TestContent.Decoder(body), new TestContent.Control());
+		consumer.responseCompleted(new BasicHttpContext());
+		
+		Assert.assertNull(consumer.getException());
+		
+		return consumer.getResult();
+	}
+	
+	/**
+	 * Decodes JSON strings only, failing on anything else.
+	 */
+	private static class QuotedStringSerDe implements StreamingRestClientSerDe {
+		@Override
+		public byte[] serialize(String mimeType, Object obj) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void serialize(String mimeType, Object obj, OutputStream outputStream) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <T> T deserialize(String mimeType, byte[] data, int offset, int length, Class<T> clazz) throws IOException {
+			return clazz.cast(unquote(new String(data, offset, length, StandardCharsets.UTF_8)));
+		}
+
+		@Override
+		public <T> RestClientDecoder<T> createDecoder(String mimeType, final Class<T> clazz) throws IOException {
+			return new RestClientDecoder<T>() {
+				private final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+				
+				@Override
+				public void decode(ByteBuffer chunk) throws IOException {
+					chunks.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+				}
+				
+				@Override
+				public T complete() throws IOException {
+					return clazz.cast(unquote(new String(chunks.toByteArray(), StandardCharsets.UTF_8)));
+				}
+			};
+		}
+		
+		private static String unquote(String value) throws IOException {
+			if (value.length() < 2 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"') {
+				throw new IOException("Not a JSON string: " + value);
+			}
+			
+			return value.substring(1, value.length() - 1);
+		}
+	}
+}
@@ -20,10 +20,16 @@ package com.kixeye.relax;
  * #L%
  */
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -124,6 +130,18 @@ public class AsyncRestClientTest {
 		}
 	}
 	
+	@Test
+	public void testGetStreaming() throws Exception {
+		try (RestClient client = RestClients.create(new StreamingTestSerDe()).build()) {
+			SerializedObject<TestObject> body = client.get("http://localhost:" + port + "/test", null, TestObject.class).waitForComplete(8, TimeUnit.SECONDS).get().getBody();
+			TestObject testObject = body.deserialize();
+			
+			Assert.assertNull(body.getData());
+			Assert.assertEquals("testString", testObject.getTestString());
+			Assert.assertEquals(port, testObject.getTestInt());
+		}
+	}
+	
 	@Test
 	public void testPost() throws Exception {
 		RestClientSerDe serDe = new RestClientSerDe() {
@@ -149,6 +167,22 @@ public class AsyncRestClientTest {
 		}
 	}
 	
+	@Test
+	public void testPostStreaming() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try (RestClient client = RestClients.create(new StreamingTestSerDe()).withSerializationExecutor(executor).build()) {
+			TestObject testObject = client
+					.post("http://localhost:" + port + "/test", null, null, new TestObject("testString", port), TestObject.class)
+					.waitForComplete(8, TimeUnit.SECONDS).get().getBody().deserialize();
+			
+			Assert.assertEquals("testString", testObject.getTestString());
+			Assert.assertEquals(port, testObject.getTestInt());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
 	@Test
 	public void testPut() throws Exception {
 		RestClientSerDe serDe = new RestClientSerDe() {
@@ -172,6 +206,59 @@ public class AsyncRestClientTest {
 		}
 	}
 	
+	@Test
+	public void testGetCoalesced() throws Exception {
+		try (RestClient client = RestClients.create(new StreamingTestSerDe()).withGetCoalescing(true).build()) {
+			List<HttpPromise<HttpResponse<TestObject>>> promises = new ArrayList<>();
+			
+			for (int i = 0; i < 10; i++) {
+				promises.add(client.get("http://localhost:" + port + "/test", null, TestObject.class));
+			}
+			
+			for (HttpResponse<TestObject> response : HttpPromise.allOf(promises).waitForComplete(8, TimeUnit.SECONDS).get()) {
+				TestObject testObject = response.getBody().deserialize();
+				
+				Assert.assertEquals("testString", testObject.getTestString());
+				Assert.assertEquals(port, testObject.getTestInt());
+			}
+		}
+	}
+	
+	public static class StreamingTestSerDe implements StreamingRestClientSerDe {
+		@Override
+		public byte[] serialize(String mimeType, Object obj) throws IOException {
+			return new ObjectMapper().writeValueAsBytes(obj);
+		}
+		
+		@Override
+		public void serialize(String mimeType, Object obj, OutputStream outputStream) throws IOException {
+			new ObjectMapper().writeValue(outputStream, obj);
+		}
+		
+		@Override
+		public <T> T deserialize(String mimeType, byte[] data, int offset,
+				int length, Class<T> clazz) throws IOException {
+			return new ObjectMapper().readValue(data, offset, length, clazz);
+		}
+		
+		@Override
+		public <T> RestClientDecoder<T> createDecoder(String mimeType, final Class<T> clazz) throws IOException {
+			return new RestClientDecoder<T>() {
+				private final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+				
+				@Override
+				public void decode(ByteBuffer chunk) throws IOException {
+					chunks.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+				}
+				
+				@Override
+				public T complete() throws IOException {
+					return new ObjectMapper().readValue(chunks.toByteArray(), clazz);
+				}
+			};
+		}
+	}
+	
 	public static class TestObject {
 		private String testString;
 		private int testInt;
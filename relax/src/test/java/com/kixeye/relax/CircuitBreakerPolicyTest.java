@@ -0,0 +1,163 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.kixeye.relax.CircuitBreakerPolicy.CircuitBreaker;
+import com.kixeye.relax.CircuitBreakerPolicy.State;
+
+/**
+ * Tests the {@link CircuitBreakerPolicy}
+ * 
+ * @author ebahtijaragic
+ */
+public class CircuitBreakerPolicyTest {
+	private static final HttpHost HOST = new HttpHost("localhost", 8080);
+	
+	@Test
+	public void testOpensOnFailureRate() throws Exception {
+		final List<String> transitions = new ArrayList<>();
+		
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy().withSlidingWindow(10, 4).withFailureRateThreshold(50)
+				.withListener(new CircuitBreakerPolicy.StateListener() {
+					public void stateChanged(HttpHost host, State from, State to) {
+						transitions.add(host.toHostString() + " " + from + "->" + to);
+					}
+				});
+		CircuitBreaker breaker = policy.getCircuitBreaker(HOST);
+		
+		for (int i = 0; i < 10; i++) {
+			breaker.completed(acquire(breaker), 1000, true);
+		}
+		for (int i = 0; i < 4; i++) {
+			breaker.completed(acquire(breaker), 1000, false);
+		}
+		Assert.assertEquals(State.CLOSED, policy.getState(HOST));
+		
+		breaker.completed(acquire(breaker), 1000, false);
+		Assert.assertEquals(State.OPEN, policy.getState(HOST));
+		
+		Assert.assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+		Assert.assertEquals(1, policy.getRejectedCount());
+		Assert.assertEquals(State.CLOSED, policy.getState(new HttpHost("otherhost", 8080)));
+		Assert.assertEquals(1, transitions.size());
+		Assert.assertEquals("localhost:8080 CLOSED->OPEN", transitions.get(0));
+	}
+	
+	@Test
+	public void testOpensOnSlowCallRate() throws Exception {
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy().withSlidingWindow(10, 4).withSlowCallThreshold(1, TimeUnit.SECONDS, 75);
+		CircuitBreaker breaker = policy.getCircuitBreaker(HOST);
+		
+		breaker.completed(acquire(breaker), TimeUnit.MILLISECONDS.toNanos(10), true);
+		for (int i = 0; i < 2; i++) {
+			breaker.completed(acquire(breaker), TimeUnit.SECONDS.toNanos(2), true);
+		}
+		Assert.assertEquals(State.CLOSED, breaker.getState());
+		
+		breaker.completed(acquire(breaker), TimeUnit.SECONDS.toNanos(2), true);
+		Assert.assertEquals(State.OPEN, breaker.getState());
+	}
+	
+	@Test
+	public void testHalfOpenProbes() throws Exception {
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy().withSlidingWindow(2, 2).withOpenDuration(50, TimeUnit.MILLISECONDS).withHalfOpenProbes(2);
+		CircuitBreaker breaker = policy.getCircuitBreaker(HOST);
+		
+		breaker.completed(acquire(breaker), 1000, false);
+		breaker.completed(acquire(breaker), 1000, false);
+		Assert.assertEquals(State.OPEN, breaker.getState());
+		Assert.assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+		
+		Thread.sleep(60);
+		
+		long probe = acquire(breaker);
+		Assert.assertEquals(State.HALF_OPEN, breaker.getState());
+		breaker.completed(probe, 1000, false);
+		Assert.assertEquals(State.OPEN, breaker.getState());
+		
+		Thread.sleep(60);
+		
+		long first = acquire(breaker);
+		long second = acquire(breaker);
+		Assert.assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+		
+		breaker.cancelled(second);
+		long third = acquire(breaker);
+		
+		breaker.completed(first, 1000, true);
+		Assert.assertEquals(State.HALF_OPEN, breaker.getState());
+		breaker.completed(third, 1000, true);
+		Assert.assertEquals(State.CLOSED, breaker.getState());
+		
+		breaker.completed(acquire(breaker), 1000, false);
+		Assert.assertEquals(State.CLOSED, breaker.getState());
+	}
+	
+	@Test
+	public void testStaleCallsAreNotProbes() throws Exception {
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy().withSlidingWindow(2, 2).withOpenDuration(50, TimeUnit.MILLISECONDS).withHalfOpenProbes(2);
+		CircuitBreaker breaker = policy.getCircuitBreaker(HOST);
+		
+		// let through while closed, still in flight when the breaker opens and then half opens
+		long[] stale = new long[4];
+		for (int i = 0; i < stale.length; i++) {
+			stale[i] = acquire(breaker);
+		}
+		
+		breaker.completed(stale[0], 1000, false);
+		breaker.completed(stale[1], 1000, false);
+		Assert.assertEquals(State.OPEN, breaker.getState());
+		
+		Thread.sleep(60);
+		
+		long probe = acquire(breaker);
+		Assert.assertEquals(State.HALF_OPEN, breaker.getState());
+		
+		// a stale success does not close the breaker, nor does a stale cancellation free a probe
+		breaker.completed(stale[2], 1000, true);
+		breaker.cancelled(stale[3]);
+		
+		acquire(breaker);
+		Assert.assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+		
+		breaker.completed(probe, 1000, true);
+		Assert.assertEquals(State.HALF_OPEN, breaker.getState());
+		
+		// nor does a stale failure re-open it
+		breaker.completed(stale[0], 1000, false);
+		Assert.assertEquals(State.HALF_OPEN, breaker.getState());
+	}
+	
+	private static long acquire(CircuitBreaker breaker) {
+		long call = breaker.tryAcquire();
+		Assert.assertNotEquals(CircuitBreaker.REJECTED, call);
+		
+		return call;
+	}
+}
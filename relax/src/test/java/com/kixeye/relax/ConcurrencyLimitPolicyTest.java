@@ -0,0 +1,135 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.kixeye.relax.ConcurrencyLimitPolicy.ConcurrencyLimiter;
+
+/**
+ * Tests the {@link ConcurrencyLimitPolicy}
+ * 
+ * @author ebahtijaragic
+ */
+public class ConcurrencyLimitPolicyTest {
+	private static final HttpHost HOST = new HttpHost("localhost", 8080);
+	
+	@Test
+	public void testRejectsOverLimit() throws Exception {
+		ConcurrencyLimitPolicy policy = new ConcurrencyLimitPolicy().withLimits(2, 1, 10);
+		ConcurrencyLimiter limiter = policy.getLimiter(HOST);
+		
+		List<String> events = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			limiter.acquire(new RecordingWaiter(events, i));
+		}
+		
+		Assert.assertEquals("[acquired 0, acquired 1, rejected 2 false]", events.toString());
+		Assert.assertEquals(2, policy.getInFlightCount(HOST));
+		Assert.assertEquals(1, policy.getRejectedCount());
+		Assert.assertEquals(2, policy.getLimit(new HttpHost("otherhost", 8080)));
+	}
+	
+	@Test
+	public void testAdaptsLimit() throws Exception {
+		ConcurrencyLimitPolicy policy = new ConcurrencyLimitPolicy().withLimits(4, 2, 5).withLatencyThreshold(1, TimeUnit.SECONDS);
+		ConcurrencyLimiter limiter = policy.getLimiter(HOST);
+		
+		List<String> events = new ArrayList<>();
+		
+		for (int i = 0; i < 20; i++) {
+			for (int j = 0; j < 3; j++) {
+				limiter.acquire(new RecordingWaiter(events, i));
+			}
+			for (int j = 0; j < 3; j++) {
+				limiter.completed(1000, false);
+			}
+		}
+		Assert.assertEquals(5, policy.getLimit(HOST));
+		
+		limiter.acquire(new RecordingWaiter(events, 0));
+		limiter.completed(TimeUnit.SECONDS.toNanos(2), false);
+		Assert.assertEquals(4, policy.getLimit(HOST));
+		
+		for (int i = 0; i < 10; i++) {
+			limiter.acquire(new RecordingWaiter(events, i));
+			limiter.completed(1000, true);
+		}
+		Assert.assertEquals(2, policy.getLimit(HOST));
+		Assert.assertEquals(0, policy.getInFlightCount(HOST));
+	}
+	
+	@Test
+	public void testQueues() throws Exception {
+		ConcurrencyLimitPolicy policy = new ConcurrencyLimitPolicy().withLimits(1, 1, 1).withQueue(1, 50, TimeUnit.MILLISECONDS);
+		ConcurrencyLimiter limiter = policy.getLimiter(HOST);
+		
+		List<String> events = new ArrayList<>();
+		limiter.acquire(new RecordingWaiter(events, 0));
+		limiter.acquire(new RecordingWaiter(events, 1));
+		limiter.acquire(new RecordingWaiter(events, 2));
+		Assert.assertEquals(1, policy.getQueuedCount(HOST));
+		
+		limiter.completed(1000, false);
+		Assert.assertEquals(0, policy.getQueuedCount(HOST));
+		Assert.assertEquals(1, policy.getInFlightCount(HOST));
+		
+		limiter.acquire(new RecordingWaiter(events, 3));
+		Thread.sleep(100);
+		
+		synchronized (events) {
+			Assert.assertEquals("[acquired 0, rejected 2 false, acquired 1, rejected 3 true]", events.toString());
+		}
+		Assert.assertEquals(0, policy.getQueuedCount(HOST));
+		Assert.assertEquals(2, policy.getRejectedCount());
+	}
+	
+	/**
+	 * Records what happened to a request.
+	 */
+	private static class RecordingWaiter implements ConcurrencyLimitPolicy.Waiter {
+		private final List<String> events;
+		private final int id;
+		
+		public RecordingWaiter(List<String> events, int id) {
+			this.events = events;
+			this.id = id;
+		}
+		
+		public void acquired() {
+			synchronized (events) {
+				events.add("acquired " + id);
+			}
+		}
+		
+		public void rejected(ConcurrencyLimitExceededException error) {
+			synchronized (events) {
+				events.add("rejected " + id + " " + error.isTimedOut());
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ContentInflater}
+ * 
+ * @author ebahtijaragic
+ */
+public class ContentInflaterTest {
+	@Test
+	public void testInflatesGzip() throws Exception {
+		byte[] data = createData(100000);
+		byte[] compressed = new CompressionPolicy().compress(data);
+		
+		Assert.assertTrue(compressed.length < data.length / 3);
+		Assert.assertArrayEquals(data, inflate(ContentInflater.create("gzip"), compressed, 4096));
+		Assert.assertArrayEquals(data, inflate(ContentInflater.create(" X-GZIP"), compressed, 1));
+	}
+	
+	@Test
+	public void testSkipsGzipHeaderFields() throws Exception {
+		byte[] data = createData(1000);
+		byte[] compressed = new CompressionPolicy().compress(data);
+		
+		ByteArrayOutputStream withFields = new ByteArrayOutputStream();
+		withFields.write(compressed, 0, 3);
+		// FHCRC, FEXTRA, FNAME and FCOMMENT
+		withFields.write(2 | 4 | 8 | 16);
+		withFields.write(compressed, 4, 6);
+		withFields.write(new byte[] { 3, 0, 'x', 'y', 'z' });
+		withFields.write("name.json\0".getBytes("US-ASCII"));
+		withFields.write("comment\0".getBytes("US-ASCII"));
+		withFields.write(new byte[] { 0, 0 });
+		withFields.write(compressed, 10, compressed.length - 10);
+		
+		Assert.assertArrayEquals(data, inflate(ContentInflater.create("gzip"), withFields.toByteArray(), 1));
+		Assert.assertArrayEquals(data, inflate(ContentInflater.create("gzip"), withFields.toByteArray(), 7));
+	}
+	
+	@Test
+	public void testInflatesDeflate() throws Exception {
+		byte[] data = createData(50000);
+		
+		for (boolean isRaw : new boolean[] { false, true }) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			
+			try (DeflaterOutputStream outputStream = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION, isRaw))) {
+				outputStream.write(data);
+			}
+			
+			Assert.assertArrayEquals(data, inflate(ContentInflater.create("deflate"), compressed.toByteArray(), 1000));
+		}
+		
+		Assert.assertNull(ContentInflater.create("br"));
+		Assert.assertNull(ContentInflater.create("identity"));
+	}
+	
+	@Test
+	public void testDetectsCorruption() throws Exception {
+		byte[] compressed = new CompressionPolicy().compress(createData(1000));
+		compressed[compressed.length - 6] ^= 1;
+		
+		try {
+			inflate(ContentInflater.create("gzip"), compressed, 4096);
+			Assert.fail("Expected a ZipException");
+		} catch (ZipException e) {
+			Assert.assertTrue(e.getMessage().contains("CRC"));
+		}
+		
+		ContentInflater truncated = ContentInflater.create("gzip");
+		Assert.assertFalse(inflateUnfinished(truncated, Arrays.copyOf(compressed, compressed.length - 4)));
+	}
+	
+	@Test
+	public void testCountsBytes() throws Exception {
+		CompressionPolicy policy = new CompressionPolicy().withRequestCompression(1024).withCompressionLevel(9);
+		
+		Assert.assertFalse(policy.isRequestCompressed(1023));
+		Assert.assertTrue(policy.isRequestCompressed(1024));
+		Assert.assertTrue(policy.isRequestCompressed(-1));
+		Assert.assertFalse(new CompressionPolicy().isRequestCompressed(1024));
+		
+		byte[] compressed = policy.compress(createData(10000));
+		
+		Assert.assertEquals(10000, policy.getUncompressedBytesSent());
+		Assert.assertEquals(compressed.length, policy.getCompressedBytesSent());
+	}
+	
+	/**
+	 * Creates compressible data.
+	 * 
+	 * @param length
+	 * @return
+	 */
+	private static byte[] createData(int length) {
+		Random random = new Random(42);
+		byte[] data = new byte[length];
+		
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte)('a' + random.nextInt(4));
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * Inflates data handed over in chunks.
+	 * 
+	 * @param inflater
+	 * @param compressed
+	 * @param chunkSize
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] inflate(ContentInflater inflater, byte[] compressed, int chunkSize) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		
+		for (int offset = 0; offset < compressed.length; offset += chunkSize) {
+			inflater.setInput(compressed, offset, Math.min(chunkSize, compressed.length - offset));
+			
+			while (!inflater.needsInput()) {
+				int inflated = inflater.inflate(buffer, 0, buffer.length);
+				result.write(buffer, 0, inflated);
+			}
+		}
+		
+		Assert.assertTrue(inflater.isFinished());
+		Assert.assertEquals(result.size(), inflater.getInflatedLength());
+		inflater.end();
+		
+		return result.toByteArray();
+	}
+	
+	/**
+	 * Inflates data, returning whether the inflater finished.
+	 * 
+	 * @param inflater
+	 * @param compressed
+	 * @return
+	 * @throws IOException
+	 */
+	private static boolean inflateUnfinished(ContentInflater inflater, byte[] compressed) throws IOException {
+		byte[] buffer = new byte[1000];
+		
+		inflater.setInput(compressed, 0, compressed.length);
+		while (!inflater.needsInput()) {
+			inflater.inflate(buffer, 0, buffer.length);
+		}
+		
+		return inflater.isFinished();
+	}
+}
@@ -0,0 +1,95 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+
+/**
+ * A transport that holds on to every exchange until the test answers it.
+ * 
+ * @author ebahtijaragic
+ */
+class DeferredTransport implements RestClientTransport {
+	protected final LinkedBlockingQueue<Exchange<?>> exchanges = new LinkedBlockingQueue<>();
+	
+	@Override
+	public <T> Future<T> execute(HttpHost target, HttpUriRequest request, HttpAsyncResponseConsumer<T> responseConsumer, FutureCallback<T> callback) {
+		Exchange<T> exchange = new Exchange<>(request, responseConsumer, callback);
+		exchanges.add(exchange);
+		
+		return exchange.future;
+	}
+
+	@Override
+	public ConnectionPoolStats getConnectionPoolStats() {
+		return new ConnectionPoolStats(new PoolStats(0, 0, 0, 0), Collections.<String, PoolStats>emptyMap());
+	}
+
+	@Override
+	public boolean isRunning() {
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+	
+	/**
+	 * An exchange waiting to be answered.
+	 */
+	protected static class Exchange<T> {
+		protected final HttpUriRequest request;
+		protected final HttpAsyncResponseConsumer<T> responseConsumer;
+		protected final BasicFuture<T> future;
+		
+		private Exchange(HttpUriRequest request, HttpAsyncResponseConsumer<T> responseConsumer, FutureCallback<T> callback) {
+			this.request = request;
+			this.responseConsumer = responseConsumer;
+			this.future = new BasicFuture<>(callback);
+		}
+		
+		/**
+		 * Answers the exchange with an empty response.
+		 * 
+		 * @param statusCode
+		 * @throws Exception
+		 */
+		protected void complete(int statusCode) throws Exception {
+			responseConsumer.responseReceived(new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null));
+			responseConsumer.responseCompleted(new BasicHttpContext());
+			
+			future.completed(responseConsumer.getResult());
+		}
+	}
+}
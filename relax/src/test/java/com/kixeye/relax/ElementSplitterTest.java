@@ -0,0 +1,123 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ElementSplitter}
+ * 
+ * @author ebahtijaragic
+ */
+public class ElementSplitterTest {
+	@Test
+	public void testArraySplitAcrossChunks() throws Exception {
+		String body = " [{\"a\":\"x,]}\"},  [1,[2]] , \"s\\\"],\", 3 ,{\"b\":{}}]  ";
+		
+		for (int chunkSize = 1; chunkSize <= body.length(); chunkSize++) {
+			ElementSplitter splitter = new ElementSplitter("application/json");
+			
+			Assert.assertEquals(Arrays.asList("{\"a\":\"x,]}\"}", "[1,[2]]", "\"s\\\"],\"", "3", "{\"b\":{}}"), split(splitter, body, chunkSize));
+			Assert.assertTrue(splitter.isArray());
+		}
+	}
+	
+	@Test
+	public void testLines() throws Exception {
+		String body = "{\"a\":1}\r\n\n  {\"a\":[2,3]}\n{\"a\":3}";
+		
+		for (int chunkSize = 1; chunkSize <= body.length(); chunkSize++) {
+			Assert.assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":[2,3]}", "{\"a\":3}"), 
+					split(new ElementSplitter("application/x-ndjson; charset=utf-8"), body, chunkSize));
+		}
+	}
+	
+	@Test
+	public void testLinesOfArrays() throws Exception {
+		Assert.assertEquals(Arrays.asList("[1,2]", "[3]"), split(new ElementSplitter("application/x-ndjson"), "[1,2]\n[3]\n", 4));
+		
+		// without a newline delimited type a leading array is taken to be the whole body
+		Assert.assertEquals(Arrays.asList("1", "2"), split(new ElementSplitter(null), "[1,2]", 4));
+		Assert.assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), split(new ElementSplitter(null), "\n{\"a\":1}\n{\"a\":2}\n", 4));
+	}
+	
+	@Test
+	public void testEmptyBodies() throws Exception {
+		Assert.assertEquals(new ArrayList<String>(), split(new ElementSplitter(null), "", 4));
+		Assert.assertEquals(new ArrayList<String>(), split(new ElementSplitter(null), " [ ] ", 4));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testTruncatedArray() throws Exception {
+		split(new ElementSplitter(null), "[{\"a\":1},{\"a\"", 4);
+	}
+	
+	@Test(expected = IOException.class)
+	public void testContentAfterArray() throws Exception {
+		split(new ElementSplitter(null), "[1] 2", 4);
+	}
+	
+	/**
+	 * Splits the body, handing it over a chunk at a time the way {@link ElementStream} does.
+	 * 
+	 * @param splitter
+	 * @param body
+	 * @param chunkSize
+	 * @return
+	 * @throws IOException
+	 */
+	private static List<String> split(ElementSplitter splitter, String body, int chunkSize) throws IOException {
+		final List<String> elements = new ArrayList<>();
+		
+		ElementSplitter.ElementHandler handler = new ElementSplitter.ElementHandler() {
+			public void element(byte[] data, int offset, int length) {
+				elements.add(new String(data, offset, length, StandardCharsets.UTF_8));
+			}
+		};
+		
+		byte[] data = body.getBytes(StandardCharsets.UTF_8);
+		byte[] buffer = new byte[data.length];
+		int length = 0;
+		
+		for (int offset = 0; offset < data.length; offset += chunkSize) {
+			int count = Math.min(chunkSize, data.length - offset);
+			
+			System.arraycopy(data, offset, buffer, length, count);
+			length += count;
+			
+			int consumed = splitter.split(buffer, length, handler);
+			
+			System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+			length -= consumed;
+		}
+		
+		splitter.finish(buffer, length, handler);
+		
+		return elements;
+	}
+}
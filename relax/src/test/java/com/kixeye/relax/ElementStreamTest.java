@@ -0,0 +1,258 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ElementStream}
+ * 
+ * @author ebahtijaragic
+ */
+public class ElementStreamTest {
+	private static final RestClientSerDe serDe = new RestClientSerDe() {
+		public byte[] serialize(String mimeType, Object obj) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+		
+		public <T> T deserialize(String mimeType, byte[] data, int offset, int length, Class<T> clazz) throws IOException {
+			return clazz.cast(new String(data, offset, length, StandardCharsets.UTF_8));
+		}
+	};
+	
+	@Test
+	public void testSlowSubscriberSuspendsInput() throws Exception {
+		StringBuilder body = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		
+		for (int i = 0; i < 20; i++) {
+			body.append("\"element").append(i).append("\"\n");
+			expected.add("\"element" + i + "\"");
+		}
+		
+		TestSubscriber subscriber = new TestSubscriber();
+		ElementStream<String> stream = new JsonElementStream<>(serDe, String.class, null, subscriber, 4);
+		subscriber.onSubscribe(stream);
+		
+		HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+		stream.setPromise(promise);
+		
+		HttpAsyncResponseConsumer<HttpResponse<Void>> consumer = stream.createResponseConsumer();
+		consumer.responseReceived(response(200, "application/x-ndjson", body.toString()));
+		
+		TestContent.Decoder decoder = new TestContent.Decoder(body.toString(), 5);
+		TestContent.Control ioControl = new TestContent.Control();
+		
+		consumer.consumeContent(decoder, ioControl);
+		
+		// nothing was requested, so reading stopped at the prefetch
+		Assert.assertTrue(ioControl.isSuspended);
+		Assert.assertFalse(decoder.isCompleted());
+		Assert.assertTrue(subscriber.elements.isEmpty());
+		
+		stream.request(3);
+		
+		Assert.assertEquals(expected.subList(0, 3), subscriber.elements);
+		Assert.assertFalse(ioControl.isSuspended);
+		
+		while (!decoder.isCompleted()) {
+			consumer.consumeContent(decoder, ioControl);
+			
+			if (ioControl.isSuspended) {
+				stream.request(1);
+			}
+		}
+		
+		consumer.responseCompleted(new BasicHttpContext());
+		promise.set(consumer.getResult());
+		
+		Assert.assertFalse(subscriber.isCompleted);
+		
+		stream.request(Long.MAX_VALUE);
+		
+		Assert.assertEquals(expected, subscriber.elements);
+		Assert.assertTrue(subscriber.isCompleted);
+		Assert.assertNull(subscriber.error);
+	}
+	
+	@Test
+	public void testUnexpectedStatusFailsStream() throws Exception {
+		TestSubscriber subscriber = new TestSubscriber();
+		ElementStream<String> stream = new JsonElementStream<>(serDe, String.class, null, subscriber, 4);
+		subscriber.onSubscribe(stream);
+		stream.request(Long.MAX_VALUE);
+		
+		HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+		stream.setPromise(promise);
+		
+		String body = "[\"not\", \"elements\"]";
+		
+		HttpAsyncResponseConsumer<HttpResponse<Void>> consumer = stream.createResponseConsumer();
+		consumer.responseReceived(response(404, "application/json", body));
+		consumer.consumeContent(new TestContent.Decoder(body), new TestContent.Control());
+		consumer.responseCompleted(new BasicHttpContext());
+		promise.set(consumer.getResult());
+		
+		Assert.assertTrue(subscriber.elements.isEmpty());
+		Assert.assertFalse(subscriber.isCompleted);
+		Assert.assertEquals(404, ((UnexpectedStatusException)subscriber.error).getStatusCode());
+	}
+	
+	@Test
+	public void testEncodedResponseWithoutBodyCompletes() throws Exception {
+		TestSubscriber subscriber = new TestSubscriber();
+		ElementStream<String> stream = new JsonElementStream<>(serDe, String.class, new CompressionPolicy(), subscriber, 4);
+		subscriber.onSubscribe(stream);
+		stream.request(Long.MAX_VALUE);
+		
+		HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+		stream.setPromise(promise);
+		
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 204, null);
+		response.setHeader("Content-Encoding", "gzip");
+		
+		HttpAsyncResponseConsumer<HttpResponse<Void>> consumer = stream.createResponseConsumer();
+		consumer.responseReceived(response);
+		consumer.responseCompleted(new BasicHttpContext());
+		
+		Assert.assertNull(consumer.getException());
+		promise.set(consumer.getResult());
+		
+		Assert.assertTrue(subscriber.isCompleted);
+		Assert.assertNull(subscriber.error);
+	}
+	
+	@Test
+	public void testCancelCancelsExchange() throws Exception {
+		TestSubscriber subscriber = new TestSubscriber();
+		ElementStream<String> stream = new JsonElementStream<>(serDe, String.class, null, subscriber, 4);
+		subscriber.onSubscribe(stream);
+		
+		HttpPromise<HttpResponse<Void>> promise = new HttpPromise<>();
+		stream.setPromise(promise);
+		
+		stream.request(1);
+		stream.cancel();
+		
+		Assert.assertTrue(promise.isCancelled());
+		Assert.assertFalse(subscriber.isCompleted);
+		Assert.assertNull(subscriber.error);
+	}
+	
+	@Test
+	public void testSuspendedStreamDoesNotLowerLimit() throws Exception {
+		StringBuilder body = new StringBuilder();
+		
+		for (int i = 0; i < 600; i++) {
+			body.append("\"element").append(i).append("\"\n");
+		}
+		
+		HttpHost host = new HttpHost("localhost", 1234);
+		ConcurrencyLimitPolicy limitPolicy = new ConcurrencyLimitPolicy().withLimits(4, 1, 4).withLatencyThreshold(200, TimeUnit.MILLISECONDS);
+		DeferredTransport transport = new DeferredTransport();
+		
+		RestClient client = RestClients.create("http://localhost:1234", serDe).withTransport(transport).withConcurrencyLimit(limitPolicy).build();
+		
+		TestSubscriber subscriber = new TestSubscriber();
+		client.stream("/elements", null, String.class).subscribe(subscriber);
+		
+		DeferredTransport.Exchange<?> exchange = transport.exchanges.poll(5, TimeUnit.SECONDS);
+		
+		TestContent.Decoder decoder = new TestContent.Decoder(body.toString(), 1024);
+		TestContent.Control ioControl = new TestContent.Control();
+		
+		exchange.responseConsumer.responseReceived(response(200, "application/x-ndjson", body.toString()));
+		exchange.responseConsumer.consumeContent(decoder, ioControl);
+		
+		// the exchange was accounted for with its headers, so the stream holds no permit while it is suspended
+		Assert.assertTrue(ioControl.isSuspended);
+		Assert.assertEquals(0, limitPolicy.getInFlightCount(host));
+		
+		Thread.sleep(400);
+		
+		subscriber.subscription.request(Long.MAX_VALUE);
+		
+		while (!decoder.isCompleted()) {
+			exchange.responseConsumer.consumeContent(decoder, ioControl);
+		}
+		
+		complete(exchange);
+		
+		Assert.assertTrue(subscriber.isCompleted);
+		Assert.assertEquals(600, subscriber.elements.size());
+		Assert.assertEquals(4, limitPolicy.getLimit(host));
+		
+		client.close();
+	}
+	
+	private static <T> void complete(DeferredTransport.Exchange<T> exchange) throws Exception {
+		exchange.responseConsumer.responseCompleted(new BasicHttpContext());
+		exchange.future.completed(exchange.responseConsumer.getResult());
+	}
+	
+	private static org.apache.http.HttpResponse response(int statusCode, String contentType, String body) {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+		response.setHeader("Content-Type", contentType);
+		response.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+		
+		return response;
+	}
+	
+		private static class TestSubscriber implements StreamSubscriber<String> {
+		private final List<String> elements = new ArrayList<>();
+		private volatile boolean isCompleted = false;
+		private volatile Throwable error;
+		private StreamSubscription subscription;
+		
+		@Override
+		public void onSubscribe(StreamSubscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(String element) {
+			elements.add(element);
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+		}
+
+		@Override
+		public void onComplete() {
+			isCompleted = true;
+		}
+	}
+}
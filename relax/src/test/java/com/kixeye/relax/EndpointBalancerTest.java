@@ -0,0 +1,113 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.kixeye.relax.EndpointBalancer.Endpoint;
+
+/**
+ * Tests the {@link EndpointBalancer}
+ * 
+ * @author ebahtijaragic
+ */
+public class EndpointBalancerTest {
+	@Test
+	public void testPrefersLeastOutstanding() throws Exception {
+		EndpointBalancer balancer = new EndpointBalancer(Arrays.asList("http://a", "http://b"), 5, 30000);
+		
+		Assert.assertEquals("http://a", balancer.getPrimaryUriPrefix());
+		
+		Endpoint busy = balancer.select();
+		for (int i = 0; i < 100; i++) {
+			Endpoint endpoint = balancer.select();
+			
+			Assert.assertNotSame(busy, endpoint);
+			Assert.assertEquals(1, endpoint.getInFlightCount());
+			
+			endpoint.completed(TimeUnit.MICROSECONDS.toNanos(100), true);
+		}
+	}
+	
+	@Test
+	public void testPrefersLowerLatency() throws Exception {
+		EndpointBalancer balancer = new EndpointBalancer(Arrays.asList("http://a", "http://b"), 5, 30000);
+		
+		Endpoint slow = balancer.select();
+		slow.completed(TimeUnit.SECONDS.toNanos(1), true);
+		
+		for (int i = 0; i < 100; i++) {
+			Endpoint endpoint = balancer.select();
+			endpoint.cancelled();
+			
+			Assert.assertNotSame(slow, endpoint);
+		}
+	}
+	
+	@Test
+	public void testEjectsFailingEndpoints() throws Exception {
+		EndpointBalancer balancer = new EndpointBalancer(Arrays.asList("http://a", "http://b"), 2, 30000);
+		
+		Endpoint failing = null;
+		int failures = 0;
+		
+		while (failures < 2) {
+			Endpoint endpoint = balancer.select();
+			
+			if ("http://a".equals(endpoint.getUriPrefix())) {
+				Assert.assertFalse(endpoint.isEjected(System.nanoTime()));
+				
+				endpoint.completed(0, false);
+				failing = endpoint;
+				failures++;
+			} else {
+				endpoint.cancelled();
+			}
+		}
+		Assert.assertTrue(failing.isEjected(System.nanoTime()));
+		
+		for (int i = 0; i < 100; i++) {
+			Endpoint endpoint = balancer.select();
+			endpoint.completed(TimeUnit.SECONDS.toNanos(1), true);
+			
+			Assert.assertNotSame(failing, endpoint);
+		}
+		
+		Assert.assertFalse(failing.isEjected(System.nanoTime() + TimeUnit.SECONDS.toNanos(31)));
+	}
+	
+	@Test
+	public void testUsesEjectedEndpointsIfAllAre() throws Exception {
+		EndpointBalancer balancer = new EndpointBalancer(Arrays.asList("http://a"), 1, 30000);
+		
+		Endpoint endpoint = balancer.select();
+		endpoint.completed(0, false);
+		Assert.assertTrue(endpoint.isEjected(System.nanoTime()));
+		
+		Assert.assertSame(endpoint, balancer.select());
+		endpoint.completed(0, true);
+		Assert.assertFalse(endpoint.isEjected(System.nanoTime()));
+	}
+}
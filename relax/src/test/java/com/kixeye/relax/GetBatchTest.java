@@ -0,0 +1,98 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link RestClient#getBatch(String, String, Class, int, List)}.
+ * 
+ * @author ebahtijaragic
+ */
+public class GetBatchTest {
+	@Test
+	public void testConcurrencyIsBounded() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		
+		RestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport).build();
+		
+		List<Object[]> pathVariables = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			pathVariables.add(new Object[] {i});
+		}
+		
+		List<HttpPromise<HttpResponse<Void>>> promises = client.getBatch("/shards/{}", null, Void.class, 2, pathVariables);
+		
+		Assert.assertEquals(5, promises.size());
+		Assert.assertEquals(2, transport.exchanges.size());
+		
+		for (int i = 0; i < 5; i++) {
+			DeferredTransport.Exchange<?> exchange = transport.exchanges.poll(5, TimeUnit.SECONDS);
+			Assert.assertEquals("/shards/" + i, exchange.request.getURI().getPath());
+			
+			exchange.complete(200);
+			
+			Assert.assertEquals(200, promises.get(i).waitForComplete(5, TimeUnit.SECONDS).get().getStatusCode());
+			Assert.assertTrue(transport.exchanges.size() <= 2);
+		}
+		
+		Assert.assertTrue(transport.exchanges.isEmpty());
+		
+		client.close();
+	}
+	
+	@Test
+	public void testCancelledGetsAreSkipped() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		
+		RestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport).build();
+		
+		List<HttpPromise<HttpResponse<Void>>> promises = client.getBatch("/shards/{}", null, Void.class, 1, 
+				Arrays.asList(new Object[] {0}, new Object[] {1}, new Object[] {2}));
+		
+		Assert.assertTrue(promises.get(1).cancel());
+		
+		transport.exchanges.poll(5, TimeUnit.SECONDS).complete(200);
+		
+		DeferredTransport.Exchange<?> exchange = transport.exchanges.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals("/shards/2", exchange.request.getURI().getPath());
+		exchange.complete(200);
+		
+		try {
+			promises.get(1).get();
+			Assert.fail("Expected a cancellation");
+		} catch (CancellationException e) {
+			// expected
+		}
+		
+		Assert.assertEquals(200, promises.get(2).waitForComplete(5, TimeUnit.SECONDS).get().getStatusCode());
+		Assert.assertTrue(transport.exchanges.isEmpty());
+		
+		client.close();
+	}
+}
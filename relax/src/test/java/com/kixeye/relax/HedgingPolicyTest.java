@@ -0,0 +1,167 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.kixeye.relax.metrics.RestClientMetricsListener;
+
+/**
+ * Tests the {@link HedgingPolicy}
+ * 
+ * @author ebahtijaragic
+ */
+public class HedgingPolicyTest {
+	@Test
+	public void testHedgedRequests() throws Exception {
+		HedgingPolicy policy = HedgingPolicy.fixedDelay(50, TimeUnit.MILLISECONDS).withIdempotent("POST", "/search");
+		
+		Assert.assertTrue(policy.isHedged("GET", "/users/{}"));
+		Assert.assertTrue(policy.isHedged("DELETE", "/users/{}"));
+		Assert.assertTrue(policy.isHedged("POST", "/search"));
+		Assert.assertFalse(policy.isHedged("POST", "/users"));
+		Assert.assertFalse(policy.isHedged("PATCH", "/search"));
+		Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(50), policy.getDelayNanos("GET", "/users/{}"));
+	}
+	
+	@Test
+	public void testBudget() throws Exception {
+		HedgingPolicy policy = HedgingPolicy.fixedDelay(50, TimeUnit.MILLISECONDS).withBudget(0.25, 2);
+		
+		Assert.assertFalse(policy.tryAcquire());
+		
+		for (int i = 0; i < 4; i++) {
+			policy.deposit();
+		}
+		Assert.assertTrue(policy.tryAcquire());
+		Assert.assertFalse(policy.tryAcquire());
+		
+		for (int i = 0; i < 100; i++) {
+			policy.deposit();
+		}
+		Assert.assertTrue(policy.tryAcquire());
+		Assert.assertTrue(policy.tryAcquire());
+		Assert.assertFalse(policy.tryAcquire());
+		
+		Assert.assertEquals(3, policy.getHedgeCount());
+		Assert.assertEquals(3, policy.getThrottledHedgeCount());
+	}
+	
+	@Test
+	public void testTracksPercentile() throws Exception {
+		HedgingPolicy policy = HedgingPolicy.percentile(90, 500, TimeUnit.MILLISECONDS);
+		
+		for (int i = 1; i < HedgingPolicy.PERCENTILE_WINDOW; i++) {
+			policy.record("GET", "/users/{}", TimeUnit.MILLISECONDS.toNanos(i % 100), false);
+		}
+		Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(500), policy.getDelayNanos("GET", "/users/{}"));
+		
+		policy.record("GET", "/users/{}", TimeUnit.MILLISECONDS.toNanos(10), true);
+		
+		long delay = policy.getDelayNanos("GET", "/users/{}");
+		Assert.assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(89) && delay <= TimeUnit.MILLISECONDS.toNanos(92));
+		Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(500), policy.getDelayNanos("DELETE", "/users/{}"));
+		Assert.assertEquals(1, policy.getHedgeWinCount());
+	}
+	
+	@Test
+	public void testHedgedRequestIsReportedOnce() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		RecordingMetricsListener metrics = new RecordingMetricsListener();
+		
+		RestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport).withMetricsListener(metrics)
+				.withHedgingPolicy(HedgingPolicy.fixedDelay(10, TimeUnit.MILLISECONDS).withBudget(1.0, 10)).build();
+		
+		try {
+			HttpPromise<HttpResponse<Void>> promise = client.get("/things/{}", null, Void.class, 1);
+			
+			DeferredTransport.Exchange<?> primary = transport.exchanges.poll(5, TimeUnit.SECONDS);
+			DeferredTransport.Exchange<?> hedge = transport.exchanges.poll(5, TimeUnit.SECONDS);
+			Assert.assertNotNull(hedge);
+			
+			hedge.complete(200);
+			
+			Assert.assertEquals(200, promise.get().getStatusCode());
+			Assert.assertTrue(primary.future.isCancelled());
+			Assert.assertEquals(Arrays.asList("started", "completed 200"), metrics.events);
+		} finally {
+			client.close();
+		}
+	}
+	
+	@Test
+	public void testCancelledHedgedRequestIsReportedOnce() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		RecordingMetricsListener metrics = new RecordingMetricsListener();
+		
+		RestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport).withMetricsListener(metrics)
+				.withHedgingPolicy(HedgingPolicy.fixedDelay(10, TimeUnit.MILLISECONDS).withBudget(1.0, 10)).build();
+		
+		try {
+			HttpPromise<HttpResponse<Void>> promise = client.get("/things/{}", null, Void.class, 1);
+			
+			DeferredTransport.Exchange<?> primary = transport.exchanges.poll(5, TimeUnit.SECONDS);
+			DeferredTransport.Exchange<?> hedge = transport.exchanges.poll(5, TimeUnit.SECONDS);
+			Assert.assertNotNull(hedge);
+			
+			promise.cancel();
+			
+			Assert.assertTrue(primary.future.isCancelled());
+			
+			// the hedge is aborted once its sender gets to it
+			hedge.future.get(5, TimeUnit.SECONDS);
+			Assert.assertTrue(hedge.future.isCancelled());
+			
+			Assert.assertEquals(Arrays.asList("started", "cancelled"), metrics.events);
+		} finally {
+			client.close();
+		}
+	}
+	
+	/**
+	 * Records what the client reports.
+	 */
+	private static class RecordingMetricsListener implements RestClientMetricsListener {
+		private final List<String> events = new CopyOnWriteArrayList<>();
+		
+		public void requestStarted(String method, String pathTemplate) {
+			events.add("started");
+		}
+		
+		public void requestCompleted(String method, String pathTemplate, int statusCode, long durationNanos) {
+			events.add("completed " + statusCode);
+		}
+		
+		public void requestFailed(String method, String pathTemplate, Exception error, long durationNanos) {
+			events.add("failed");
+		}
+		
+		public void requestCancelled(String method, String pathTemplate, long durationNanos) {
+			events.add("cancelled");
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.concurrent.Cancellable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.kixeye.relax.HttpPromise.HttpPromiseFunction;
+import com.kixeye.relax.HttpPromise.HttpPromiseListener;
+
+/**
+ * Tests the {@link HttpPromise}
+ * 
+ * @author ebahtijaragic
+ */
+public class HttpPromiseTest {
+	@Test
+	public void testSetOnlyOnce() throws Exception {
+		HttpPromise<String> promise = new HttpPromise<>();
+		
+		Assert.assertFalse(promise.isComplete());
+		Assert.assertNull(promise.get());
+		
+		promise.set("first");
+		promise.set("second");
+		promise.setError(new Exception());
+		
+		Assert.assertTrue(promise.isComplete());
+		Assert.assertEquals("first", promise.get());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testError() throws Exception {
+		HttpPromise<String> promise = new HttpPromise<>();
+		promise.setError(new IllegalStateException());
+		
+		promise.get();
+	}
+	
+	@Test
+	public void testListenersRunInOrder() throws Exception {
+		HttpPromise<String> promise = new HttpPromise<>();
+		final StringBuilder order = new StringBuilder();
+		
+		for (int i = 0; i < 3; i++) {
+			final int index = i;
+			
+			promise.addListener(new HttpPromiseListener<String>() {
+				public void handle(HttpPromise<String> promise) {
+					order.append(index);
+				}
+			});
+		}
+		
+		promise.set("value");
+		
+		promise.addListener(new HttpPromiseListener<String>() {
+			public void handle(HttpPromise<String> promise) {
+				order.append("late");
+			}
+		});
+		
+		Assert.assertEquals("012late", order.toString());
+	}
+	
+	@Test
+	public void testWaitForComplete() throws Exception {
+		final HttpPromise<String> promise = new HttpPromise<>();
+		
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				
+				promise.set("value");
+			}
+		}.start();
+		
+		Assert.assertEquals("value", promise.waitForComplete(5, TimeUnit.SECONDS).get());
+	}
+	
+	@Test
+	public void testWaitForCompleteTimesOut() throws Exception {
+		HttpPromise<String> promise = new HttpPromise<>();
+		
+		long start = System.nanoTime();
+		promise.waitForComplete(50, TimeUnit.MILLISECONDS);
+		
+		Assert.assertFalse(promise.isComplete());
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+	
+	@Test
+	public void testTimedOutWaitersAreUnlinked() throws Exception {
+		HttpPromise<String> promise = new HttpPromise<>();
+		final StringBuilder notified = new StringBuilder();
+		
+		promise.addListener(new HttpPromiseListener<String>() {
+			public void handle(HttpPromise<String> promise) {
+				notified.append("first");
+			}
+		});
+		
+		for (int i = 0; i < 100; i++) {
+			promise.waitForComplete(1, TimeUnit.MILLISECONDS);
+		}
+		
+		Thread.currentThread().interrupt();
+		
+		try {
+			promise.waitForComplete(5, TimeUnit.SECONDS);
+			Assert.fail("Expected an interrupt");
+		} catch (InterruptedException e) {
+			// expected
+		}
+		
+		Assert.assertEquals(1, promise.getPendingCount());
+		
+		promise.set("value");
+		
+		Assert.assertEquals("first", notified.toString());
+	}
+	
+	@Test
+	public void testThenApply() throws Exception {
+		HttpPromise<Integer> promise = new HttpPromise<>();
+		
+		HttpPromise<String> mapped = promise.thenApply(new HttpPromiseFunction<Integer, String>() {
+			public String apply(Integer input) throws Exception {
+				return "value-" + input;
+			}
+		});
+		
+		promise.set(42);
+		
+		Assert.assertEquals("value-42", mapped.get());
+	}
+	
+	@Test
+	public void testThenCompose() throws Exception {
+		HttpPromise<Integer> promise = new HttpPromise<>();
+		final HttpPromise<String> next = new HttpPromise<>();
+		
+		HttpPromise<String> composed = promise.thenCompose(new HttpPromiseFunction<Integer, HttpPromise<String>>() {
+			public HttpPromise<String> apply(Integer input) throws Exception {
+				return next;
+			}
+		});
+		
+		promise.set(42);
+		Assert.assertFalse(composed.isComplete());
+		
+		next.set("next");
+		Assert.assertEquals("next", composed.get());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testThenApplySkipsOnError() throws Exception {
+		HttpPromise<Integer> promise = new HttpPromise<>();
+		
+		HttpPromise<String> mapped = promise.thenApply(new HttpPromiseFunction<Integer, String>() {
+			public String apply(Integer input) throws Exception {
+				throw new UnsupportedOperationException();
+			}
+		});
+		
+		promise.setError(new IllegalStateException());
+		
+		mapped.get();
+	}
+	
+	@Test
+	public void testAllOf() throws Exception {
+		HttpPromise<String> first = new HttpPromise<>();
+		HttpPromise<String> second = new HttpPromise<>();
+		
+		HttpPromise<List<String>> all = HttpPromise.allOf(Arrays.asList(first, second));
+		
+		second.set("second");
+		Assert.assertFalse(all.isComplete());
+		
+		first.set("first");
+		Assert.assertEquals(Arrays.asList("first", "second"), all.get());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testAllOfFailsFast() throws Exception {
+		HttpPromise<String> first = new HttpPromise<>();
+		HttpPromise<String> second = new HttpPromise<>();
+		
+		HttpPromise<List<String>> all = HttpPromise.allOf(Arrays.asList(first, second));
+		
+		second.setError(new IllegalStateException());
+		
+		all.get();
+	}
+	
+	@Test
+	public void testAnyOf() throws Exception {
+		HttpPromise<String> first = new HttpPromise<>();
+		HttpPromise<String> second = new HttpPromise<>();
+		
+		HttpPromise<String> any = HttpPromise.anyOf(Arrays.asList(first, second));
+		
+		second.set("second");
+		first.set("first");
+		
+		Assert.assertEquals("second", any.get());
+	}
+	
+	@Test(expected = TimeoutException.class)
+	public void testWithTimeout() throws Exception {
+		HttpPromise<String> promise = new HttpPromise<>();
+		
+		promise.withTimeout(10, TimeUnit.MILLISECONDS).waitForComplete(5, TimeUnit.SECONDS).get();
+	}
+	
+	@Test
+	public void testCancel() throws Exception {
+		final AtomicInteger aborted = new AtomicInteger(0);
+		Cancellable cancellable = new Cancellable() {
+			public boolean cancel() {
+				aborted.incrementAndGet();
+				
+				return true;
+			}
+		};
+		
+		HttpPromise<String> promise = new HttpPromise<>();
+		promise.setCancellable(cancellable);
+		
+		Assert.assertTrue(promise.cancel());
+		Assert.assertFalse(promise.cancel());
+		Assert.assertTrue(promise.isCancelled());
+		Assert.assertEquals(1, aborted.get());
+		
+		HttpPromise<String> cancelledEarly = new HttpPromise<>();
+		cancelledEarly.cancel();
+		cancelledEarly.setCancellable(cancellable);
+		Assert.assertEquals(2, aborted.get());
+		
+		HttpPromise<String> completed = new HttpPromise<>();
+		completed.setCancellable(cancellable);
+		completed.set("value");
+		Assert.assertFalse(completed.cancel());
+		Assert.assertFalse(completed.isCancelled());
+		Assert.assertEquals(2, aborted.get());
+	}
+	
+	@Test
+	public void testToFuture() throws Exception {
+		HttpPromise<String> promise = new HttpPromise<>();
+		Future<String> future = promise.toFuture();
+		
+		Assert.assertFalse(future.isDone());
+		
+		promise.set("value");
+		
+		Assert.assertTrue(future.isDone());
+		Assert.assertEquals("value", future.get(1, TimeUnit.SECONDS));
+		Assert.assertFalse(future.cancel(true));
+	}
+	
+	@Test
+	public void testNoListenerLostToCompletion() throws Exception {
+		final int listenerCount = 1000;
+		
+		for (int run = 0; run < 50; run++) {
+			final HttpPromise<String> promise = new HttpPromise<>();
+			final AtomicInteger notified = new AtomicInteger(0);
+			final CountDownLatch start = new CountDownLatch(1);
+			
+			Thread registerer = new Thread() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					
+					for (int i = 0; i < listenerCount; i++) {
+						promise.addListener(new HttpPromiseListener<String>() {
+							public void handle(HttpPromise<String> promise) {
+								notified.incrementAndGet();
+							}
+						});
+					}
+				}
+			};
+			registerer.start();
+			
+			start.countDown();
+			promise.set("value");
+			registerer.join();
+			
+			Assert.assertEquals(listenerCount, notified.get());
+		}
+	}
+}
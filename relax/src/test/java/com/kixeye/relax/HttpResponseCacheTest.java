@@ -0,0 +1,168 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link HttpResponseCache}
+ * 
+ * @author ebahtijaragic
+ */
+public class HttpResponseCacheTest {
+	private static final long NOW = 1400000000000L;
+	private static final String URI = "http://localhost/config";
+	
+	@Test
+	public void testServesFreshThenRevalidates() throws Exception {
+		HttpResponseCache cache = new HttpResponseCache(1024 * 1024);
+		HttpRequest request = new BasicHttpRequest("GET", URI);
+		
+		Assert.assertNull(cache.lookup(URI, request, NOW));
+		
+		cache.store(URI, request, 200, headers("Cache-Control", "max-age=60", "ETag", "\"v1\"", "Content-Type", "text/plain"), "hello".getBytes(), NOW, NOW);
+		
+		HttpResponseCache.CachedResponse cached = cache.lookup(URI, request, NOW + 59000);
+		Assert.assertTrue(cached.isFresh(NOW + 59000));
+		Assert.assertEquals("hello", cached.toResponse(new TestSerDe(), String.class, false).getBody().deserialize());
+		
+		cached = cache.lookup(URI, request, NOW + 61000);
+		Assert.assertFalse(cached.isFresh(NOW + 61000));
+		
+		HttpRequest conditional = new BasicHttpRequest("GET", URI);
+		cached.addConditionalHeaders(conditional);
+		Assert.assertEquals("\"v1\"", conditional.getFirstHeader("If-None-Match").getValue());
+		
+		HttpResponseCache.CachedResponse refreshed = cache.revalidated(URI, request, cached, headers("Cache-Control", "max-age=120", "Content-Length", "0"), NOW + 61000, NOW + 61000);
+		HttpResponse<String> response = refreshed.toResponse(new TestSerDe(), String.class, false);
+		Assert.assertEquals(200, response.getStatusCode());
+		Assert.assertEquals("max-age=120", response.getFirstHeader("Cache-Control"));
+		Assert.assertEquals("text/plain", response.getFirstHeader("Content-Type"));
+		Assert.assertNull(response.getFirstHeader("Content-Length"));
+		Assert.assertEquals("hello", response.getBody().deserialize());
+		Assert.assertTrue(cache.lookup(URI, request, NOW + 180000).isFresh(NOW + 180000));
+		
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(1, cache.getRevalidationCount());
+		Assert.assertEquals(1, cache.getNotModifiedCount());
+	}
+	
+	@Test
+	public void testFreshnessFromExpiresAndAge() throws Exception {
+		HttpResponseCache cache = new HttpResponseCache(1024 * 1024);
+		HttpRequest request = new BasicHttpRequest("GET", URI);
+		
+		cache.store(URI, request, 200, headers("Date", DateUtils.formatDate(new Date(NOW)), "Expires", DateUtils.formatDate(new Date(NOW + 30000)), "Age", "10"), 
+				new byte[0], NOW, NOW);
+		
+		Assert.assertTrue(cache.lookup(URI, request, NOW + 19000).isFresh(NOW + 19000));
+		Assert.assertNull(cache.lookup(URI, request, NOW + 21000));
+		Assert.assertEquals(0, cache.getEntryCount());
+	}
+	
+	@Test
+	public void testDoesNotStoreUncacheableResponses() throws Exception {
+		HttpResponseCache cache = new HttpResponseCache(1024 * 1024);
+		HttpRequest request = new BasicHttpRequest("GET", URI);
+		
+		cache.store(URI, request, 200, headers("Cache-Control", "no-store, max-age=60"), new byte[1], NOW, NOW);
+		cache.store(URI + "/a", request, 200, headers(), new byte[1], NOW, NOW);
+		cache.store(URI + "/b", request, 500, headers("Cache-Control", "max-age=60"), new byte[1], NOW, NOW);
+		cache.store(URI + "/c", request, 200, headers("Cache-Control", "max-age=60", "Vary", "*"), new byte[1], NOW, NOW);
+		
+		Assert.assertEquals(0, cache.getEntryCount());
+		
+		HttpRequest noCache = new BasicHttpRequest("GET", URI);
+		noCache.addHeader("Cache-Control", "no-cache");
+		cache.store(URI, request, 200, headers("Cache-Control", "max-age=60"), new byte[1], NOW, NOW);
+		Assert.assertNull(cache.lookup(URI, noCache, NOW));
+		
+		HttpRequest noStore = new BasicHttpRequest("GET", URI);
+		noStore.addHeader("Cache-Control", "no-store");
+		Assert.assertFalse(HttpResponseCache.isCacheable(noStore));
+		Assert.assertFalse(HttpResponseCache.isCacheable(new BasicHttpRequest("POST", URI)));
+		Assert.assertTrue(HttpResponseCache.isCacheable(request));
+	}
+	
+	@Test
+	public void testVary() throws Exception {
+		HttpResponseCache cache = new HttpResponseCache(1024 * 1024);
+		HttpRequest json = new BasicHttpRequest("GET", URI);
+		json.addHeader("Accept", "application/json");
+		HttpRequest xml = new BasicHttpRequest("GET", URI);
+		xml.addHeader("Accept", "application/xml");
+		
+		cache.store(URI, json, 200, headers("Cache-Control", "max-age=60", "Vary", "Accept"), new byte[1], NOW, NOW);
+		
+		Assert.assertNotNull(cache.lookup(URI, json, NOW));
+		Assert.assertNull(cache.lookup(URI, xml, NOW));
+	}
+	
+	@Test
+	public void testSegmentedLruKeepsReusedEntries() throws Exception {
+		HttpResponseCache cache = new HttpResponseCache(10000);
+		HttpRequest request = new BasicHttpRequest("GET", URI);
+		
+		cache.store(URI + "/hot", request, 200, headers("Cache-Control", "max-age=60"), new byte[1000], NOW, NOW);
+		Assert.assertNotNull(cache.lookup(URI + "/hot", request, NOW));
+		
+		for (int i = 0; i < 50; i++) {
+			cache.store(URI + "/scan/" + i, request, 200, headers("Cache-Control", "max-age=60"), new byte[1000], NOW, NOW);
+		}
+		
+		Assert.assertNotNull(cache.lookup(URI + "/hot", request, NOW));
+		Assert.assertNull(cache.lookup(URI + "/scan/0", request, NOW));
+		Assert.assertTrue(cache.getSize() <= 10000);
+		Assert.assertTrue(cache.getEvictionCount() > 0);
+		
+		cache.store(URI + "/huge", request, 200, headers("Cache-Control", "max-age=60"), new byte[5000], NOW, NOW);
+		Assert.assertNull(cache.lookup(URI + "/huge", request, NOW));
+	}
+	
+	private static Header[] headers(String... namesAndValues) {
+		Header[] headers = new Header[namesAndValues.length / 2];
+		
+		for (int i = 0; i < headers.length; i++) {
+			headers[i] = new BasicHeader(namesAndValues[i * 2], namesAndValues[i * 2 + 1]);
+		}
+		
+		return headers;
+	}
+	
+	private static class TestSerDe implements RestClientSerDe {
+		public byte[] serialize(String mimeType, Object obj) {
+			return String.valueOf(obj).getBytes();
+		}
+
+		public <T> T deserialize(String mimeType, byte[] data, int offset, int length, Class<T> clazz) {
+			return clazz.cast(new String(data, offset, length));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link HttpResponse}
+ * 
+ * @author ebahtijaragic
+ */
+public class HttpResponseTest {
+	private static final Header[] HEADERS = new Header[] {
+		new BasicHeader("Content-Type", "application/json"),
+		new BasicHeader("Set-Cookie", "a=1"),
+		new BasicHeader("set-cookie", "b=2")
+	};
+	
+	@Test
+	public void testFirstHeaderIgnoresCase() throws Exception {
+		HttpResponse<Void> response = new HttpResponse<>(200, HEADERS, null);
+		
+		Assert.assertEquals("application/json", response.getFirstHeader("content-type"));
+		Assert.assertEquals("a=1", response.getFirstHeader("SET-COOKIE"));
+		Assert.assertNull(response.getFirstHeader("ETag"));
+	}
+	
+	@Test
+	public void testHeaderValuesIgnoreCase() throws Exception {
+		HttpResponse<Void> response = new HttpResponse<>(200, HEADERS, null);
+		
+		Assert.assertEquals(Arrays.asList("a=1", "b=2"), response.getHeaders("Set-Cookie"));
+		Assert.assertEquals(Arrays.asList("a=1", "b=2"), response.getHeaders().get("set-cookie"));
+		Assert.assertTrue(response.getHeaders().containsKey("CONTENT-TYPE"));
+		Assert.assertNull(response.getHeaders().get("ETag"));
+	}
+	
+	@Test
+	public void testMaterializedHeaders() throws Exception {
+		Map<String, List<String>> headers = new HttpResponse<Void>(200, HEADERS, null).getHeaders();
+		
+		Assert.assertEquals(2, headers.size());
+		Assert.assertEquals(Arrays.asList("a=1", "b=2"), headers.get("Set-Cookie"));
+		
+		HttpResponse<Void> copy = new HttpResponse<>(200, headers, null);
+		
+		Assert.assertEquals("b=2", copy.getHeaders("set-cookie").get(1));
+	}
+}
@@ -0,0 +1,104 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.utils.DateUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.kixeye.relax.RateLimitPolicy.TokenBucket;
+
+/**
+ * Tests the {@link RateLimitPolicy}
+ * 
+ * @author ebahtijaragic
+ */
+public class RateLimitPolicyTest {
+	@Test
+	public void testRejectsOverRate() throws Exception {
+		RateLimitPolicy policy = new RateLimitPolicy().withRoute("/users/{}", 1, 3);
+		TokenBucket bucket = policy.getBucket("/users/{}");
+		
+		Assert.assertNull(policy.getBucket("/items/{}"));
+		
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(0, bucket.reserve());
+		}
+		Assert.assertEquals(-1, bucket.reserve());
+		Assert.assertEquals(1, policy.getRejectedCount());
+	}
+	
+	@Test
+	public void testDelaysOverRate() throws Exception {
+		RateLimitPolicy policy = new RateLimitPolicy().withDefaultRoute(10, 1).withMaxDelay(950, TimeUnit.MILLISECONDS);
+		TokenBucket bucket = policy.getBucket("/items/{}");
+		
+		Assert.assertNotSame(bucket, policy.getBucket("/users/{}"));
+		Assert.assertSame(bucket, policy.getBucket("/items/{}"));
+		
+		Assert.assertEquals(0, bucket.reserve());
+		
+		long previousDelay = 0;
+		for (int i = 0; i < 9; i++) {
+			long delay = bucket.reserve();
+			
+			Assert.assertTrue(delay > previousDelay);
+			Assert.assertTrue(delay <= TimeUnit.MILLISECONDS.toNanos(100) * (i + 1));
+			
+			previousDelay = delay;
+		}
+		Assert.assertEquals(-1, bucket.reserve());
+		Assert.assertEquals(9, policy.getDelayedCount());
+	}
+	
+	@Test
+	public void testBacksOffOnThrottling() throws Exception {
+		RateLimitPolicy policy = new RateLimitPolicy().withRoute("/users/{}", 100, 1).withMaxDelay(10, TimeUnit.SECONDS)
+				.withBackoff(0.5, 1, TimeUnit.HOURS);
+		TokenBucket bucket = policy.getBucket("/users/{}");
+		
+		bucket.throttled("2");
+		bucket.throttled(null);
+		Assert.assertEquals(1, policy.getRate("/users/{}") / 50, 0.01);
+		Assert.assertEquals(2, policy.getThrottledCount());
+		
+		long delay = bucket.reserve();
+		Assert.assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(1900) && delay <= TimeUnit.SECONDS.toNanos(2));
+		
+		delay = bucket.reserve() - delay;
+		Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(20), delay, TimeUnit.MILLISECONDS.toNanos(1));
+	}
+	
+	@Test
+	public void testParseRetryAfter() throws Exception {
+		long now = System.currentTimeMillis();
+		
+		Assert.assertEquals(120000, RateLimitPolicy.parseRetryAfter(" 120 ", now));
+		Assert.assertEquals(-1, RateLimitPolicy.parseRetryAfter(null, now));
+		Assert.assertEquals(-1, RateLimitPolicy.parseRetryAfter("soon", now));
+		
+		long delay = RateLimitPolicy.parseRetryAfter(DateUtils.formatDate(new Date(now + 60000)), now);
+		Assert.assertTrue(delay > 59000 && delay <= 60000);
+	}
+}
@@ -0,0 +1,137 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RestClientTransport} plumbing.
+ * 
+ * @author ebahtijaragic
+ */
+public class RestClientTransportTest {
+	@Test
+	public void testRequestsGoThroughTransport() throws Exception {
+		TestTransport transport = new TestTransport();
+		
+		RestClient client = RestClients.create("http://localhost:1234/api", null).withTransport(transport).build();
+		
+		try {
+			HttpResponse<Void> response = client.get("/things/{id}", "application/json", Void.class, 7)
+					.waitForComplete(5, TimeUnit.SECONDS).get();
+			
+			Assert.assertEquals(204, response.getStatusCode());
+			Assert.assertEquals(1, transport.requests.size());
+			Assert.assertEquals(new HttpHost("localhost", 1234, "http"), transport.targets.get(0));
+			Assert.assertEquals("/api/things/7", transport.requests.get(0).getURI().getPath());
+			
+			Assert.assertEquals(3, client.getConnectionPoolStats().getTotalStats().getMax());
+		} finally {
+			client.close();
+		}
+		
+		// the transport was handed in, so it outlives the client
+		Assert.assertFalse(transport.isClosed);
+	}
+	
+	@Test
+	public void testHttpAsyncClientTransportClose() throws Exception {
+		CloseableHttpAsyncClient httpClient = HttpAsyncClients.createDefault();
+		httpClient.start();
+		
+		try {
+			HttpAsyncClientTransport shared = new HttpAsyncClientTransport(httpClient, null, true);
+			shared.close();
+			
+			Assert.assertTrue(httpClient.isRunning());
+			Assert.assertEquals(0, shared.getConnectionPoolStats().getTotalStats().getLeased());
+			
+			HttpAsyncClientTransport owned = new HttpAsyncClientTransport(httpClient, null, false);
+			owned.close();
+			
+			Assert.assertFalse(owned.isRunning());
+		} finally {
+			httpClient.close();
+		}
+	}
+	
+	/**
+	 * Answers every request with a 204 on the calling thread.
+	 */
+	private static class TestTransport implements RestClientTransport {
+		private final List<HttpHost> targets = Collections.synchronizedList(new ArrayList<HttpHost>());
+		private final List<HttpUriRequest> requests = Collections.synchronizedList(new ArrayList<HttpUriRequest>());
+		private volatile boolean isClosed = false;
+		
+		@Override
+		public <T> Future<T> execute(HttpHost target, HttpUriRequest request, HttpAsyncResponseConsumer<T> responseConsumer, FutureCallback<T> callback) {
+			targets.add(target);
+			requests.add(request);
+			
+			BasicFuture<T> future = new BasicFuture<>(callback);
+			
+			try {
+				responseConsumer.responseReceived(new BasicHttpResponse(HttpVersion.HTTP_1_1, 204, "No Content"));
+				responseConsumer.responseCompleted(new BasicHttpContext());
+				
+				future.completed(responseConsumer.getResult());
+			} catch (Exception e) {
+				future.failed(e);
+			}
+			
+			return future;
+		}
+
+		@Override
+		public ConnectionPoolStats getConnectionPoolStats() {
+			return new ConnectionPoolStats(new PoolStats(1, 0, 2, 3), Collections.<String, PoolStats>emptyMap());
+		}
+
+		@Override
+		public boolean isRunning() {
+			return !isClosed;
+		}
+
+		@Override
+		public void close() throws IOException {
+			isClosed = true;
+		}
+	}
+}
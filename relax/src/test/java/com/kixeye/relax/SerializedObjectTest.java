@@ -0,0 +1,117 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.kixeye.relax.util.ByteArrayPool;
+
+/**
+ * Tests the {@link SerializedObject}
+ * 
+ * @author ebahtijaragic
+ */
+public class SerializedObjectTest {
+	private final AtomicInteger deserializeCount = new AtomicInteger(0);
+	
+	private final RestClientSerDe serDe = new RestClientSerDe() {
+		@Override
+		public byte[] serialize(String mimeType, Object obj) throws IOException {
+			return ((String)obj).getBytes(StandardCharsets.UTF_8);
+		}
+		
+		@Override
+		public <T> T deserialize(String mimeType, byte[] data, int offset, int length, Class<T> clazz) throws IOException {
+			deserializeCount.incrementAndGet();
+			
+			return clazz.cast(new String(data, offset, length, StandardCharsets.UTF_8));
+		}
+	};
+	
+	@Test
+	public void testDeserializesOnce() throws Exception {
+		byte[] data = "testString".getBytes(StandardCharsets.UTF_8);
+		SerializedObject<String> serializedObject = new SerializedObject<>(serDe, null, data, String.class);
+		
+		Assert.assertFalse(serializedObject.isDeserialized());
+		
+		String first = serializedObject.deserialize();
+		String second = serializedObject.deserialize();
+		
+		Assert.assertEquals("testString", first);
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, deserializeCount.get());
+		Assert.assertSame(data, serializedObject.getData());
+	}
+	
+	@Test
+	public void testDiscardsDataOnDeserialize() throws Exception {
+		ByteArrayPool pool = new ByteArrayPool(16, 1024, 4);
+		byte[] data = pool.acquire(10);
+		System.arraycopy("testString".getBytes(StandardCharsets.UTF_8), 0, data, 0, 10);
+		
+		SerializedObject<String> serializedObject = new SerializedObject<>(serDe, null, data, 10, String.class, pool, true);
+		
+		Assert.assertEquals("testString", serializedObject.deserialize());
+		Assert.assertNull(serializedObject.getData());
+		Assert.assertEquals("testString", serializedObject.deserialize());
+		Assert.assertSame(data, pool.acquire(10));
+	}
+	
+	@Test
+	public void testDiscardKeepsRetainedData() throws Exception {
+		ByteArrayPool pool = new ByteArrayPool(16, 1024, 4);
+		byte[] data = pool.acquire(10);
+		System.arraycopy("testString".getBytes(StandardCharsets.UTF_8), 0, data, 0, 10);
+		
+		SerializedObject<String> serializedObject = new SerializedObject<>(serDe, null, data, 10, String.class, pool, true);
+		serializedObject.retain();
+		
+		Assert.assertEquals("testString", serializedObject.deserialize());
+		Assert.assertSame(data, serializedObject.getData());
+		Assert.assertNotSame(data, pool.acquire(10));
+		
+		serializedObject.release();
+		Assert.assertNull(serializedObject.getData());
+		Assert.assertSame(data, pool.acquire(10));
+	}
+	
+	@Test
+	public void testReleaseReturnsBufferToPool() throws Exception {
+		ByteArrayPool pool = new ByteArrayPool(16, 1024, 4);
+		byte[] data = pool.acquire(10);
+		
+		SerializedObject<String> serializedObject = new SerializedObject<>(serDe, null, data, 10, String.class, pool, false);
+		serializedObject.retain();
+		
+		serializedObject.release();
+		Assert.assertSame(data, serializedObject.getData());
+		
+		serializedObject.close();
+		Assert.assertNull(serializedObject.getData());
+		Assert.assertSame(data, pool.acquire(10));
+	}
+}
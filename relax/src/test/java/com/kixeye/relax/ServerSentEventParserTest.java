@@ -0,0 +1,171 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ServerSentEventParser}
+ * 
+ * @author ebahtijaragic
+ */
+public class ServerSentEventParserTest {
+	private static final String BODY = "\uFEFF: keep-alive\r\n"
+			+ "retry: 1500\r\n"
+			+ "id: 1\r\n"
+			+ "data: first\r\n"
+			+ "\r\n"
+			+ "event: update\n"
+			+ "data: second\n"
+			+ "data:  line two\n"
+			+ "\n"
+			+ "id: 3\r"
+			+ "data: third\r"
+			+ "\r"
+			+ "data: \u00E9v\u00E9nement\n"
+			+ "\n"
+			+ "data: incomplete\n";
+	
+	@Test
+	public void testParsesWholeBody() throws Exception {
+		assertEvents(parse(BODY, Integer.MAX_VALUE));
+	}
+	
+	@Test
+	public void testParsesAcrossEveryChunkBoundary() throws Exception {
+		for (int chunkSize = 1; chunkSize < 16; chunkSize++) {
+			assertEvents(parse(BODY, chunkSize));
+		}
+	}
+	
+	@Test
+	public void testIgnoresInvalidFields() throws Exception {
+		TestHandler handler = parse("id: a\u0000b\nretry: 10s\nunknown: value\ndata\n\nevent: empty\n\n", 1024);
+		
+		Assert.assertEquals(1, handler.events.size());
+		Assert.assertNull(handler.events.get(0).getId());
+		Assert.assertEquals("message", handler.events.get(0).getEvent());
+		Assert.assertEquals("", handler.events.get(0).getData());
+		Assert.assertTrue(handler.retries.isEmpty());
+	}
+	
+	@Test
+	public void testResumesFromLastEventId() throws Exception {
+		TestHandler handler = new TestHandler();
+		ServerSentEventParser parser = new ServerSentEventParser("41", handler);
+		
+		byte[] data = "data: next\n\nid: 43\n\n".getBytes(StandardCharsets.UTF_8);
+		Assert.assertEquals(data.length, parser.parse(data, data.length));
+		
+		Assert.assertEquals("41", handler.events.get(0).getId());
+		Assert.assertEquals("43", parser.getLastEventId());
+	}
+	
+	@Test
+	public void testIdOfIncompleteEventIsDropped() throws Exception {
+		TestHandler handler = new TestHandler();
+		ServerSentEventParser parser = new ServerSentEventParser("42", handler);
+		
+		byte[] data = "id: 43\ndata: forty-three\n\nid: 44\ndata: cut off".getBytes(StandardCharsets.UTF_8);
+		parser.parse(data, data.length);
+		
+		Assert.assertEquals(1, handler.events.size());
+		Assert.assertEquals("43", handler.events.get(0).getId());
+		Assert.assertEquals("43", parser.getLastEventId());
+		
+		parser = new ServerSentEventParser("43", handler);
+		
+		data = "id: 44\n".getBytes(StandardCharsets.UTF_8);
+		parser.parse(data, data.length);
+		
+		Assert.assertEquals("43", parser.getLastEventId());
+	}
+	
+	private static void assertEvents(TestHandler handler) {
+		Assert.assertEquals(4, handler.events.size());
+		
+		Assert.assertEquals("1", handler.events.get(0).getId());
+		Assert.assertEquals("message", handler.events.get(0).getEvent());
+		Assert.assertEquals("first", handler.events.get(0).getData());
+		
+		Assert.assertEquals("1", handler.events.get(1).getId());
+		Assert.assertEquals("update", handler.events.get(1).getEvent());
+		Assert.assertEquals("second\n line two", handler.events.get(1).getData());
+		
+		Assert.assertEquals("3", handler.events.get(2).getId());
+		Assert.assertEquals("third", handler.events.get(2).getData());
+		
+		Assert.assertEquals("\u00E9v\u00E9nement", handler.events.get(3).getData());
+		
+		Assert.assertEquals(Arrays.asList(1500L), handler.retries);
+	}
+	
+	/**
+	 * Parses the body a few bytes at a time, keeping what the parser leaves the way the stream does.
+	 * 
+	 * @param body
+	 * @param chunkSize
+	 * @return
+	 */
+	private static TestHandler parse(String body, int chunkSize) {
+		TestHandler handler = new TestHandler();
+		ServerSentEventParser parser = new ServerSentEventParser(null, handler);
+		
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		byte[] buffer = new byte[bytes.length];
+		int length = 0;
+		
+		for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+			int read = Math.min(chunkSize, bytes.length - offset);
+			System.arraycopy(bytes, offset, buffer, length, read);
+			length += read;
+			
+			int consumed = parser.parse(buffer, length);
+			System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+			length -= consumed;
+		}
+		
+		parser.finish(buffer, length);
+		
+		return handler;
+	}
+	
+	private static class TestHandler implements ServerSentEventParser.EventHandler {
+		private final List<ServerSentEvent> events = new ArrayList<>();
+		private final List<Long> retries = new ArrayList<>();
+		
+		@Override
+		public void event(ServerSentEvent event) {
+			events.add(event);
+		}
+
+		@Override
+		public void retry(long retryMillis) {
+			retries.add(retryMillis);
+		}
+	}
+}
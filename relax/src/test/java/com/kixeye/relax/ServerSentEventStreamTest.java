@@ -0,0 +1,208 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ServerSentEventStream}
+ * 
+ * @author ebahtijaragic
+ */
+public class ServerSentEventStreamTest {
+	@Test
+	public void testReconnectsWithLastEventId() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		RestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport)
+				.withServerSentEvents(new ServerSentEventPolicy().withRetry(10, TimeUnit.MILLISECONDS)).build();
+		
+		TestSubscriber subscriber = new TestSubscriber();
+		client.events("/feeds/{}", 1).subscribe(subscriber);
+		
+		DeferredTransport.Exchange<?> exchange = transport.exchanges.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals("text/event-stream", exchange.request.getFirstHeader("Accept").getValue());
+		Assert.assertNull(exchange.request.getFirstHeader("Last-Event-ID"));
+		
+		respond(exchange, 200, "text/event-stream", "id: 1\ndata: one\n\nid: 2\ndata: two\n\ndata: cut off");
+		
+		exchange = transport.exchanges.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals("2", exchange.request.getFirstHeader("Last-Event-ID").getValue());
+		
+		respond(exchange, 200, "text/event-stream; charset=utf-8", "retry: 20\nid: 3\ndata: three\n\n");
+		
+		exchange = transport.exchanges.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals("3", exchange.request.getFirstHeader("Last-Event-ID").getValue());
+		
+		exchange.complete(204);
+		
+		Assert.assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(subscriber.isCompleted);
+		Assert.assertEquals(3, subscriber.events.size());
+		Assert.assertEquals("two", subscriber.events.get(1).getData());
+		Assert.assertEquals("3", subscriber.events.get(2).getId());
+		
+		client.close();
+	}
+	
+	@Test
+	public void testUnexpectedStatusFailsStream() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		RestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport).build();
+		
+		TestSubscriber subscriber = new TestSubscriber();
+		client.events("/feeds/{}", 1).subscribe(subscriber);
+		
+		transport.exchanges.poll(5, TimeUnit.SECONDS).complete(503);
+		
+		Assert.assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(503, ((UnexpectedStatusException)subscriber.error).getStatusCode());
+		Assert.assertNull(transport.exchanges.poll(50, TimeUnit.MILLISECONDS));
+		
+		client.close();
+	}
+	
+	@Test
+	public void testCancelStopsReconnects() throws Exception {
+		DeferredTransport transport = new DeferredTransport();
+		RestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport)
+				.withServerSentEvents(new ServerSentEventPolicy().withRetry(50, TimeUnit.MILLISECONDS)).build();
+		
+		TestSubscriber subscriber = new TestSubscriber();
+		client.events("/feeds/{}", 1).subscribe(subscriber);
+		
+		respond(transport.exchanges.poll(5, TimeUnit.SECONDS), 200, "text/event-stream", "data: one\n\n");
+		
+		subscriber.subscription.cancel();
+		
+		Assert.assertNull(transport.exchanges.poll(200, TimeUnit.MILLISECONDS));
+		Assert.assertFalse(subscriber.isCompleted);
+		Assert.assertNull(subscriber.error);
+		
+		client.close();
+	}
+	
+	@Test
+	public void testLongLivedConnectionsAreNotHostFailures() throws Exception {
+		HttpHost host = new HttpHost("localhost", 1234);
+		CircuitBreakerPolicy breakerPolicy = new CircuitBreakerPolicy().withSlidingWindow(2, 2).withSlowCallThreshold(100, TimeUnit.MILLISECONDS, 50);
+		ConcurrencyLimitPolicy limitPolicy = new ConcurrencyLimitPolicy().withLimits(4, 1, 4).withLatencyThreshold(100, TimeUnit.MILLISECONDS);
+		
+		DeferredTransport transport = new DeferredTransport();
+		RestClient client = RestClients.create("http://localhost:1234", null).withTransport(transport)
+				.withCircuitBreaker(breakerPolicy).withConcurrencyLimit(limitPolicy)
+				.withServerSentEvents(new ServerSentEventPolicy().withRetry(10, TimeUnit.MILLISECONDS)).build();
+		
+		TestSubscriber subscriber = new TestSubscriber();
+		client.events("/feeds/{}", 1).subscribe(subscriber);
+		
+		for (int i = 0; i < 3; i++) {
+			DeferredTransport.Exchange<?> exchange = transport.exchanges.poll(5, TimeUnit.SECONDS);
+			
+			String body = "id: " + i + "\ndata: event\n\n";
+			
+			BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+			response.setHeader("Content-Type", "text/event-stream");
+			response.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+			
+			exchange.responseConsumer.responseReceived(response);
+			exchange.responseConsumer.consumeContent(new TestContent.Decoder(body), new TestContent.Control());
+			
+			// an open event stream holds no permit
+			Assert.assertEquals(0, limitPolicy.getInFlightCount(host));
+			
+			Thread.sleep(200);
+			
+			// the connection drops, which is how event streams usually end
+			ConnectionClosedException error = new ConnectionClosedException("Connection closed");
+			exchange.responseConsumer.failed(error);
+			exchange.future.failed(error);
+		}
+		
+		Assert.assertNotNull(transport.exchanges.poll(5, TimeUnit.SECONDS));
+		Assert.assertEquals(3, subscriber.events.size());
+		Assert.assertEquals(CircuitBreakerPolicy.State.CLOSED, breakerPolicy.getState(host));
+		Assert.assertEquals(4, limitPolicy.getLimit(host));
+		
+		subscriber.subscription.cancel();
+		client.close();
+	}
+	
+	/**
+	 * Answers the exchange with a body that then ends, the way a dropped connection does.
+	 */
+	private static <T> void respond(DeferredTransport.Exchange<T> exchange, int statusCode, String contentType, String body) throws Exception {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+		response.setHeader("Content-Type", contentType);
+		response.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+		
+		exchange.responseConsumer.responseReceived(response);
+		exchange.responseConsumer.consumeContent(new TestContent.Decoder(body), new TestContent.Control());
+		exchange.responseConsumer.responseCompleted(new BasicHttpContext());
+		
+		exchange.future.completed(exchange.responseConsumer.getResult());
+	}
+	
+		private static class TestSubscriber implements StreamSubscriber<ServerSentEvent> {
+		private final List<ServerSentEvent> events = new CopyOnWriteArrayList<>();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile StreamSubscription subscription;
+		private volatile boolean isCompleted = false;
+		private volatile Throwable error;
+		
+		@Override
+		public void onSubscribe(StreamSubscription subscription) {
+			this.subscription = subscription;
+			
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(ServerSentEvent event) {
+			events.add(event);
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+			done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			isCompleted = true;
+			done.countDown();
+		}
+	}
+}
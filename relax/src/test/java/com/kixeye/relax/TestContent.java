@@ -0,0 +1,112 @@
+package com.kixeye.relax;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+
+/**
+ * Feeds a response body to a consumer the way the I/O reactor would.
+ * 
+ * @author ebahtijaragic
+ */
+class TestContent {
+	private TestContent() {
+	}
+	
+	/**
+	 * Hands out the body, at most a given number of bytes at a time.
+	 */
+	protected static class Decoder implements ContentDecoder {
+		private final ByteBuffer data;
+		private final int maxRead;
+		
+		/**
+		 * @param body
+		 */
+		protected Decoder(String body) {
+			this(body, Integer.MAX_VALUE);
+		}
+		
+		/**
+		 * @param body
+		 * @param maxRead the most bytes a read hands out
+		 */
+		protected Decoder(String body, int maxRead) {
+			this.data = ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8));
+			this.maxRead = maxRead;
+		}
+		
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!data.hasRemaining()) {
+				return -1;
+			}
+			
+			int count = Math.min(Math.min(maxRead, dst.remaining()), data.remaining());
+			
+			ByteBuffer slice = data.duplicate();
+			slice.limit(data.position() + count);
+			dst.put(slice);
+			data.position(data.position() + count);
+			
+			return count;
+		}
+
+		@Override
+		public boolean isCompleted() {
+			return !data.hasRemaining();
+		}
+	}
+	
+	/**
+	 * Records whether the consumer suspended the input.
+	 */
+	protected static class Control implements IOControl {
+		protected volatile boolean isSuspended = false;
+		
+		@Override
+		public void requestInput() {
+			isSuspended = false;
+		}
+
+		@Override
+		public void suspendInput() {
+			isSuspended = true;
+		}
+
+		@Override
+		public void requestOutput() {
+		}
+
+		@Override
+		public void suspendOutput() {
+		}
+
+		@Override
+		public void shutdown() throws IOException {
+		}
+	}
+}
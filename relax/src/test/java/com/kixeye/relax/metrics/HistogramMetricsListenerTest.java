@@ -0,0 +1,80 @@
+package com.kixeye.relax.metrics;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.net.SocketTimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link HistogramMetricsListener}
+ * 
+ * @author ebahtijaragic
+ */
+public class HistogramMetricsListenerTest {
+	@Test
+	public void testCountsByEndpoint() throws Exception {
+		HistogramMetricsListener listener = new HistogramMetricsListener();
+		
+		listener.requestStarted("GET", "/users/{id}");
+		listener.requestStarted("GET", "/users/{id}");
+		listener.requestStarted("GET", "/users/{id}");
+		listener.requestStarted("POST", "/users");
+		
+		listener.requestCompleted("GET", "/users/{id}", 200, 2000000);
+		listener.requestCompleted("GET", "/users/{id}", 404, 1000000);
+		listener.requestFailed("POST", "/users", new SocketTimeoutException(), 5000000);
+		
+		HistogramMetricsListener.EndpointMetrics get = listener.getEndpointMetrics("GET", "/users/{id}");
+		Assert.assertEquals(1, get.getStatusCount(200));
+		Assert.assertEquals(1, get.getStatusCount(404));
+		Assert.assertEquals(2, get.getLatency().getCount());
+		Assert.assertEquals(1, get.getInFlightCount());
+		
+		HistogramMetricsListener.EndpointMetrics post = listener.getEndpointMetrics("POST", "/users");
+		Assert.assertEquals(1, post.getFailureCount());
+		Assert.assertEquals(0, post.getLatency().getCount());
+		Assert.assertEquals(0, post.getInFlightCount());
+		
+		Assert.assertNull(listener.getEndpointMetrics("DELETE", "/users/{id}"));
+	}
+	
+	@Test
+	public void testPrometheusText() throws Exception {
+		HistogramMetricsListener listener = new HistogramMetricsListener("test");
+		
+		listener.requestStarted("GET", "/a\"b");
+		listener.requestCompleted("GET", "/a\"b", 200, 1000000000);
+		listener.requestStarted("DELETE", "/c");
+		listener.requestCancelled("DELETE", "/c", 10);
+		
+		String text = listener.toPrometheusText();
+		
+		Assert.assertTrue(text, text.contains("# TYPE test_request_duration_seconds summary\n"));
+		Assert.assertTrue(text, text.contains("test_request_duration_seconds{method=\"GET\",path=\"/a\\\"b\",quantile=\"0.99\"} 1.0"));
+		Assert.assertTrue(text, text.contains("test_request_duration_seconds_count{method=\"GET\",path=\"/a\\\"b\"} 1\n"));
+		Assert.assertTrue(text, text.contains("test_responses_total{method=\"GET\",path=\"/a\\\"b\",status=\"200\"} 1\n"));
+		Assert.assertTrue(text, text.contains("test_request_cancellations_total{method=\"DELETE\",path=\"/c\"} 1\n"));
+		Assert.assertTrue(text, text.contains("test_requests_in_flight{method=\"DELETE\",path=\"/c\"} 0\n"));
+		Assert.assertTrue(text, text.indexOf("method=\"DELETE\"") < text.indexOf("method=\"GET\""));
+	}
+}
@@ -0,0 +1,83 @@
+package com.kixeye.relax.metrics;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LatencyHistogram}
+ * 
+ * @author ebahtijaragic
+ */
+public class LatencyHistogramTest {
+	@Test
+	public void testBucketsKeepTwoSignificantDigits() throws Exception {
+		for (long value = 0; value < LatencyHistogram.MAX_VALUE; value = value * 3 + 1) {
+			long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(value));
+			
+			Assert.assertTrue(value + " -> " + highest, highest >= value);
+			Assert.assertTrue(value + " -> " + highest, highest - value <= value / LatencyHistogram.SUB_BUCKET_COUNT);
+		}
+		
+		Assert.assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE)));
+	}
+	
+	@Test
+	public void testPercentiles() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		for (long i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000);
+		}
+		
+		Assert.assertEquals(10000, histogram.getCount());
+		Assert.assertEquals(10000000, histogram.getMax());
+		Assert.assertEquals(50005000L * 1000, histogram.getSum());
+		
+		assertWithin(5000000, histogram.getValueAtPercentile(50.0));
+		assertWithin(9900000, histogram.getValueAtPercentile(99.0));
+		Assert.assertEquals(10000000, histogram.getValueAtPercentile(100.0));
+		
+		long[] values = histogram.getValuesAtPercentiles(0.0, 90.0, 99.9);
+		assertWithin(1000, values[0]);
+		assertWithin(9000000, values[1]);
+		assertWithin(9990000, values[2]);
+	}
+	
+	@Test
+	public void testEmptyAndOutOfRange() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		Assert.assertEquals(0, histogram.getValueAtPercentile(99.0));
+		
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		
+		Assert.assertEquals(2, histogram.getCount());
+		Assert.assertEquals(0, histogram.getValueAtPercentile(50.0));
+		Assert.assertEquals(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100.0));
+	}
+	
+	private static void assertWithin(long expected, long actual) {
+		Assert.assertTrue(expected + " != " + actual, actual >= expected && actual - expected <= expected / LatencyHistogram.SUB_BUCKET_COUNT);
+	}
+}
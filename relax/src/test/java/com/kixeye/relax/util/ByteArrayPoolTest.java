@@ -0,0 +1,80 @@
+package com.kixeye.relax.util;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ByteArrayPool}
+ * 
+ * @author ebahtijaragic
+ */
+public class ByteArrayPoolTest {
+	@Test
+	public void testRoundsUpToSizeClass() throws Exception {
+		ByteArrayPool pool = new ByteArrayPool(1024, 8192, 4);
+		
+		Assert.assertEquals(1024, pool.acquire(1).length);
+		Assert.assertEquals(1024, pool.acquire(1024).length);
+		Assert.assertEquals(2048, pool.acquire(1025).length);
+		Assert.assertEquals(8192, pool.acquire(8000).length);
+	}
+	
+	@Test
+	public void testReusesReleasedBuffers() throws Exception {
+		ByteArrayPool pool = new ByteArrayPool(1024, 8192, 4);
+		
+		byte[] buffer = pool.acquire(3000);
+		pool.release(buffer);
+		
+		Assert.assertSame(buffer, pool.acquire(4096));
+		Assert.assertNotSame(buffer, pool.acquire(4096));
+	}
+	
+	@Test
+	public void testDoesNotPoolOversizedBuffers() throws Exception {
+		ByteArrayPool pool = new ByteArrayPool(1024, 8192, 4);
+		
+		byte[] buffer = pool.acquire(10000);
+		Assert.assertEquals(10000, buffer.length);
+		
+		pool.release(buffer);
+		pool.release(new byte[3000]);
+		
+		Assert.assertNotSame(buffer, pool.acquire(10000));
+		Assert.assertEquals(4096, pool.acquire(3000).length);
+	}
+	
+	@Test
+	public void testBoundsIdleBuffers() throws Exception {
+		ByteArrayPool pool = new ByteArrayPool(1024, 8192, 1);
+		
+		byte[] first = pool.acquire(1024);
+		byte[] second = pool.acquire(1024);
+		
+		pool.release(first);
+		pool.release(second);
+		
+		Assert.assertSame(first, pool.acquire(1024));
+		Assert.assertNotSame(second, pool.acquire(1024));
+	}
+}
@@ -0,0 +1,83 @@
+package com.kixeye.relax.util;
+
+/*
+ * #%L
+ * Relax
+ * %%
+ * Copyright (C) 2014 KIXEYE, Inc
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link UrlTemplate}
+ * 
+ * @author ebahtijaragic
+ */
+public class UrlTemplateTest {
+	@Test
+	public void testSegments() throws Exception {
+		UrlTemplate template = UrlTemplate.compile("/blah/{something}/mid/{}?param={other}");
+		
+		Assert.assertEquals(3, template.getVariableCount());
+		Assert.assertEquals("/blah/once/mid/twice?param=thrice", template.expand("once", "twice", "thrice"));
+		Assert.assertEquals("/blah/once/mid/{}?param={other}", template.expand("once"));
+		Assert.assertEquals("/blah/{something}/mid/{}?param={other}", template.expand());
+	}
+	
+	@Test
+	public void testUnclosedVariable() throws Exception {
+		UrlTemplate template = UrlTemplate.compile("/blah/{}/mid/{unclosed");
+		
+		Assert.assertEquals(1, template.getVariableCount());
+		Assert.assertEquals("/blah/once/mid/{unclosed", template.expand("once", "twice"));
+	}
+	
+	@Test
+	public void testEncodesLikeUrlEncoder() throws Exception {
+		String[] values = new String[] { "safe-Value_1.*", "blue sword+1", "a/b?c=d&e#f", "caf\u00e9 \u20ac", "\ud83d\ude00", "bad\ud83d", "~!'()" };
+		
+		for (String value : values) {
+			StringBuilder builder = new StringBuilder();
+			UrlTemplate.encode(value, builder);
+			
+			Assert.assertEquals(value, URLEncoder.encode(value, "UTF-8"), builder.toString());
+		}
+	}
+	
+	@Test
+	public void testPrefixAndQueryParameters() throws Exception {
+		Map<String, Object> queryParameters = new LinkedHashMap<>();
+		queryParameters.put("q", "a b");
+		queryParameters.put("tag", Arrays.asList("x", "y"));
+		queryParameters.put("id", new int[] { 1, 2 });
+		queryParameters.put("flag", null);
+		
+		Assert.assertEquals("http://host:80/items/%7B%7D/1?q=a+b&tag=x&tag=y&id=1&id=2&flag", 
+				UrlTemplate.compile("/items/{}/{}").expand("http://host:80", new Object[] { "{}", 1 }, queryParameters));
+		Assert.assertEquals("/items?sort=asc&q=a+b&tag=x&tag=y&id=1&id=2&flag", 
+				UrlTemplate.compile("/items?sort={}").expand(null, new Object[] { "asc" }, queryParameters));
+		Assert.assertEquals("/items?q=z", 
+				UrlTemplate.compile("/items?").expand(null, null, Collections.singletonMap("q", "z")));
+	}
+}